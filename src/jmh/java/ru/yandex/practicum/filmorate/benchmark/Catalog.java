@@ -0,0 +1,107 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ru.yandex.practicum.filmorate.metrics.Metrics;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.TimedFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.user.TimedUserStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Заполненный каталог: {@code size} пользователей и столько же фильмов,
+ * у каждого фильма в среднем {@code likes} лайков, у пользователя — {@code friends} друзей.
+ * Для 1e7 сущностей нужна куча порядка 8–16 ГБ: -jvmArgsAppend -Xmx16g.
+ * С {@code metrics=true} хранилища обёрнуты в таймеры, как в приложении: {@code -p metrics=false,true}
+ * показывает цену метрик на любом бенчмарке.
+ */
+@State(Scope.Benchmark)
+public class Catalog {
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"5"})
+    public int likes;
+
+    @Param({"10"})
+    public int friends;
+
+    @Param({"false"})
+    public boolean metrics;
+
+    public UserStorage userStorage;
+    public FilmStorage filmStorage;
+    public UserService userService;
+    public FilmService filmService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Metrics registry = new Metrics(Metrics.DEFAULT_SAMPLE_EVERY);
+        userStorage = new InMemoryUserStorage();
+        if (metrics) {
+            userStorage = new TimedUserStorage(userStorage, registry);
+        }
+        filmStorage = new InMemoryFilmStorage(userStorage);
+        if (metrics) {
+            filmStorage = new TimedFilmStorage(filmStorage, registry);
+        }
+        userService = new UserService(userStorage, Optional.empty(), registry);
+        filmService = new FilmService(filmStorage, userStorage, Optional.empty(), registry);
+        for (int i = 0; i < size; i++) {
+            userStorage.addUser(newUser(i));
+            filmStorage.addFilm(newFilm(i));
+        }
+        SplittableRandom random = new SplittableRandom(42);
+        for (long filmId = 1; filmId <= size; filmId++) {
+            int count = random.nextInt(2 * likes + 1);
+            for (int i = 0; i < count; i++) {
+                filmStorage.likeIt(filmId, 1 + random.nextLong(size));
+            }
+        }
+        // каждая дружба добавляется обоим, поэтому половина от желаемой степени
+        for (long userId = 1; userId <= size; userId++) {
+            for (int i = 0; i < friends / 2; i++) {
+                long friendId = 1 + random.nextLong(size);
+                if (friendId != userId) {
+                    userStorage.addFriend(userId, friendId);
+                }
+            }
+        }
+    }
+
+    public long randomId() {
+        return 1 + ThreadLocalRandom.current().nextLong(size);
+    }
+
+    public static User newUser(long n) {
+        return User.builder()
+                .email("user" + n + "@ya.ru")
+                .login("user" + n)
+                .name("User " + n)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build();
+    }
+
+    public static Film newFilm(long n) {
+        return Film.builder()
+                .name("Film " + n)
+                .description("Description " + n)
+                .releaseDate(LocalDate.of(2000, 1, 1).plusDays(n % 8000))
+                .duration(60 + (int) (n % 120))
+                .build();
+    }
+}
@@ -0,0 +1,86 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.filmorate.model.LongHashSet;
+import ru.yandex.practicum.filmorate.storage.user.SortedIntersection;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Пересечение списков друзей: сбалансированные и перекошенные размеры, плотные и разреженные id.
+ * {@code stream} — прежняя реализация через stream().filter(contains).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CommonFriendsBenchmark {
+    @Param({"1000:1000", "10000:10000", "10:100000", "100:100000"})
+    private String sizes;
+
+    @Param({"dense", "sparse"})
+    private String ids;
+
+    private LongHashSet first;
+    private LongHashSet second;
+    private long[] firstSorted;
+    private long[] secondSorted;
+
+    @Setup
+    public void setUp() {
+        String[] parts = sizes.split(":");
+        int firstSize = Integer.parseInt(parts[0]);
+        int secondSize = Integer.parseInt(parts[1]);
+        long range = "dense".equals(ids) ? 4L * Math.max(firstSize, secondSize) : 1_000_000_000L;
+        Random random = new Random(17);
+        first = randomSet(random, firstSize, range);
+        second = randomSet(random, secondSize, range);
+        firstSorted = first.toSortedArray();
+        secondSorted = second.toSortedArray();
+    }
+
+    @Benchmark
+    public List<Long> stream() {
+        Set<Long> other = second;
+        return first.stream().filter(other::contains).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public long[] intersect() {
+        return SortedIntersection.intersect(first.toSortedArray(), second.toSortedArray());
+    }
+
+    @Benchmark
+    public long[] merge() {
+        return SortedIntersection.merge(firstSorted, secondSorted);
+    }
+
+    @Benchmark
+    public long[] gallop() {
+        return SortedIntersection.gallop(firstSorted, secondSorted);
+    }
+
+    private static LongHashSet randomSet(Random random, int size, long range) {
+        LongHashSet set = new LongHashSet();
+        while (set.size() < size) {
+            set.add(1 + (long) (random.nextDouble() * range));
+        }
+        return set;
+    }
+}
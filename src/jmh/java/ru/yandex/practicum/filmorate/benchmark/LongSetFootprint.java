@@ -0,0 +1,66 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jol.info.GraphLayout;
+import ru.yandex.practicum.filmorate.model.LongHashSet;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Сравнение занимаемой памяти {@code HashSet<Long>} и {@link LongHashSet}.
+ * Запуск: mvn -P benchmark test-compile exec:exec
+ * -Dbenchmark.main=ru.yandex.practicum.filmorate.benchmark.LongSetFootprint
+ */
+public class LongSetFootprint {
+    private static final int[] SET_SIZES = {1, 10, 100, 10_000, 1_000_000};
+    private static final int MANY_SETS = 100_000;
+    private static final int LIKES_PER_SET = 20;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        System.out.printf("%-28s %14s %14s %8s%n", "Сценарий", "HashSet<Long>", "LongHashSet", "Выигрыш");
+        for (int size : SET_SIZES) {
+            long[] ids = randomIds(random, size);
+            Set<Long> boxed = new HashSet<>();
+            LongHashSet primitive = new LongHashSet();
+            for (long id : ids) {
+                boxed.add(id);
+                primitive.add(id);
+            }
+            print("одно множество, " + size, GraphLayout.parseInstance(boxed).totalSize(),
+                    GraphLayout.parseInstance(primitive).totalSize());
+        }
+
+        List<Set<Long>> boxedSets = new ArrayList<>(MANY_SETS);
+        List<LongHashSet> primitiveSets = new ArrayList<>(MANY_SETS);
+        for (int i = 0; i < MANY_SETS; i++) {
+            Set<Long> boxed = new HashSet<>();
+            LongHashSet primitive = new LongHashSet();
+            for (long id : randomIds(random, LIKES_PER_SET)) {
+                boxed.add(id);
+                primitive.add(id);
+            }
+            boxedSets.add(boxed);
+            primitiveSets.add(primitive);
+        }
+        print(MANY_SETS + " x " + LIKES_PER_SET, GraphLayout.parseInstance(boxedSets).totalSize(),
+                GraphLayout.parseInstance(primitiveSets).totalSize());
+    }
+
+    private static long[] randomIds(Random random, int size) {
+        long[] ids = new long[size];
+        for (int i = 0; i < size; i++) {
+            // id вне кэша Long.valueOf, как у реального каталога
+            ids[i] = 1_000 + (long) (random.nextDouble() * 10_000_000);
+        }
+        return ids;
+    }
+
+    private static void print(String scenario, long boxedBytes, long primitiveBytes) {
+        System.out.printf("%-28s %14d %14d %7.1fx%n", scenario, boxedBytes, primitiveBytes,
+                (double) boxedBytes / primitiveBytes);
+    }
+}
@@ -0,0 +1,52 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.filmorate.metrics.LatencyTimer;
+import ru.yandex.practicum.filmorate.metrics.Metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Цена замера одного вызова хранилища: сколько наносекунд таймер добавляет к каждому вызову
+ * при разной частоте замеров. Вместе с {@code -prof gc} показывает, что запись не выделяет память;
+ * сравнение с настоящими операциями — {@code StorageBenchmark -p metrics=false,true}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+    @Param({"1", "16", "64"})
+    public int sampleEvery;
+
+    private LatencyTimer timer;
+
+    @Setup
+    public void setUp() {
+        timer = new Metrics(sampleEvery).timer("film", "getFilmById");
+    }
+
+    @Benchmark
+    public void record() {
+        timer.stop(timer.start());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordConcurrently() {
+        timer.stop(timer.start());
+    }
+}
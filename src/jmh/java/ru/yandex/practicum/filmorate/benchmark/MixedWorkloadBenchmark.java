@@ -0,0 +1,83 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Многопоточная смешанная нагрузка: читатели и писатели работают с одним каталогом одновременно.
+ * Соотношение потоков в группе примерно соответствует профилю трафика — чтений больше, чем записей.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MixedWorkloadBenchmark {
+
+    @Benchmark
+    @Group("films")
+    @GroupThreads(4)
+    public Collection<Film> readPopular(Catalog catalog) {
+        return catalog.filmService.getPopularFilms(10);
+    }
+
+    @Benchmark
+    @Group("films")
+    @GroupThreads(2)
+    public Film readFilm(Catalog catalog) {
+        return catalog.filmService.getFilmById(catalog.randomId());
+    }
+
+    @Benchmark
+    @Group("films")
+    @GroupThreads(2)
+    public Film writeLike(Catalog catalog) {
+        long filmId = catalog.randomId();
+        long userId = catalog.randomId();
+        if ((filmId & 1) == 0) {
+            return catalog.filmService.likeIt(filmId, userId);
+        }
+        return catalog.filmService.deleteLike(filmId, userId);
+    }
+
+    @Benchmark
+    @Group("users")
+    @GroupThreads(3)
+    public Collection<User> readCommonFriends(Catalog catalog) {
+        return catalog.userService.getCommonFriends(catalog.randomId(), catalog.randomId());
+    }
+
+    @Benchmark
+    @Group("users")
+    @GroupThreads(3)
+    public Collection<User> readFriends(Catalog catalog) {
+        return catalog.userService.getUserFriends(catalog.randomId());
+    }
+
+    @Benchmark
+    @Group("users")
+    @GroupThreads(2)
+    public User writeFriend(Catalog catalog) {
+        long userId = catalog.randomId();
+        long friendId = catalog.randomId();
+        if (userId == friendId) {
+            return null;
+        }
+        if ((userId & 1) == 0) {
+            return catalog.userService.addFriend(userId, friendId);
+        }
+        return catalog.userService.deleteFriend(userId, friendId);
+    }
+}
@@ -0,0 +1,96 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.filmorate.controller.ErrorHandler;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.ErrorResponse;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ответ 404 на запрос несуществующего фильма: поиск в хранилище, исключение и тело ответа.
+ * <p>
+ * {@code before} повторяет прежний путь — исключение со стеком и сообщением, собранным при создании,
+ * и тело через Jackson; {@code after} — нынешние хранилище и {@link ErrorHandler}. Под Tomcat и Spring
+ * стек запроса глубже, чем в JMH, поэтому {@code depth} добавляет столько кадров перед поиском.
+ * С {@code -prof gc} видно, сколько памяти выделяет каждый ответ.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NotFoundBenchmark {
+    @Param({"0", "100"})
+    public int depth;
+
+    private FilmStorage storage;
+    private ErrorHandler errorHandler;
+    private ObjectMapper objectMapper;
+    private long id;
+
+    @Setup
+    public void setUp() {
+        storage = new InMemoryFilmStorage(new InMemoryUserStorage());
+        errorHandler = new ErrorHandler();
+        objectMapper = new ObjectMapper();
+    }
+
+    @Benchmark
+    public byte[] before() throws JsonProcessingException {
+        long filmId = ++id;
+        try {
+            return nested(depth, () -> {
+                if (storage.getFilmCount() < filmId) {
+                    throw new StackfulNotFoundException("Фильм с id = " + filmId + " не найден");
+                }
+                return null;
+            });
+        } catch (StackfulNotFoundException e) {
+            return objectMapper.writeValueAsBytes(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    @Benchmark
+    public byte[] after() {
+        long filmId = ++id;
+        try {
+            return nested(depth, () -> {
+                storage.getFilmById(filmId);
+                return null;
+            });
+        } catch (NotFoundException e) {
+            return errorHandler.handleVNotFoundException(e).getBody();
+        }
+    }
+
+    private static byte[] nested(int depth, Lookup lookup) {
+        return depth == 0 ? lookup.run() : nested(depth - 1, lookup);
+    }
+
+    private interface Lookup {
+        byte[] run();
+    }
+
+    private static final class StackfulNotFoundException extends RuntimeException {
+        StackfulNotFoundException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Однопоточные операции хранилищ и сервисов на каталогах от 1e3 до 1e7 сущностей.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageBenchmark {
+
+    @Benchmark
+    public Film addFilm(Catalog catalog) {
+        return catalog.filmStorage.addFilm(Catalog.newFilm(catalog.size));
+    }
+
+    @Benchmark
+    public Film likeIt(Catalog catalog) {
+        return catalog.filmStorage.likeIt(catalog.randomId(), catalog.randomId());
+    }
+
+    @Benchmark
+    public Collection<Film> getPopularFilms(Catalog catalog) {
+        return catalog.filmStorage.getPopularFilms(10);
+    }
+
+    @Benchmark
+    public User addFriend(Catalog catalog) {
+        long userId = catalog.randomId();
+        long friendId = catalog.randomId();
+        return userId == friendId ? null : catalog.userStorage.addFriend(userId, friendId);
+    }
+
+    @Benchmark
+    public Collection<User> getCommonFriends(Catalog catalog) {
+        return catalog.userStorage.getCommonFriends(catalog.randomId(), catalog.randomId());
+    }
+
+    @Benchmark
+    public Collection<User> getUserFriends(Catalog catalog) {
+        return catalog.userStorage.getUserFriends(catalog.randomId());
+    }
+
+    @Benchmark
+    public Film serviceCreateFilm(Catalog catalog) {
+        return catalog.filmService.createFilm(Catalog.newFilm(catalog.size));
+    }
+
+    @Benchmark
+    public Film serviceLikeIt(Catalog catalog) {
+        return catalog.filmService.likeIt(catalog.randomId(), catalog.randomId());
+    }
+
+    @Benchmark
+    public User serviceCreateUser(Catalog catalog) {
+        return catalog.userService.createUser(Catalog.newUser(catalog.size));
+    }
+
+    @Benchmark
+    public Collection<User> serviceGetCommonFriends(Catalog catalog) {
+        return catalog.userService.getCommonFriends(catalog.randomId(), catalog.randomId());
+    }
+}
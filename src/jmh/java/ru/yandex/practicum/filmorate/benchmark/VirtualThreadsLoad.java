@@ -0,0 +1,156 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Нагрузочный тест HTTP-слоя: пропускная способность {@code GET /films/{id}} при большом числе
+ * одновременных клиентов с пулом потоков Tomcat и с виртуальными потоками.
+ * <p>
+ * Чтения из хранилища задерживаются на {@code latencyMs}, как запрос к внешней базе: один раз
+ * на запрос {@code GET /films/{id}}, который читает хранилище одним вызовом. Пока поток
+ * ждёт ответа базы, поток пула Tomcat занят, а виртуальный поток отпускает несущий.
+ * <pre>
+ * mvn -P benchmark test-compile exec:exec -Dbenchmark.main=ru.yandex.practicum.filmorate.benchmark.VirtualThreadsLoad \
+ *     -Dbenchmark.result= -Dbenchmark.args="2000 10 50"
+ * </pre>
+ * Аргументы: число клиентов, секунды замера, задержка хранилища в миллисекундах.
+ */
+public class VirtualThreadsLoad {
+    private static final int FILMS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        long latencyMs = args.length > 2 ? Long.parseLong(args[2]) : 50;
+        System.setProperty("filmorate.load.latency-ms", String.valueOf(latencyMs));
+
+        List<String> results = new ArrayList<>();
+        for (boolean virtual : new boolean[]{false, true}) {
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(FilmorateApplication.class,
+                    SlowStorage.class)
+                    .properties("server.port=0",
+                            "server.tomcat.accept-count=" + clients,
+                            "filmorate.web.virtual-threads=" + virtual,
+                            "logging.level.root=WARN",
+                            "logging.level.org.zalando.logbook=WARN")
+                    .run();
+            try {
+                int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+                fill(context.getBean(FilmStorage.class));
+                run(port, clients, 3, "прогрев");
+                results.add(run(port, clients, seconds, virtual ? "виртуальные потоки" : "пул Tomcat"));
+            } finally {
+                context.close();
+            }
+        }
+        System.out.printf("%nклиентов: %d, задержка хранилища: %d мс%n", clients, latencyMs);
+        results.forEach(System.out::println);
+    }
+
+    private static void fill(FilmStorage storage) {
+        for (int i = 1; i <= FILMS; i++) {
+            storage.addFilm(Film.builder()
+                    .name("Фильм " + i)
+                    .description("Описание " + i)
+                    .releaseDate(LocalDate.of(2000, 1, 1))
+                    .duration(90)
+                    .build());
+        }
+    }
+
+    private static String run(int port, int clients, int seconds, String mode) throws InterruptedException {
+        LongAdder completed = new LongAdder();
+        LongAdder failed = new LongAdder();
+        LongAdder latencyNanos = new LongAdder();
+        AtomicBoolean running = new AtomicBoolean(true);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+             HttpClient client = HttpClient.newBuilder()
+                     .version(HttpClient.Version.HTTP_1_1)
+                     .executor(executor)
+                     .connectTimeout(Duration.ofSeconds(30))
+                     .build()) {
+            for (int i = 0; i < clients; i++) {
+                executor.execute(() -> {
+                    while (running.get()) {
+                        long id = ThreadLocalRandom.current().nextLong(1, FILMS + 1);
+                        HttpRequest request = HttpRequest.newBuilder(
+                                URI.create("http://localhost:" + port + "/films/" + id)).build();
+                        long start = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() == 200) {
+                                completed.increment();
+                                latencyNanos.add(System.nanoTime() - start);
+                            } else {
+                                failed.increment();
+                            }
+                        } catch (Exception e) {
+                            failed.increment();
+                        }
+                    }
+                });
+            }
+            Thread.sleep(seconds * 1000L);
+            running.set(false);
+        }
+        long done = completed.sum();
+        return String.format("%-20s %10.0f запр/с, среднее время ответа %6.1f мс, ошибок %d",
+                mode, done / (double) seconds, done == 0 ? 0 : latencyNanos.sum() / 1e6 / done, failed.sum());
+    }
+
+    /**
+     * Добавляет задержку к чтениям основного ({@link Primary}) хранилища фильмов, через которое идут сервисы.
+     * Хранилище профиля за ним не оборачивается, иначе каждое чтение ждало бы дважды.
+     */
+    static class SlowStorage {
+        @Bean
+        static BeanPostProcessor slowFilmStorage() {
+            long latencyMs = Long.getLong("filmorate.load.latency-ms", 50);
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (!(bean instanceof FilmStorage)
+                            || !AnnotatedElementUtils.hasAnnotation(bean.getClass(), Primary.class)) {
+                        return bean;
+                    }
+                    return Proxy.newProxyInstance(FilmStorage.class.getClassLoader(),
+                            new Class<?>[]{FilmStorage.class}, (proxy, method, methodArgs) -> {
+                                if (method.getName().startsWith("get")) {
+                                    Thread.sleep(latencyMs);
+                                }
+                                try {
+                                    return method.invoke(bean, methodArgs);
+                                } catch (InvocationTargetException e) {
+                                    throw e.getCause();
+                                }
+                            });
+                }
+            };
+        }
+    }
+}
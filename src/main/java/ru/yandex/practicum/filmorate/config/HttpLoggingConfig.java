@@ -0,0 +1,67 @@
+package ru.yandex.practicum.filmorate.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Журналирование медленных HTTP-запросов.
+ * <p>
+ * Обмены целиком, с телами, не пишутся: каждый запрос дольше {@code filmorate.logging.http.slow-threshold}
+ * пишется одной строкой без тел, поэтому фильтр ничего не буферизует.
+ */
+@Slf4j
+@Configuration
+public class HttpLoggingConfig {
+
+    @Bean
+    public FilterRegistrationBean<OncePerRequestFilter> slowRequestFilter(
+            @Value("${filmorate.logging.http.slow-threshold:500ms}") Duration threshold) {
+        FilterRegistrationBean<OncePerRequestFilter> registration =
+                new FilterRegistrationBean<>(new SlowRequestFilter(threshold.toNanos()));
+        // раньше остальных фильтров, чтобы в замер попали и они
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
+    /**
+     * Время считается до ответа или до перехода запроса в асинхронный режим; нулевой порог выключает фильтр.
+     */
+    static final class SlowRequestFilter extends OncePerRequestFilter {
+        private final long thresholdNanos;
+
+        SlowRequestFilter(long thresholdNanos) {
+            this.thresholdNanos = thresholdNanos;
+        }
+
+        @Override
+        protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+                throws ServletException, IOException {
+            if (thresholdNanos <= 0) {
+                chain.doFilter(request, response);
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                if (elapsed >= thresholdNanos && log.isWarnEnabled()) {
+                    log.warn("Медленный запрос {} {}: статус {}, {} мс", request.getMethod(), request.getRequestURI(),
+                            response.getStatus(), elapsed / 1_000_000);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package ru.yandex.practicum.filmorate.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Планировщик, на котором реактивные обработчики вызывают синхронные хранилища.
+ * <p>
+ * Хранилища блокируют поток (база, ожидание журнала), поэтому их вызовы уводятся с потоков
+ * Reactor в ограниченный пул: ждущие соединения потоков не занимают, а число одновременных
+ * обращений к хранилищу ограничено {@code filmorate.reactive.storage-threads}.
+ */
+@Configuration
+public class ReactorConfig {
+
+    @Bean(destroyMethod = "dispose")
+    public Scheduler storageScheduler(@Value("${filmorate.reactive.storage-threads:64}") int threads,
+                                      @Value("${filmorate.reactive.storage-queue:100000}") int queue) {
+        return Schedulers.newBoundedElastic(threads, queue, "storage");
+    }
+}
@@ -0,0 +1,35 @@
+package ru.yandex.practicum.filmorate.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Обработка HTTP-запросов в виртуальных потоках вместо ограниченного пула Tomcat
+ * ({@code filmorate.web.virtual-threads=true}).
+ * <p>
+ * Каждый запрос получает свой виртуальный поток, и ожидание ввода-вывода не занимает поток ОС.
+ * Чтобы поток не закреплялся за несущим, блокирующие участки хранилищ защищены
+ * {@link java.util.concurrent.locks.ReentrantLock}, а не {@code synchronized}.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(value = "filmorate.web.virtual-threads", havingValue = "true")
+public class VirtualThreadsConfig {
+
+    @Bean(destroyMethod = "close")
+    public ExecutorService requestExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("http-virtual-", 0).factory());
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadsCustomizer(ExecutorService requestExecutor) {
+        log.info("Запросы обрабатываются в виртуальных потоках");
+        return protocolHandler -> protocolHandler.setExecutor(requestExecutor);
+    }
+}
@@ -0,0 +1,23 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.storage.EntityCache;
+
+import java.util.Map;
+
+@RestController
+@Profile("jdbc")
+@RequiredArgsConstructor
+@RequestMapping("/caches")
+public class CacheController {
+    private final EntityCache entityCache;
+
+    @GetMapping
+    public Map<String, Map<String, Number>> getCacheStats() {
+        return entityCache.stats();
+    }
+}
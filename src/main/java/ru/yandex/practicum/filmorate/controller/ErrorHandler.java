@@ -1,32 +1,58 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
-import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import ru.yandex.practicum.filmorate.exception.IncorrectObjectStructureException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.metrics.Metrics;
 import ru.yandex.practicum.filmorate.model.ErrorResponse;
 
+/**
+ * Ответы на исключения. Тело {@link ErrorResponse} собирается из заготовок и отдаётся готовыми байтами,
+ * заголовки общие для всех ответов — ответ с ошибкой не проходит через Jackson.
+ */
 @RestControllerAdvice
 public class ErrorHandler {
+    private static final HttpHeaders JSON = HttpHeaders.readOnlyHttpHeaders(jsonHeaders());
+
+    private Metrics metrics;
+
+    @Autowired(required = false)
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
 
     @ExceptionHandler
-    @ResponseStatus(HttpStatus.BAD_REQUEST)
-    public ErrorResponse handleValidationException(final ValidationException e) {
-        return new ErrorResponse(e.getMessage());
+    public ResponseEntity<byte[]> handleValidationException(final ValidationException e) {
+        if (metrics != null) {
+            metrics.validationFailed(1);
+        }
+        return respond(HttpStatus.BAD_REQUEST, e.getMessage());
     }
 
     @ExceptionHandler
-    @ResponseStatus(HttpStatus.BAD_REQUEST)
-    public ErrorResponse handleIncorrectObjectStructure(final IncorrectObjectStructureException e) {
-        return new ErrorResponse(e.getMessage());
+    public ResponseEntity<byte[]> handleIncorrectObjectStructure(final IncorrectObjectStructureException e) {
+        return respond(HttpStatus.BAD_REQUEST, e.getMessage());
     }
 
     @ExceptionHandler
-    @ResponseStatus(HttpStatus.NOT_FOUND)
-    public ErrorResponse handleVNotFoundException(final NotFoundException e) {
-        return new ErrorResponse(e.getMessage());
+    public ResponseEntity<byte[]> handleVNotFoundException(final NotFoundException e) {
+        return respond(HttpStatus.NOT_FOUND, e.getMessage());
+    }
+
+    private static ResponseEntity<byte[]> respond(HttpStatus status, String message) {
+        return new ResponseEntity<>(new ErrorResponse(message).toJson(), JSON, status);
+    }
+
+    private static HttpHeaders jsonHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return headers;
     }
 }
@@ -1,22 +1,71 @@
 package ru.yandex.practicum.filmorate.controller;
 
 import lombok.AllArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.BatchResult;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Like;
 import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.SearchService;
+import ru.yandex.practicum.filmorate.service.TrendingService;
 
 import javax.validation.Valid;
+import java.time.LocalDate;
 import java.util.Collection;
+import java.util.List;
 
 @RestController
 @AllArgsConstructor
 @RequestMapping("/films")
 public class FilmController {
     private final FilmService filmService;
+    private final NdjsonWriter ndjsonWriter;
+    private final PopularFilmsResponses popularFilmsResponses;
+    private final TrendingService trendingService;
+    private final SearchService searchService;
 
     @GetMapping
-    public Collection<Film> findAllFilms() {
-        return filmService.getAllFilms();
+    public Collection<Film> findAllFilms(@RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE)
+                                         LocalDate releasedFrom,
+                                         @RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE)
+                                         LocalDate releasedTo,
+                                         @RequestParam(required = false) Integer maxDuration,
+                                         @RequestParam(required = false) String sort,
+                                         @RequestParam(defaultValue = "100") int limit,
+                                         @RequestParam(required = false) Long after) {
+        boolean filtered = releasedFrom != null || releasedTo != null || maxDuration != null || sort != null;
+        if (after != null) {
+            // курсор без limit — страница каталога размера по умолчанию, а не весь каталог
+            if (filtered) {
+                throw new ValidationException("Параметр after не сочетается с условиями выборки");
+            }
+            return filmService.getFilmsPage(after, limit);
+        }
+        if (!filtered) {
+            return filmService.getAllFilms();
+        }
+        return filmService.findFilms(releasedFrom, releasedTo, maxDuration, sort, limit);
+    }
+
+    // с условиями выборки limit ограничивает её размер, а не страницу каталога
+    @GetMapping(params = {"limit", "!releasedFrom", "!releasedTo", "!maxDuration", "!sort"},
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public Collection<Film> findFilmsPage(@RequestParam(defaultValue = "0") long after, @RequestParam int limit) {
+        return filmService.getFilmsPage(after, limit);
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamFilms(@RequestParam(defaultValue = "0") long after,
+                                                      @RequestParam(required = false) Integer limit) {
+        return ndjsonWriter.stream(after, limit, cursor -> filmService.getFilmsPage(cursor, NdjsonWriter.PAGE_SIZE),
+                Film::getId);
     }
 
     @GetMapping("/{id}")
@@ -25,8 +74,24 @@ public class FilmController {
     }
 
     @GetMapping("/popular")
-    public Collection<Film> getPopularFilms(@RequestParam(required = false, defaultValue = "10") int count) {
-        return filmService.getPopularFilms(count);
+    public ResponseEntity<byte[]> getPopularFilms(@RequestParam(required = false, defaultValue = "10") int count,
+                                                  WebRequest request) {
+        PopularFilmsResponses.Body body = popularFilmsResponses.get(count);
+        if (request.checkNotModified(body.getEtag())) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(body.getEtag()).contentType(MediaType.APPLICATION_JSON).body(body.getJson());
+    }
+
+    @GetMapping("/trending")
+    public Collection<Film> getTrendingFilms(@RequestParam(defaultValue = "24h") String window,
+                                             @RequestParam(defaultValue = "10") int count) {
+        return trendingService.getTrendingFilms(TrendingService.Window.of(window), count);
+    }
+
+    @GetMapping("/search")
+    public Collection<Film> searchFilms(@RequestParam String q, @RequestParam(defaultValue = "10") int limit) {
+        return searchService.search(q, limit);
     }
 
     @PostMapping
@@ -34,19 +99,33 @@ public class FilmController {
         return filmService.createFilm(film);
     }
 
+    @PostMapping("/batch")
+    public BatchResult<Film> createFilms(@RequestBody List<Film> films) {
+        return filmService.createFilms(films);
+    }
+
     @PutMapping
     public Film updateFilm(@Valid @RequestBody Film film) {
        return filmService.updateFilm(film);
     }
 
     @PutMapping("/{id}/like/{userId}")
-    public Film like(@PathVariable Long id, @PathVariable Long userId) {
-        return filmService.likeIt(id, userId);
+    public ResponseEntity<Film> like(@PathVariable Long id, @PathVariable Long userId,
+                                     @RequestHeader(value = WriteHeaders.READ_YOUR_WRITES, defaultValue = "false")
+                                     boolean readYourWrites) {
+        return WriteHeaders.respond(filmService.likeIt(id, userId, readYourWrites));
+    }
+
+    @PutMapping("/likes/batch")
+    public BatchResult<Like> likeAll(@RequestBody List<Like> likes) {
+        return filmService.likeAll(likes);
     }
 
     @DeleteMapping("/{id}/like/{userId}")
-    public Film deleteLike(@PathVariable Long id, @PathVariable Long userId) {
-        return filmService.deleteLike(id, userId);
+    public ResponseEntity<Film> deleteLike(@PathVariable Long id, @PathVariable Long userId,
+                                           @RequestHeader(value = WriteHeaders.READ_YOUR_WRITES, defaultValue = "false")
+                                           boolean readYourWrites) {
+        return WriteHeaders.respond(filmService.deleteLike(id, userId, readYourWrites));
     }
 
     @DeleteMapping("/{id}")
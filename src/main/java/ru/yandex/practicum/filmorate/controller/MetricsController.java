@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.metrics.Metrics;
+
+@RestController
+@RequiredArgsConstructor
+public class MetricsController {
+    private final Metrics metrics;
+
+    @GetMapping(value = "/metrics", produces = "text/plain;version=0.0.4;charset=utf-8")
+    public String getMetrics() {
+        return metrics.scrape();
+    }
+}
@@ -0,0 +1,52 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.LongFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Потоковая выдача коллекций в формате NDJSON: сущности читаются из хранилища страницами
+ * и пишутся в сокет по мере чтения, весь список в памяти не собирается.
+ */
+@Component
+@RequiredArgsConstructor
+public class NdjsonWriter {
+    static final int PAGE_SIZE = 500;
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * @param limit максимальное число сущностей в ответе, {@code null} — без ограничения
+     */
+    public <T> ResponseEntity<StreamingResponseBody> stream(long afterId, Integer limit,
+                                                          LongFunction<Collection<T>> pageAfter,
+                                                          ToLongFunction<T> idOf) {
+        long max = limit == null ? Long.MAX_VALUE : limit;
+        StreamingResponseBody body = out -> {
+            long cursor = afterId;
+            long written = 0;
+            Collection<T> page = pageAfter.apply(cursor);
+            while (!page.isEmpty()) {
+                for (T item : page) {
+                    if (written++ >= max) {
+                        return;
+                    }
+                    out.write(objectMapper.writeValueAsBytes(item));
+                    out.write('\n');
+                    cursor = idOf.applyAsLong(item);
+                }
+                out.flush();
+                page = page.size() < PAGE_SIZE ? List.of() : pageAfter.apply(cursor);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+}
@@ -0,0 +1,75 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.storage.StripedLock;
+
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Готовые JSON-ответы {@code GET /films/popular} по каждому {@code count}.
+ * <p>
+ * Ответ пересобирается, только когда изменилась версия данных фильмов. Версия читается до
+ * построения ответа, поэтому изменение, пришедшее во время сборки, приведёт к ещё одной
+ * пересборке, а не к устаревшему ответу. ETag — md5 тела, так что он не зависит от
+ * перезапусков и совпадает у одинаковых ответов.
+ */
+@Component
+@RequiredArgsConstructor
+public class PopularFilmsResponses {
+    // count приходит от клиента, поэтому число закэшированных вариантов ограничено
+    static final int MAX_CACHED_COUNTS = 64;
+
+    private final FilmService filmService;
+    private final ObjectMapper objectMapper;
+    private final Map<Integer, Body> bodies = new ConcurrentHashMap<>();
+    private final StripedLock locks = new StripedLock();
+
+    public Body get(int count) {
+        long version = filmService.getFilmsVersion();
+        Body body = bodies.get(count);
+        if (body != null && body.version == version) {
+            return body;
+        }
+        if (body == null && bodies.size() >= MAX_CACHED_COUNTS) {
+            return build(count, version);
+        }
+        // параллельные запросы одного count ждут одну пересборку; не compute, чтобы чтение
+        // из хранилища не шло под монитором ConcurrentHashMap
+        locks.lock(count);
+        try {
+            Body current = bodies.get(count);
+            if (current != null && current.version >= version) {
+                return current;
+            }
+            Body built = build(count, version);
+            bodies.put(count, built);
+            return built;
+        } finally {
+            locks.unlock(count);
+        }
+    }
+
+    private Body build(int count, long version) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(filmService.getPopularFilms(count));
+            return new Body(version, json, "\"" + DigestUtils.md5DigestAsHex(json) + "\"");
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Value
+    public static class Body {
+        long version;
+        byte[] json;
+        String etag;
+    }
+}
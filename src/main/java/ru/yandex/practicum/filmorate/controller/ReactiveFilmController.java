@@ -0,0 +1,53 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.ReactiveFilmService;
+
+import java.time.Duration;
+
+/**
+ * Неблокирующие варианты чтений {@code /films}. Списки отдаются потоком, если клиент просит
+ * {@code application/x-ndjson} или {@code text/event-stream}, иначе одним JSON-массивом.
+ */
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/reactive/films")
+public class ReactiveFilmController {
+    private static final int MAX_WAIT_SECONDS = 60;
+
+    private final ReactiveFilmService filmService;
+
+    @GetMapping
+    public Flux<Film> findAllFilms(@RequestParam(defaultValue = "0") long after) {
+        return filmService.getAllFilms(after);
+    }
+
+    @GetMapping("/{id}")
+    public Mono<Film> getFilmById(@PathVariable long id) {
+        return filmService.getFilmById(id);
+    }
+
+    @GetMapping("/popular")
+    public Flux<Film> getPopularFilms(@RequestParam(defaultValue = "10") int count) {
+        return filmService.getPopularFilms(count);
+    }
+
+    /**
+     * Long polling: ответ приходит, когда фильмы или лайки изменятся относительно {@code version},
+     * либо по истечении {@code wait} секунд. В ответе — новая версия для следующего запроса.
+     */
+    @GetMapping("/version")
+    public Mono<Long> awaitVersion(@RequestParam(defaultValue = "-1") long version,
+                                   @RequestParam(defaultValue = "30") int wait) {
+        if (wait < 0 || wait > MAX_WAIT_SECONDS) {
+            throw new ValidationException("Время ожидания должно быть от 0 до " + MAX_WAIT_SECONDS
+                    + " секунд, а у вас: " + wait);
+        }
+        return filmService.awaitFilmsVersion(version, Duration.ofSeconds(wait));
+    }
+}
@@ -2,26 +2,53 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.model.BatchResult;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.RecommendationService;
 import ru.yandex.practicum.filmorate.service.UserService;
 
 import javax.validation.Valid;
 import java.util.Collection;
+import java.util.List;
 
 @Slf4j
 @RestController
 @RequiredArgsConstructor
 @RequestMapping("/users")
 public class UserController {
+    private static final int DEFAULT_PAGE_SIZE = 100;
 
     private final UserService userService;
+    private final NdjsonWriter ndjsonWriter;
+    private final RecommendationService recommendationService;
 
     @GetMapping
-    public Collection<User> findAllUsers() {
+    public Collection<User> findAllUsers(@RequestParam(required = false) Long after) {
+        // курсор без limit — страница размера по умолчанию, а не все пользователи
+        if (after != null) {
+            return userService.getUsersPage(after, DEFAULT_PAGE_SIZE);
+        }
         return userService.getAllUsers();
     }
 
+    @GetMapping(params = "limit", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Collection<User> findUsersPage(@RequestParam(defaultValue = "0") long after, @RequestParam int limit) {
+        return userService.getUsersPage(after, limit);
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamUsers(@RequestParam(defaultValue = "0") long after,
+                                                      @RequestParam(required = false) Integer limit) {
+        return ndjsonWriter.stream(after, limit, cursor -> userService.getUsersPage(cursor, NdjsonWriter.PAGE_SIZE),
+                User::getId);
+    }
+
     @GetMapping("/{id}")
     public User getUserById(@PathVariable Long id) {
         return userService.getUserById(id);
@@ -37,19 +64,41 @@ public class UserController {
         return userService.getCommonFriends(id, otherId);
     }
 
+    @GetMapping("/{id}/friends/suggestions")
+    public Collection<User> getFriendSuggestions(@PathVariable Long id, @RequestParam(defaultValue = "10") int count) {
+        return userService.getFriendSuggestions(id, count);
+    }
+
+    @GetMapping("/{id}/recommendations")
+    public Collection<Film> getRecommendations(@PathVariable Long id, @RequestParam(defaultValue = "10") int count) {
+        return recommendationService.getRecommendations(id, count);
+    }
+
     @PostMapping
     public User createUser(@Valid @RequestBody User user) {
         return userService.createUser(user);
     }
 
+    @PostMapping("/batch")
+    public BatchResult<User> createUsers(@RequestBody List<User> users) {
+        return userService.createUsers(users);
+    }
+
     @PutMapping
     public User updateUser(@Valid @RequestBody User user) {
         return userService.updateUser(user);
     }
 
     @PutMapping("/{id}/friends/{friendId}")
-    public User addFriend(@PathVariable Long id, @PathVariable Long friendId) {
-        return userService.addFriend(id, friendId);
+    public ResponseEntity<User> addFriend(@PathVariable Long id, @PathVariable Long friendId,
+                                          @RequestHeader(value = WriteHeaders.READ_YOUR_WRITES, defaultValue = "false")
+                                          boolean readYourWrites) {
+        return WriteHeaders.respond(userService.addFriend(id, friendId, readYourWrites));
+    }
+
+    @PutMapping("/friends/batch")
+    public BatchResult<Friendship> addFriends(@RequestBody List<Friendship> friendships) {
+        return userService.addFriends(friendships);
     }
 
     @DeleteMapping("/{id}")
@@ -58,8 +107,10 @@ public class UserController {
     }
 
     @DeleteMapping("/{id}/friends/{friendId}")
-    public User deleteFriend(@PathVariable Long id, @PathVariable Long friendId) {
-        return userService.deleteFriend(id, friendId);
+    public ResponseEntity<User> deleteFriend(@PathVariable Long id, @PathVariable Long friendId,
+                                             @RequestHeader(value = WriteHeaders.READ_YOUR_WRITES, defaultValue = "false")
+                                             boolean readYourWrites) {
+        return WriteHeaders.respond(userService.deleteFriend(id, friendId, readYourWrites));
     }
 
 }
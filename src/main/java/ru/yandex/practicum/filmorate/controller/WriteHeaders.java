@@ -0,0 +1,23 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.http.ResponseEntity;
+
+import java.util.Optional;
+
+/**
+ * Ответы на лайки и изменения дружбы при асинхронной записи.
+ * <p>
+ * По умолчанию изменение только ставится в очередь и ответ — {@code 202 Accepted} без тела.
+ * С заголовком {@code X-Read-Your-Writes: true} запрос ждёт применения изменения и возвращает
+ * обновлённую сущность, так что следующее чтение клиента его уже увидит.
+ */
+final class WriteHeaders {
+    static final String READ_YOUR_WRITES = "X-Read-Your-Writes";
+
+    private WriteHeaders() {
+    }
+
+    static <T> ResponseEntity<T> respond(Optional<T> applied) {
+        return applied.map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.accepted().build());
+    }
+}
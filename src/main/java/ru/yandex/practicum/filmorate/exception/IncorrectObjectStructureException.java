@@ -1,7 +1,10 @@
 package ru.yandex.practicum.filmorate.exception;
 
+/**
+ * Тело запроса не того вида — ответ 400. Стек вызовов не заполняется, см. {@link NotFoundException}.
+ */
 public class IncorrectObjectStructureException extends RuntimeException {
     public IncorrectObjectStructureException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
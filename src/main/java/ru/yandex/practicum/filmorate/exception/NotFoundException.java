@@ -1,7 +1,43 @@
 package ru.yandex.practicum.filmorate.exception;
 
+/**
+ * Запрошенной сущности нет — ответ 404.
+ * <p>
+ * Это ответ клиенту, а не ошибка в коде, поэтому стек вызовов не заполняется. Сообщение исключений
+ * {@link #film} и {@link #user} собирается при первом чтении: пакетные операции и индексы ловят их
+ * и обычно сообщение не читают.
+ */
 public class NotFoundException extends RuntimeException {
+    private final String subject;
+    private final Long id;
+    private String message;
+
     public NotFoundException(String message) {
-        super(message);
+        super(message, null, false, false);
+        this.subject = null;
+        this.id = null;
+        this.message = message;
+    }
+
+    private NotFoundException(String subject, Long id) {
+        super(null, null, false, false);
+        this.subject = subject;
+        this.id = id;
+    }
+
+    public static NotFoundException film(Long id) {
+        return new NotFoundException("Фильм", id);
+    }
+
+    public static NotFoundException user(Long id) {
+        return new NotFoundException("Пользователь", id);
+    }
+
+    @Override
+    public String getMessage() {
+        if (message == null && subject != null) {
+            message = subject + " с id = " + id + " не найден";
+        }
+        return message;
     }
 }
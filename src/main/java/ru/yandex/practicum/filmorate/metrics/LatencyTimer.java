@@ -0,0 +1,74 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Время вызовов одного метода.
+ * <p>
+ * Вызовы считаются все, а время замеряется у случайного одного из {@code sampleEvery}: пара вызовов
+ * {@link System#nanoTime()} и запись в гистограмму стоят около сотни наносекунд, что сравнимо с чтением
+ * из хранилища в памяти. Запись не выделяет память и не берёт блокировок: гистограмма {@link Recorder}
+ * заводится сразу на весь диапазон от наносекунды до минуты с точностью два знака, счётчики — {@link LongAdder}.
+ * Квантили считаются по замерам с прошлого опроса, число вызовов — с запуска, сумма времени оценивается по замерам.
+ */
+public final class LatencyTimer {
+    private static final long MAX_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+    private final int sampleEvery;
+    private final Recorder recorder = new Recorder(1, MAX_NANOS, 2);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sampled = new LongAdder();
+    private final LongAdder sampledNanos = new LongAdder();
+    private Histogram interval;
+
+    LatencyTimer(int sampleEvery) {
+        this.sampleEvery = sampleEvery;
+    }
+
+    /**
+     * Начало вызова; результат передаётся в {@link #stop(long)}.
+     */
+    public long start() {
+        if (sampleEvery > 1 && ThreadLocalRandom.current().nextInt(sampleEvery) != 0) {
+            return NOT_SAMPLED;
+        }
+        return System.nanoTime();
+    }
+
+    public void stop(long start) {
+        count.increment();
+        if (start == NOT_SAMPLED) {
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        recorder.recordValue(Math.min(Math.max(elapsed, 0), MAX_NANOS));
+        sampled.increment();
+        sampledNanos.add(elapsed);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Суммарное время всех вызовов, оценённое по среднему замеренных.
+     */
+    public double getTotalNanos() {
+        long samples = sampled.sum();
+        return samples == 0 ? 0 : (double) sampledNanos.sum() / samples * count.sum();
+    }
+
+    /**
+     * Гистограмма замеров с прошлого обращения; возвращённый объект переиспользуется следующим вызовом.
+     */
+    synchronized Histogram takeInterval() {
+        interval = recorder.getIntervalHistogram(interval);
+        return interval;
+    }
+}
@@ -0,0 +1,169 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Метрики приложения в текстовом формате Prometheus.
+ * <p>
+ * Таймеры и счётчики пишутся на каждом вызове и потому только складывают числа, всё остальное —
+ * квантили, значения показателей, текст — считается при опросе {@code /metrics}. Время вызова замеряется
+ * у одного из {@code filmorate.metrics.sample-every} вызовов, см. {@link LatencyTimer}.
+ */
+@Slf4j
+@Component
+public class Metrics {
+    public static final int DEFAULT_SAMPLE_EVERY = 16;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final int sampleEvery;
+    private final List<Timer> timers = new CopyOnWriteArrayList<>();
+    private final List<Gauge> gauges = new CopyOnWriteArrayList<>();
+    private final LongAdder likesAdded = new LongAdder();
+    private final LongAdder likesRemoved = new LongAdder();
+    private final LongAdder friendshipsAdded = new LongAdder();
+    private final LongAdder friendshipsRemoved = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    // опросы по очереди забирают замеры таймеров, иначе интервал одного опроса делился бы между двумя
+    private final Object intervals = new Object();
+
+    public Metrics(@Value("${filmorate.metrics.sample-every:" + DEFAULT_SAMPLE_EVERY + "}") int sampleEvery) {
+        if (sampleEvery < 1) {
+            throw new IllegalArgumentException("filmorate.metrics.sample-every должен быть не меньше 1, а у вас: "
+                    + sampleEvery);
+        }
+        this.sampleEvery = sampleEvery;
+    }
+
+    /**
+     * Таймер метода хранилища; заводится один раз при создании хранилища.
+     */
+    public LatencyTimer timer(String storage, String method) {
+        LatencyTimer timer = new LatencyTimer(sampleEvery);
+        timers.add(new Timer(storage, method, timer));
+        return timer;
+    }
+
+    /**
+     * Показатель, значение которого читается при каждом опросе.
+     */
+    public void gauge(String name, String help, LongSupplier value) {
+        gauges.add(new Gauge(name, help, value));
+    }
+
+    public void liked(long count) {
+        likesAdded.add(count);
+    }
+
+    public void unliked(long count) {
+        likesRemoved.add(count);
+    }
+
+    public void friended(long count) {
+        friendshipsAdded.add(count);
+    }
+
+    public void unfriended(long count) {
+        friendshipsRemoved.add(count);
+    }
+
+    public void validationFailed(long count) {
+        validationFailures.add(count);
+    }
+
+    /**
+     * Все метрики в формате text/plain 0.0.4. Квантили таймеров — по замерам с прошлого опроса.
+     * Показатели считают данные хранилищ (в базе — запросом), поэтому читаются без блокировки:
+     * под ней только забираются замеры таймеров.
+     */
+    public String scrape() {
+        double[] values = new double[gauges.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = read(gauges.get(i));
+        }
+        StringBuilder out = new StringBuilder(4096);
+        header(out, "filmorate_storage_call_seconds", "summary", "Время вызова метода хранилища");
+        synchronized (intervals) {
+            appendTimers(out);
+        }
+        header(out, "filmorate_likes_total", "counter", "Поставленные и снятые лайки");
+        sample(out, "filmorate_likes_total", "operation=\"add\"", likesAdded.sum());
+        sample(out, "filmorate_likes_total", "operation=\"remove\"", likesRemoved.sum());
+        header(out, "filmorate_friendships_total", "counter", "Добавленные и удалённые дружбы");
+        sample(out, "filmorate_friendships_total", "operation=\"add\"", friendshipsAdded.sum());
+        sample(out, "filmorate_friendships_total", "operation=\"remove\"", friendshipsRemoved.sum());
+        header(out, "filmorate_validation_failures_total", "counter", "Запросы и элементы пакетов, не прошедшие проверку");
+        sample(out, "filmorate_validation_failures_total", null, validationFailures.sum());
+        for (int i = 0; i < values.length; i++) {
+            Gauge gauge = gauges.get(i);
+            header(out, gauge.name, "gauge", gauge.help);
+            sample(out, gauge.name, null, values[i]);
+        }
+        return out.toString();
+    }
+
+    private void appendTimers(StringBuilder out) {
+        for (Timer timer : timers) {
+            String labels = "storage=\"" + timer.storage + "\",method=\"" + timer.method + "\"";
+            Histogram interval = timer.timer.takeInterval();
+            for (double quantile : QUANTILES) {
+                double value = interval.getTotalCount() == 0 ? Double.NaN
+                        : interval.getValueAtPercentile(quantile * 100) / NANOS_PER_SECOND;
+                sample(out, "filmorate_storage_call_seconds", labels + ",quantile=\"" + quantile + "\"", value);
+            }
+            sample(out, "filmorate_storage_call_seconds_sum", labels, timer.timer.getTotalNanos() / NANOS_PER_SECOND);
+            sample(out, "filmorate_storage_call_seconds_count", labels, timer.timer.getCount());
+        }
+    }
+
+    private static double read(Gauge gauge) {
+        try {
+            return gauge.value.getAsLong();
+        } catch (RuntimeException e) {
+            log.warn("Не удалось прочитать показатель {}", gauge.name, e);
+            return Double.NaN;
+        }
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    @AllArgsConstructor
+    private static final class Timer {
+        private final String storage;
+        private final String method;
+        private final LatencyTimer timer;
+    }
+
+    @AllArgsConstructor
+    private static final class Gauge {
+        private final String name;
+        private final String help;
+        private final LongSupplier value;
+    }
+}
@@ -0,0 +1,41 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Ответ пакетного запроса: по элементу на каждый элемент запроса в том же порядке,
+ * с результатом или текстом ошибки.
+ */
+@Getter
+public class BatchResult<T> {
+    private final List<Item<T>> items;
+    private int succeeded;
+    private int failed;
+
+    public BatchResult(int size) {
+        items = new ArrayList<>(Collections.nCopies(size, null));
+    }
+
+    public void succeeded(int index, T value) {
+        items.set(index, new Item<>(value, null));
+        succeeded++;
+    }
+
+    public void failed(int index, String error) {
+        items.set(index, new Item<>(null, error));
+        failed++;
+    }
+
+    @Value
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Item<T> {
+        T value;
+        String error;
+    }
+}
@@ -1,10 +1,33 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 
+import java.nio.charset.StandardCharsets;
+
 @AllArgsConstructor
 @Getter
 public class ErrorResponse {
+    private static final byte[] PREFIX = "{\"error\":\"".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SUFFIX = "\"}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NULL = "{\"error\":null}".getBytes(StandardCharsets.UTF_8);
+
     String error;
+
+    /**
+     * Тело ответа в том же виде, что выдал бы Jackson. Начало и конец тела заготовлены,
+     * экранируется только текст ошибки, так что сериализатор на ответ с ошибкой не ищется.
+     */
+    public byte[] toJson() {
+        if (error == null) {
+            return NULL.clone();
+        }
+        byte[] text = JsonStringEncoder.getInstance().quoteAsUTF8(error);
+        byte[] json = new byte[PREFIX.length + text.length + SUFFIX.length];
+        System.arraycopy(PREFIX, 0, json, 0, PREFIX.length);
+        System.arraycopy(text, 0, json, PREFIX.length, text.length);
+        System.arraycopy(SUFFIX, 0, json, PREFIX.length + text.length, SUFFIX.length);
+        return json;
+    }
 }
@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -10,7 +11,6 @@ import javax.validation.constraints.PastOrPresent;
 import javax.validation.constraints.Positive;
 import javax.validation.constraints.Size;
 import java.time.LocalDate;
-import java.util.HashSet;
 import java.util.Set;
 
 /**
@@ -31,5 +31,6 @@ public class Film {
     @Positive
     private int duration;
     @Builder.Default
-    private Set<Long> likes = new HashSet<>();
+    @JsonDeserialize(as = LongHashSet.class)
+    private Set<Long> likes = new LongHashSet();
 }
@@ -0,0 +1,40 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * Условия выборки фильмов: даты выхода с границами включительно, наибольшая продолжительность и порядок.
+ * Незаданное условие выборку не ограничивает.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FilmFilter {
+    private LocalDate releasedFrom;
+    private LocalDate releasedTo;
+    private Integer maxDuration;
+    @Builder.Default
+    private Sort sort = Sort.ID;
+
+    public boolean matches(Film film) {
+        if ((releasedFrom != null || releasedTo != null) && film.getReleaseDate() == null) {
+            return false;
+        }
+        return (releasedFrom == null || !film.getReleaseDate().isBefore(releasedFrom))
+                && (releasedTo == null || !film.getReleaseDate().isAfter(releasedTo))
+                && (maxDuration == null || film.getDuration() <= maxDuration);
+    }
+
+    public enum Sort {
+        // по возрастанию id
+        ID,
+        // по убыванию числа лайков, при равенстве по возрастанию id
+        POPULARITY
+    }
+}
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Лайк пользователя {@code userId} фильму {@code filmId} в пакетном запросе.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Like {
+    private long filmId;
+    private long userId;
+}
@@ -0,0 +1,327 @@
+package ru.yandex.practicum.filmorate.model;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Потокобезопасное множество id на примитивных {@code long} с открытой адресацией.
+ * Хранит по 8 байт на элемент (с учётом заполнения таблицы — около 12) вместо ~50 байт
+ * у {@code HashSet<Long>}. Запись идёт под блокировкой множества, чтение — оптимистично,
+ * без блокировки. Итератор обходит снимок, сделанный в момент его создания.
+ */
+public class LongHashSet extends AbstractSet<Long> {
+    private static final long[] EMPTY = new long[0];
+    private static final int MIN_CAPACITY = 4;
+    private static final float LOAD_FACTOR = 0.7f;
+
+    private final StampedLock lock = new StampedLock();
+    // 0 обозначает свободную ячейку, поэтому сам 0 хранится отдельным флагом
+    private long[] keys = EMPTY;
+    private boolean containsZero;
+    private volatile int size;
+    private int resizeAt;
+    // отсортированный снимок для пересечений, сбрасывается при любом изменении
+    private volatile long[] sorted;
+
+    public LongHashSet() {
+    }
+
+    public LongHashSet(Collection<? extends Long> ids) {
+        if (ids != null && !ids.isEmpty()) {
+            allocate(capacityFor(ids.size()));
+            addAll(ids);
+        }
+    }
+
+    /**
+     * Возвращает переданное множество, если это уже {@code LongHashSet}, иначе его копию.
+     */
+    public static LongHashSet from(Collection<? extends Long> ids) {
+        if (ids instanceof LongHashSet) {
+            return (LongHashSet) ids;
+        }
+        return new LongHashSet(ids);
+    }
+
+    public boolean add(long id) {
+        long stamp = lock.writeLock();
+        try {
+            if (id == 0) {
+                if (containsZero) {
+                    return false;
+                }
+                containsZero = true;
+                size++;
+                sorted = null;
+                return true;
+            }
+            if (keys.length == 0) {
+                allocate(MIN_CAPACITY);
+            }
+            int mask = keys.length - 1;
+            int slot = mix(id) & mask;
+            while (keys[slot] != 0) {
+                if (keys[slot] == id) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = id;
+            size++;
+            sorted = null;
+            if (size > resizeAt) {
+                rehash(keys.length << 1);
+            }
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public boolean remove(long id) {
+        long stamp = lock.writeLock();
+        try {
+            if (id == 0) {
+                if (!containsZero) {
+                    return false;
+                }
+                containsZero = false;
+                size--;
+                sorted = null;
+                return true;
+            }
+            int slot = indexOf(keys, id);
+            if (slot < 0) {
+                return false;
+            }
+            shiftKeys(slot);
+            size--;
+            sorted = null;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public boolean contains(long id) {
+        long stamp = lock.tryOptimisticRead();
+        boolean found = id == 0 ? containsZero : indexOf(keys, id) >= 0;
+        if (lock.validate(stamp)) {
+            return found;
+        }
+        stamp = lock.readLock();
+        try {
+            return id == 0 ? containsZero : indexOf(keys, id) >= 0;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Снимок элементов в произвольном порядке.
+     */
+    public long[] toLongArray() {
+        long stamp = lock.tryOptimisticRead();
+        long[] snapshot = collect(keys, containsZero);
+        if (lock.validate(stamp)) {
+            return snapshot;
+        }
+        stamp = lock.readLock();
+        try {
+            return collect(keys, containsZero);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Отсортированный снимок элементов. Снимок кэшируется до следующего изменения множества
+     * и разделяется между вызывающими, поэтому изменять возвращённый массив нельзя.
+     */
+    public long[] toSortedArray() {
+        long[] snapshot = sorted;
+        if (snapshot != null) {
+            return snapshot;
+        }
+        long stamp = lock.readLock();
+        try {
+            snapshot = sorted;
+            if (snapshot == null) {
+                snapshot = collect(keys, containsZero);
+                Arrays.sort(snapshot);
+                sorted = snapshot;
+            }
+            return snapshot;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean add(Long id) {
+        return add(id.longValue());
+    }
+
+    @Override
+    public boolean remove(Object id) {
+        return id instanceof Long && remove(((Long) id).longValue());
+    }
+
+    @Override
+    public boolean contains(Object id) {
+        return id instanceof Long && contains(((Long) id).longValue());
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            keys = EMPTY;
+            containsZero = false;
+            resizeAt = 0;
+            size = 0;
+            sorted = null;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Iterator<Long> iterator() {
+        long[] snapshot = toLongArray();
+        return new Iterator<>() {
+            private int next;
+            private boolean canRemove;
+
+            @Override
+            public boolean hasNext() {
+                return next < snapshot.length;
+            }
+
+            @Override
+            public Long next() {
+                if (next >= snapshot.length) {
+                    throw new NoSuchElementException();
+                }
+                canRemove = true;
+                return snapshot[next++];
+            }
+
+            @Override
+            public void remove() {
+                if (!canRemove) {
+                    throw new IllegalStateException();
+                }
+                canRemove = false;
+                LongHashSet.this.remove(snapshot[next - 1]);
+            }
+        };
+    }
+
+    private static int mix(long id) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private static int capacityFor(int expected) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * LOAD_FACTOR < expected) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    // вызывается и без блокировки, поэтому число проб ограничено размером таблицы
+    private static int indexOf(long[] table, long id) {
+        if (table.length == 0) {
+            return -1;
+        }
+        int mask = table.length - 1;
+        int slot = mix(id) & mask;
+        for (int probes = 0; probes < table.length; probes++) {
+            long current = table[slot];
+            if (current == id) {
+                return slot;
+            }
+            if (current == 0) {
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static long[] collect(long[] table, boolean zero) {
+        long[] result = new long[table.length + 1];
+        int count = 0;
+        if (zero) {
+            result[count++] = 0;
+        }
+        for (long id : table) {
+            if (id != 0) {
+                result[count++] = id;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(int capacity) {
+        long[] old = keys;
+        long[] table = new long[capacity];
+        int mask = capacity - 1;
+        for (long id : old) {
+            if (id != 0) {
+                int slot = mix(id) & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = id;
+            }
+        }
+        keys = table;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    // удаление со сдвигом следующих элементов цепочки, чтобы не оставлять «надгробий»
+    private void shiftKeys(int slot) {
+        int mask = keys.length - 1;
+        int last;
+        while (true) {
+            last = slot;
+            slot = (slot + 1) & mask;
+            long current;
+            while (true) {
+                current = keys[slot];
+                if (current == 0) {
+                    keys[last] = 0;
+                    return;
+                }
+                int ideal = mix(current) & mask;
+                if (last <= slot ? last >= ideal || ideal > slot : last >= ideal && ideal > slot) {
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[last] = current;
+        }
+    }
+}
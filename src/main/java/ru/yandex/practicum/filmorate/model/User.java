@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -10,7 +11,6 @@ import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.Past;
 import java.time.LocalDate;
-import java.util.HashSet;
 import java.util.Set;
 
 @Data
@@ -28,5 +28,6 @@ public class User {
     @Past
     private LocalDate birthday;
     @Builder.Default
-    private Set<Long> friends = new HashSet<>();
+    @JsonDeserialize(as = LongHashSet.class)
+    private Set<Long> friends = new LongHashSet();
 }
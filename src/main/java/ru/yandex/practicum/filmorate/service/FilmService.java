@@ -4,27 +4,71 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.metrics.Metrics;
+import ru.yandex.practicum.filmorate.model.BatchResult;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
+import ru.yandex.practicum.filmorate.model.Like;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 @RequiredArgsConstructor
 @Service
 public class FilmService {
     private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
+    // асинхронная запись включается свойством filmorate.writes.async.enabled
+    private final Optional<WritePipeline> writePipeline;
+    private final Metrics metrics;
     private static final int MAX_NAME_LENGTH = 200;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_BATCH_SIZE = 10_000;
 
     public Film createFilm(Film film) {
-        log.info("Проверяем выполнение необходимых условий");
+        log.trace("Проверяем выполнение необходимых условий");
         validate(film);
         return filmStorage.addFilm(film);
     }
 
+    /**
+     * Проверяет каждый фильм отдельно и сохраняет прошедшие проверку одной операцией хранилища.
+     */
+    public BatchResult<Film> createFilms(List<Film> films) {
+        validateBatchSize(films.size());
+        BatchResult<Film> result = new BatchResult<>(films.size());
+        List<Film> valid = new ArrayList<>(films.size());
+        List<Integer> validIndexes = new ArrayList<>(films.size());
+        for (int i = 0; i < films.size(); i++) {
+            try {
+                validate(films.get(i));
+                valid.add(films.get(i));
+                validIndexes.add(i);
+            } catch (ValidationException e) {
+                result.failed(i, e.getMessage());
+            }
+        }
+        List<Film> saved = filmStorage.addFilms(valid);
+        for (int i = 0; i < saved.size(); i++) {
+            result.succeeded(validIndexes.get(i), saved.get(i));
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Пакет фильмов: сохранено {}, отклонено {}", result.getSucceeded(), result.getFailed());
+        }
+        // отклонённые элементы пакета не доходят до обработчика ошибок
+        metrics.validationFailed(result.getFailed());
+        return result;
+    }
+
     public Film updateFilm(Film film) {
-        log.info("Проверяем выполнение необходимых условий");
+        log.trace("Проверяем выполнение необходимых условий");
         validate(film);
         return filmStorage.updateFilm(film);
     }
@@ -33,10 +77,44 @@ public class FilmService {
         return filmStorage.getAllFilms();
     }
 
+    /**
+     * Фильмы в диапазоне дат выхода и не длиннее {@code maxDuration}; любое условие можно не задавать.
+     * Порядок {@code sort}: {@code id} (по умолчанию) или {@code popularity}.
+     */
+    public Collection<Film> findFilms(LocalDate releasedFrom, LocalDate releasedTo, Integer maxDuration, String sort,
+                                      int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new ValidationException("Размер выборки должен быть от 1 до " + MAX_PAGE_SIZE + ", а у вас: " + limit);
+        }
+        if (releasedFrom != null && releasedTo != null && releasedFrom.isAfter(releasedTo)) {
+            throw new ValidationException("Начало периода " + releasedFrom + " позже его конца " + releasedTo);
+        }
+        FilmFilter.Sort order;
+        if (sort == null || sort.equals("id")) {
+            order = FilmFilter.Sort.ID;
+        } else if (sort.equals("popularity")) {
+            order = FilmFilter.Sort.POPULARITY;
+        } else {
+            throw new ValidationException("Сортировка должна быть id или popularity, а у вас: " + sort);
+        }
+        return filmStorage.findFilms(new FilmFilter(releasedFrom, releasedTo, maxDuration, order), limit);
+    }
+
+    public Collection<Film> getFilmsPage(long afterId, int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new ValidationException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE + ", а у вас: " + limit);
+        }
+        return filmStorage.getFilmsPage(afterId, limit);
+    }
+
     public Collection<Film> getPopularFilms(int size) {
         return filmStorage.getPopularFilms(size);
     }
 
+    public long getFilmsVersion() {
+        return filmStorage.getVersion();
+    }
+
     public Film getFilmById(Long id) {
         return filmStorage.getFilmById(id);
     }
@@ -46,14 +124,60 @@ public class FilmService {
     }
 
     public Film likeIt(Long filmId, Long userId) {
-        return filmStorage.likeIt(filmId, userId);
+        return likeIt(filmId, userId, true).orElseThrow();
     }
 
     public Film deleteLike(Long filmId, Long userId) {
-        return filmStorage.deleteLike(filmId, userId);
+        return deleteLike(filmId, userId, true).orElseThrow();
+    }
+
+    /**
+     * При асинхронной записи лайк ставится в очередь: с {@code wait} метод дожидается его применения
+     * и возвращает фильм, без — возвращает пустой результат сразу. Иначе лайк применяется сразу.
+     * Фильм и пользователь проверяются до постановки в очередь, чтобы ответ без ожидания тоже был 404.
+     */
+    public Optional<Film> likeIt(Long filmId, Long userId, boolean wait) {
+        if (writePipeline.isEmpty()) {
+            return Optional.of(filmStorage.likeIt(filmId, userId));
+        }
+        filmStorage.getFilmById(filmId);
+        userStorage.getUserById(userId);
+        return awaitFilm(filmId, writePipeline.get().like(filmId, userId), wait);
+    }
+
+    public Optional<Film> deleteLike(Long filmId, Long userId, boolean wait) {
+        if (writePipeline.isEmpty()) {
+            return Optional.of(filmStorage.deleteLike(filmId, userId));
+        }
+        filmStorage.getFilmById(filmId);
+        userStorage.getUserById(userId);
+        return awaitFilm(filmId, writePipeline.get().unlike(filmId, userId), wait);
+    }
+
+    private Optional<Film> awaitFilm(long filmId, CompletableFuture<Long> applied, boolean wait) {
+        if (!wait) {
+            return Optional.empty();
+        }
+        WritePipeline.await(applied);
+        return Optional.of(filmStorage.getFilmById(filmId));
+    }
+
+    public BatchResult<Like> likeAll(List<Like> likes) {
+        validateBatchSize(likes.size());
+        return filmStorage.likeAll(likes);
+    }
+
+    private void validateBatchSize(int size) {
+        if (size > MAX_BATCH_SIZE) {
+            throw new ValidationException("В пакете может быть не больше " + MAX_BATCH_SIZE + " элементов, а у вас: "
+                    + size);
+        }
     }
 
     private void validate(Film film) {
+        if (film == null) {
+            throw new ValidationException("Элемент пакета не может быть пустым");
+        }
         if (film.getName() == null || film.getName().isBlank()) {
             throw new ValidationException("Название не может быть пустым");
         }
@@ -61,6 +185,9 @@ public class FilmService {
             throw new ValidationException("Mаксимальная длина описания — 200 символов, а у вас: "
                     + (film.getDescription() != null ? film.getDescription().length() : 0));
         }
+        if (film.getReleaseDate() == null) {
+            throw new ValidationException("Дата релиза должна быть указана");
+        }
         if (film.getReleaseDate().isBefore(LocalDate.of(1895, 12, 28))) {
             throw new ValidationException("Дата релиза не может быть раньше 28 декабря 1895 года, а у вас : "
                     + film.getReleaseDate());
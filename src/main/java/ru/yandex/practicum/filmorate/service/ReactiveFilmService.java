@@ -0,0 +1,135 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.film.FilmListener;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.LikeListener;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Неблокирующая обёртка над {@link FilmService}: каждый вызов хранилища выполняется на
+ * {@code storageScheduler}, а результат отдаётся как {@link Mono} или {@link Flux}.
+ * <p>
+ * Ожидающие смены версии подписаны на общий сигнал, который завершается при изменении фильмов
+ * или лайков и заменяется новым. Сигналы отправляются из отдельной задачи на
+ * {@link Schedulers#parallel()}, одной на серию изменений, поэтому запрос лайка не будит ожидающих сам.
+ */
+@Service
+public class ReactiveFilmService implements FilmListener, LikeListener, SmartInitializingSingleton {
+    static final int PAGE_SIZE = 500;
+
+    private final FilmService filmService;
+    private final FilmStorage filmStorage;
+    private final Scheduler storageScheduler;
+    private final AtomicReference<Sinks.One<Void>> changed = new AtomicReference<>(Sinks.one());
+    private final AtomicBoolean signalScheduled = new AtomicBoolean();
+
+    public ReactiveFilmService(FilmService filmService, FilmStorage filmStorage, Scheduler storageScheduler) {
+        this.filmService = filmService;
+        this.filmStorage = filmStorage;
+        this.storageScheduler = storageScheduler;
+    }
+
+    /**
+     * Подписывается на изменения фильмов и лайков. В приложении вызывается после создания всех бинов.
+     */
+    public void start() {
+        filmStorage.addFilmListener(this);
+        filmStorage.addLikeListener(this);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        start();
+    }
+
+    public Mono<Film> getFilmById(long id) {
+        return Mono.fromCallable(() -> filmService.getFilmById(id)).subscribeOn(storageScheduler);
+    }
+
+    /**
+     * Все фильмы с id больше {@code afterId}. Следующая страница читается из хранилища, только
+     * когда подписчик запросил фильмы дальше уже прочитанных.
+     */
+    public Flux<Film> getAllFilms(long afterId) {
+        return page(afterId)
+                .expand(page -> page.size() < PAGE_SIZE ? Mono.empty() : page(page.get(page.size() - 1).getId()))
+                .flatMapIterable(page -> page, 1);
+    }
+
+    public Flux<Film> getPopularFilms(int count) {
+        return Mono.fromCallable(() -> filmService.getPopularFilms(count))
+                .subscribeOn(storageScheduler)
+                .flatMapIterable(films -> films);
+    }
+
+    /**
+     * Версия данных фильмов, как только она станет отличной от {@code knownVersion}, или текущая,
+     * если за {@code timeout} ничего не изменилось. Ожидание не занимает ни потоков, ни таймеров,
+     * кроме таймера самого {@code timeout}.
+     */
+    public Mono<Long> awaitFilmsVersion(long knownVersion, Duration timeout) {
+        return Mono.defer(() -> {
+                    // сигнал берётся до чтения версии, чтобы не пропустить изменение между ними
+                    Mono<Void> next = changed.get().asMono();
+                    long version = filmService.getFilmsVersion();
+                    return version != knownVersion ? Mono.just(version) : next.then(Mono.<Long>empty());
+                })
+                .repeatWhenEmpty(repeats -> repeats)
+                .timeout(timeout, Mono.fromSupplier(filmService::getFilmsVersion));
+    }
+
+    @Override
+    public void saved(Film film) {
+        versionChanged();
+    }
+
+    @Override
+    public void deleted(long filmId) {
+        versionChanged();
+    }
+
+    @Override
+    public void liked(long filmId, long userId) {
+        versionChanged();
+    }
+
+    @Override
+    public void unliked(long filmId, long userId) {
+        versionChanged();
+    }
+
+    @Override
+    public void replaced(long filmId, Set<Long> before, Set<Long> after) {
+        versionChanged();
+    }
+
+    private void versionChanged() {
+        if (signalScheduled.compareAndSet(false, true)) {
+            Schedulers.parallel().schedule(this::signal);
+        }
+    }
+
+    private void signal() {
+        // флаг снимается до замены сигнала: изменение после этого запланирует ещё одну отправку
+        signalScheduled.set(false);
+        changed.getAndSet(Sinks.one()).tryEmitEmpty();
+    }
+
+    private Mono<List<Film>> page(long afterId) {
+        return Mono.fromCallable(() -> List.copyOf(filmService.getFilmsPage(afterId, PAGE_SIZE)))
+                .subscribeOn(storageScheduler);
+    }
+}
@@ -0,0 +1,34 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import ru.yandex.practicum.filmorate.model.User;
+
+/**
+ * Неблокирующая обёртка над {@link UserService}, устроенная так же, как {@link ReactiveFilmService}.
+ */
+@Service
+@RequiredArgsConstructor
+public class ReactiveUserService {
+    private final UserService userService;
+    private final Scheduler storageScheduler;
+
+    public Mono<User> getUserById(long id) {
+        return Mono.fromCallable(() -> userService.getUserById(id)).subscribeOn(storageScheduler);
+    }
+
+    public Flux<User> getUserFriends(long id) {
+        return Mono.fromCallable(() -> userService.getUserFriends(id))
+                .subscribeOn(storageScheduler)
+                .flatMapIterable(friends -> friends);
+    }
+
+    public Flux<User> getCommonFriends(long id, long otherId) {
+        return Mono.fromCallable(() -> userService.getCommonFriends(id, otherId))
+                .subscribeOn(storageScheduler)
+                .flatMapIterable(friends -> friends);
+    }
+}
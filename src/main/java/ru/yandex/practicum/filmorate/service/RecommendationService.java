@@ -0,0 +1,420 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.LongHashSet;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.LikeListener;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Рекомендации фильмов по графу лайков.
+ * <p>
+ * Сервис держит разреженные индексы и обновляет их на каждом лайке: фильмы каждого пользователя,
+ * пользователей каждого фильма и число общих лайков у каждой пары пользователей, у которых они есть.
+ * Лайк фильму с k лайками меняет k счётчиков пар. Фильмы, у которых больше {@code maxFilmLikers}
+ * лайков, в счётчики не входят: о вкусе они говорят мало, а пар дают квадратично много.
+ * <p>
+ * Оценка фильма складывается из близости (косинусной) похожих пользователей, которым он понравился,
+ * и постоянного веса за каждого друга, которому он понравился. Запрос обходит только похожих
+ * пользователей и друзей, а не всю матрицу лайков. Если оценок нет, рекомендуются популярные фильмы.
+ * <p>
+ * Индексы обновляются не в потоке лайка: изменения встают в ограниченную очередь, и один поток
+ * применяет их пачками. Запрос лайка не ждёт ни блокировки индекса, ни пересчёта пар популярного
+ * фильма, а рекомендации отстают от лайков на время разбора очереди. Места в очереди лайк тоже не ждёт:
+ * его слушатель вызывается под блокировкой фильма. Если очередь переполнена, изменение отбрасывается,
+ * а поток индекса пересобирает индексы по лайкам из хранилища.
+ */
+@Slf4j
+@Service
+public class RecommendationService implements LikeListener, SmartInitializingSingleton {
+    private static final int SIMILAR_USERS = 50;
+    private static final double FRIEND_WEIGHT = 0.5;
+    private static final int MAX_COUNT = 100;
+    private static final LongHashSet NONE = new LongHashSet();
+    private static final int BATCH_SIZE = 1024;
+    private static final Change STOP = new Change(0, 0, false, null);
+    private static final Change REBUILD = new Change(0, 0, false, null);
+
+    private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
+    private final int maxFilmLikers;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, LongHashSet> filmsByUser = new HashMap<>();
+    private final Map<Long, LongHashSet> usersByFilm = new HashMap<>();
+    private final Map<Long, Map<Long, Integer>> coLikes = new HashMap<>();
+    // фильмы, чьи пары убраны из счётчиков; возвращаются, когда лайков становится вдвое меньше порога
+    private final LongHashSet wideFilms = new LongHashSet();
+    private final BlockingQueue<Change> changes;
+    private final AtomicBoolean rebuildNeeded = new AtomicBoolean();
+    // метки ожидания ставятся и снимаются при остановке под этой блокировкой, чтобы ни одна не осталась в очереди
+    private final Object closeLock = new Object();
+
+    private Thread indexer;
+    private volatile boolean closed;
+
+    public RecommendationService(FilmStorage filmStorage, UserStorage userStorage,
+                                 @Value("${filmorate.recommendations.max-film-likers:500}") int maxFilmLikers,
+                                 @Value("${filmorate.recommendations.queue-capacity:65536}") int queueCapacity) {
+        this.filmStorage = filmStorage;
+        this.userStorage = userStorage;
+        this.maxFilmLikers = maxFilmLikers;
+        this.changes = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    /**
+     * Запускает поток индекса, подписывается на лайки и учитывает уже сохранённые.
+     * Сохранённые лайки хранилище передаёт вместе с подпиской, поэтому лайк, снятый во время обхода,
+     * не остаётся в индексе. В приложении вызывается после создания всех бинов, то есть после
+     * восстановления хранилищ из журнала.
+     */
+    public void start() {
+        indexer = new Thread(this::indexLoop, "filmorate-recommendations");
+        indexer.setDaemon(true);
+        indexer.start();
+        filmStorage.addLikeListenerWithLikes(this);
+        awaitIndexed();
+        lock.readLock().lock();
+        try {
+            log.info("Индекс рекомендаций построен: пользователей {}, фильмов {}",
+                    filmsByUser.size(), usersByFilm.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        start();
+    }
+
+    /**
+     * Останавливает поток индекса; изменения, оставшиеся в очереди, не применяются,
+     * а ожидающие {@link #awaitIndexed()} возвращаются.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (indexer == null) {
+            return;
+        }
+        List<Change> dropped = new ArrayList<>();
+        synchronized (closeLock) {
+            closed = true;
+            changes.drainTo(dropped);
+        }
+        for (Change change : dropped) {
+            if (change.done != null) {
+                change.done.complete(null);
+            }
+        }
+        changes.put(STOP);
+        indexer.join();
+    }
+
+    /**
+     * Ждёт, пока в индекс попадут все лайки, полученные до вызова. После остановки сервиса возвращается сразу.
+     */
+    public void awaitIndexed() {
+        Change marker = new Change(0, 0, false, new CompletableFuture<>());
+        synchronized (closeLock) {
+            if (closed) {
+                return;
+            }
+            try {
+                // метку ставит не слушатель лайков, поэтому ей можно ждать места в очереди
+                changes.put(marker);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Прервано ожидание места в очереди индекса рекомендаций", e);
+            }
+        }
+        marker.done.join();
+    }
+
+    public List<Film> getRecommendations(long userId, int count) {
+        if (count <= 0 || count > MAX_COUNT) {
+            throw new ValidationException("Число рекомендаций должно быть от 1 до " + MAX_COUNT + ", а у вас: " + count);
+        }
+        User user = userStorage.getUserById(userId);
+        Map<Long, Double> scores = new HashMap<>();
+        LongHashSet own;
+        lock.readLock().lock();
+        try {
+            own = filmsByUser.getOrDefault(userId, NONE);
+            for (Map.Entry<Long, Double> similar : similarUsers(userId, own).entrySet()) {
+                addScores(scores, filmsByUser.get(similar.getKey()), own, similar.getValue());
+            }
+            for (Long friendId : user.getFriends()) {
+                addScores(scores, filmsByUser.get(friendId), own, FRIEND_WEIGHT);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (scores.isEmpty()) {
+            return popularNotLiked(own, count);
+        }
+        List<Film> films = new ArrayList<>(count);
+        for (long filmId : top(scores, count)) {
+            try {
+                films.add(filmStorage.getFilmById(filmId));
+            } catch (NotFoundException e) {
+                // фильм удалили между подсчётом и чтением
+            }
+        }
+        return films;
+    }
+
+    @Override
+    public void liked(long filmId, long userId) {
+        enqueue(new Change(filmId, userId, true, null));
+    }
+
+    @Override
+    public void unliked(long filmId, long userId) {
+        enqueue(new Change(filmId, userId, false, null));
+    }
+
+    private void enqueue(Change change) {
+        if (closed || changes.offer(change)) {
+            return;
+        }
+        rebuildNeeded.set(true);
+        // будит поток индекса; если места нет и тут, он и так разбирает очередь и увидит флаг после пачки
+        changes.offer(REBUILD);
+    }
+
+    private void indexLoop() {
+        List<Change> batch = new ArrayList<>(BATCH_SIZE);
+        try {
+            while (true) {
+                batch.add(changes.take());
+                changes.drainTo(batch, BATCH_SIZE - 1);
+                boolean rebuild = rebuildNeeded.getAndSet(false);
+                if (rebuild) {
+                    // изменения из очереди уже применены к хранилищу, пересборка прочитает их оттуда
+                    changes.drainTo(batch);
+                }
+                boolean stop = batch.remove(STOP);
+                batch.removeIf(change -> change == REBUILD);
+                apply(batch, rebuild);
+                if (stop) {
+                    return;
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void apply(List<Change> batch, boolean rebuild) {
+        lock.writeLock().lock();
+        try {
+            if (rebuild) {
+                rebuild();
+            } else {
+                for (Change change : batch) {
+                    if (change.done == null) {
+                        applyChange(change);
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        for (Change change : batch) {
+            if (change.done != null) {
+                change.done.complete(null);
+            }
+        }
+    }
+
+    private void applyChange(Change change) {
+        try {
+            if (change.like) {
+                addLike(change.filmId, change.userId);
+            } else {
+                removeLike(change.filmId, change.userId);
+            }
+        } catch (RuntimeException e) {
+            log.error("Не удалось учесть в индексе рекомендаций лайк фильму {} от пользователя {}",
+                    change.filmId, change.userId, e);
+        }
+    }
+
+    /**
+     * Строит индексы заново по лайкам из хранилища, когда часть изменений не поместилась в очередь.
+     * Изменения, пришедшие во время обхода, применятся после него; их повтор ничего не меняет.
+     */
+    private void rebuild() {
+        long start = System.nanoTime();
+        filmsByUser.clear();
+        usersByFilm.clear();
+        coLikes.clear();
+        wideFilms.clear();
+        for (Film film : filmStorage.getAllFilms()) {
+            for (long userId : LongHashSet.from(film.getLikes()).toLongArray()) {
+                addLike(film.getId(), userId);
+            }
+        }
+        log.warn("Очередь индекса рекомендаций переполнилась, индекс пересобран за {} мс",
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void addLike(long filmId, long userId) {
+        LongHashSet users = usersByFilm.computeIfAbsent(filmId, id -> new LongHashSet());
+        if (users.contains(userId)) {
+            return;
+        }
+        if (!wideFilms.contains(filmId)) {
+            if (users.size() < maxFilmLikers) {
+                for (long other : users.toLongArray()) {
+                    addPair(userId, other, 1);
+                }
+            } else {
+                addAllPairs(users, -1);
+                wideFilms.add(filmId);
+            }
+        }
+        users.add(userId);
+        filmsByUser.computeIfAbsent(userId, id -> new LongHashSet()).add(filmId);
+    }
+
+    private void removeLike(long filmId, long userId) {
+        LongHashSet users = usersByFilm.get(filmId);
+        if (users == null || !users.remove(userId)) {
+            return;
+        }
+        if (!wideFilms.contains(filmId)) {
+            for (long other : users.toLongArray()) {
+                addPair(userId, other, -1);
+            }
+        } else if (users.size() <= maxFilmLikers / 2) {
+            addAllPairs(users, 1);
+            wideFilms.remove(filmId);
+        }
+        if (users.isEmpty()) {
+            usersByFilm.remove(filmId);
+            wideFilms.remove(filmId);
+        }
+        LongHashSet films = filmsByUser.get(userId);
+        films.remove(filmId);
+        if (films.isEmpty()) {
+            filmsByUser.remove(userId);
+        }
+    }
+
+    /**
+     * Не больше {@link #SIMILAR_USERS} самых близких пользователей с косинусной близостью.
+     */
+    private Map<Long, Double> similarUsers(long userId, LongHashSet own) {
+        Map<Long, Integer> common = coLikes.getOrDefault(userId, Map.of());
+        Map<Long, Double> similarity = new HashMap<>();
+        for (Map.Entry<Long, Integer> entry : common.entrySet()) {
+            int theirs = filmsByUser.getOrDefault(entry.getKey(), NONE).size();
+            similarity.put(entry.getKey(), entry.getValue() / Math.sqrt((double) own.size() * theirs));
+        }
+        Map<Long, Double> result = new HashMap<>();
+        for (long id : top(similarity, SIMILAR_USERS)) {
+            result.put(id, similarity.get(id));
+        }
+        return result;
+    }
+
+    private static void addScores(Map<Long, Double> scores, LongHashSet films, LongHashSet own, double weight) {
+        if (films == null) {
+            return;
+        }
+        for (long filmId : films.toLongArray()) {
+            if (!own.contains(filmId)) {
+                scores.merge(filmId, weight, Double::sum);
+            }
+        }
+    }
+
+    /**
+     * Id с наибольшими значениями по убыванию, при равенстве — по возрастанию id.
+     */
+    private static List<Long> top(Map<Long, Double> values, int count) {
+        Comparator<Map.Entry<Long, Double>> order = Map.Entry.<Long, Double>comparingByValue()
+                .thenComparing(Map.Entry.<Long, Double>comparingByKey().reversed());
+        PriorityQueue<Map.Entry<Long, Double>> best = new PriorityQueue<>(order);
+        for (Map.Entry<Long, Double> entry : values.entrySet()) {
+            best.add(entry);
+            if (best.size() > count) {
+                best.poll();
+            }
+        }
+        List<Long> ids = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            ids.add(best.poll().getKey());
+        }
+        Collections.reverse(ids);
+        return ids;
+    }
+
+    private List<Film> popularNotLiked(LongHashSet own, int count) {
+        List<Film> films = new ArrayList<>(count);
+        for (Film film : filmStorage.getPopularFilms(count + own.size())) {
+            if (films.size() == count) {
+                break;
+            }
+            if (!own.contains(film.getId())) {
+                films.add(film);
+            }
+        }
+        return films;
+    }
+
+    private void addAllPairs(LongHashSet users, int delta) {
+        long[] ids = users.toLongArray();
+        for (int i = 0; i < ids.length; i++) {
+            for (int j = i + 1; j < ids.length; j++) {
+                addPair(ids[i], ids[j], delta);
+            }
+        }
+    }
+
+    private void addPair(long first, long second, int delta) {
+        addCount(first, second, delta);
+        addCount(second, first, delta);
+    }
+
+    private void addCount(long userId, long otherId, int delta) {
+        Map<Long, Integer> counts = coLikes.computeIfAbsent(userId, id -> new HashMap<>());
+        counts.merge(otherId, delta, (current, change) -> current + change == 0 ? null : current + change);
+        if (counts.isEmpty()) {
+            coLikes.remove(userId);
+        }
+    }
+
+    @AllArgsConstructor
+    private static final class Change {
+        private final long filmId;
+        private final long userId;
+        private final boolean like;
+        // метка ожидания: завершается, когда применены все изменения перед ней
+        private final CompletableFuture<Void> done;
+    }
+}
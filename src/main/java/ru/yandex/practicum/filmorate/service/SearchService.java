@@ -0,0 +1,348 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.LongHashSet;
+import ru.yandex.practicum.filmorate.storage.film.FilmListener;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.LikeListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Полнотекстовый поиск фильмов по названию и описанию.
+ * <p>
+ * Индекс обратный: для каждого слова хранится множество id фильмов, где оно встречается, а для каждого
+ * фильма — его слова с частотами и длина текста. Индекс обновляется по событиям хранилища, поэтому
+ * создание, обновление, удаление и восстановление фильма из журнала сразу видны в поиске.
+ * <p>
+ * Оценка — BM25, слова названия считаются дважды, к ней прибавляется логарифм числа лайков с весом
+ * {@link #LIKES_WEIGHT}. Перебираются только фильмы из списков слов запроса. Слово, которое встречается
+ * чаще чем в {@link #MAX_SCANNED_POSTINGS} фильмах, своих фильмов в кандидаты не добавляет, а только
+ * повышает оценку кандидатов из более редких слов; если редких слов в запросе нет, перебираются
+ * фильмы с наибольшим числом лайков из списка самого редкого.
+ */
+@Slf4j
+@Service
+public class SearchService implements FilmListener, LikeListener, SmartInitializingSingleton {
+    private static final int MAX_LIMIT = 100;
+    private static final int MAX_QUERY_TERMS = 16;
+    private static final int MAX_SCANNED_POSTINGS = 50_000;
+    private static final int NAME_WEIGHT = 2;
+    private static final double LIKES_WEIGHT = 0.3;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final Comparator<Hit> WORST_FIRST = Comparator.comparingDouble(Hit::getScore)
+            .thenComparing(Comparator.comparingLong(Hit::getFilmId).reversed());
+
+    private final FilmStorage filmStorage;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, LongHashSet> postings = new HashMap<>();
+    private final Map<Long, Document> documents = new HashMap<>();
+    private long totalLength;
+
+    public SearchService(FilmStorage filmStorage) {
+        this.filmStorage = filmStorage;
+    }
+
+    /**
+     * Подписывается на изменения и индексирует уже сохранённые фильмы. В приложении вызывается после
+     * создания всех бинов, то есть после восстановления хранилищ из журнала.
+     */
+    public void start() {
+        filmStorage.addFilmListener(this);
+        filmStorage.addLikeListener(this);
+        for (Film film : filmStorage.getAllFilms()) {
+            saved(film);
+        }
+        log.info("Поисковый индекс построен: фильмов {}, слов {}", documents.size(), postings.size());
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        start();
+    }
+
+    public List<Film> search(String query, int limit) {
+        if (query == null || query.isBlank()) {
+            throw new ValidationException("Поисковый запрос не может быть пустым");
+        }
+        if (limit <= 0 || limit > MAX_LIMIT) {
+            throw new ValidationException("Число результатов должно быть от 1 до " + MAX_LIMIT + ", а у вас: " + limit);
+        }
+        List<String> terms = new ArrayList<>(tokenize(query).keySet());
+        if (terms.size() > MAX_QUERY_TERMS) {
+            terms = terms.subList(0, MAX_QUERY_TERMS);
+        }
+        PriorityQueue<Hit> best = new PriorityQueue<>(limit + 1, WORST_FIRST);
+        lock.readLock().lock();
+        try {
+            Candidates candidates = score(terms);
+            for (int i = 0; i < candidates.ids.length; i++) {
+                Document document = candidates.documents[i];
+                double score = candidates.scores[i] + LIKES_WEIGHT * Math.log1p(Math.max(document.likes.get(), 0));
+                best.add(new Hit(candidates.ids[i], score));
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        LinkedList<Film> films = new LinkedList<>();
+        while (!best.isEmpty()) {
+            try {
+                films.addFirst(filmStorage.getFilmById(best.poll().getFilmId()));
+            } catch (NotFoundException e) {
+                // фильм удалили между поиском и чтением
+            }
+        }
+        return films;
+    }
+
+    @Override
+    public void saved(Film film) {
+        Map<String, Integer> terms = tokenize(film.getName());
+        terms.replaceAll((term, count) -> count * NAME_WEIGHT);
+        tokenize(film.getDescription()).forEach((term, count) -> terms.merge(term, count, Integer::sum));
+        Document document = new Document(terms, film.getLikes() == null ? 0 : film.getLikes().size());
+        lock.writeLock().lock();
+        try {
+            remove(film.getId());
+            for (String term : document.terms) {
+                postings.computeIfAbsent(term, t -> new LongHashSet()).add(film.getId());
+            }
+            documents.put(film.getId(), document);
+            totalLength += document.length;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void deleted(long filmId) {
+        lock.writeLock().lock();
+        try {
+            remove(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void liked(long filmId, long userId) {
+        changeLikes(filmId, 1);
+    }
+
+    @Override
+    public void unliked(long filmId, long userId) {
+        changeLikes(filmId, -1);
+    }
+
+    /**
+     * Лайки, пришедшие вместе с фильмом, уже учтены в {@link #saved(Film)}.
+     */
+    @Override
+    public void replaced(long filmId, Set<Long> before, Set<Long> after) {
+    }
+
+    /**
+     * Слова текста с числом вхождений: буквы и цифры в нижнем регистре, «ё» приводится к «е»,
+     * однобуквенные слова пропускаются. Подходит для русского и английского текста, но без
+     * приведения слов к начальной форме.
+     */
+    static Map<String, Integer> tokenize(String text) {
+        // слова отсортированы: документ ищет частоту слова двоичным поиском
+        Map<String, Integer> terms = new TreeMap<>();
+        if (text == null) {
+            return terms;
+        }
+        StringBuilder term = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                c = Character.toLowerCase(c);
+                term.append(c == 'ё' ? 'е' : c);
+            } else if (term.length() > 0) {
+                if (term.length() > 1) {
+                    terms.merge(term.toString(), 1, Integer::sum);
+                }
+                term.setLength(0);
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * BM25 кандидатов по словам запроса. Вызывается под блокировкой чтения.
+     */
+    private Candidates score(List<String> terms) {
+        List<LongHashSet> lists = new ArrayList<>(terms.size());
+        List<String> found = new ArrayList<>(terms.size());
+        for (String term : terms) {
+            LongHashSet list = postings.get(term);
+            if (list != null) {
+                lists.add(list);
+                found.add(term);
+            }
+        }
+        if (lists.isEmpty()) {
+            return new Candidates(new long[0]);
+        }
+        int rarest = 0;
+        boolean anyRare = false;
+        for (int i = 0; i < lists.size(); i++) {
+            if (lists.get(i).size() < lists.get(rarest).size()) {
+                rarest = i;
+            }
+            anyRare |= lists.get(i).size() <= MAX_SCANNED_POSTINGS;
+        }
+        Candidates candidates;
+        if (anyRare) {
+            // размер проверяется до копирования: списки частых слов не копируются вовсе
+            LongHashSet ids = new LongHashSet();
+            for (LongHashSet list : lists) {
+                if (list.size() <= MAX_SCANNED_POSTINGS) {
+                    for (long id : list.toLongArray()) {
+                        ids.add(id);
+                    }
+                }
+            }
+            candidates = new Candidates(ids.toLongArray());
+        } else {
+            candidates = new Candidates(mostLiked(lists.get(rarest).toLongArray(), MAX_SCANNED_POSTINGS));
+        }
+        for (int i = 0; i < candidates.ids.length; i++) {
+            candidates.documents[i] = documents.get(candidates.ids[i]);
+        }
+        double averageLength = (double) totalLength / documents.size();
+        for (int i = 0; i < lists.size(); i++) {
+            String term = found.get(i);
+            double idf = Math.log(1 + (documents.size() - lists.get(i).size() + 0.5) / (lists.get(i).size() + 0.5));
+            for (int j = 0; j < candidates.ids.length; j++) {
+                Document document = candidates.documents[j];
+                int frequency = document.frequency(term);
+                if (frequency > 0) {
+                    double norm = K1 * (1 - B + B * document.length / averageLength);
+                    candidates.scores[j] += idf * frequency * (K1 + 1) / (frequency + norm);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * {@code count} фильмов из {@code ids} с наибольшим числом лайков; из равных берутся первые по порядку
+     * массива. Лайки входят в оценку, поэтому среди них вероятнее всего окажутся лучшие результаты.
+     */
+    private long[] mostLiked(long[] ids, int count) {
+        int[] likes = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            likes[i] = documents.get(ids[i]).likes.get();
+        }
+        int[] sorted = likes.clone();
+        Arrays.sort(sorted);
+        int threshold = sorted[ids.length - count];
+        int ties = count;
+        for (int value : likes) {
+            if (value > threshold) {
+                ties--;
+            }
+        }
+        long[] result = new long[count];
+        int size = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (likes[i] > threshold || likes[i] == threshold && ties-- > 0) {
+                result[size++] = ids[i];
+            }
+        }
+        return result;
+    }
+
+    private void remove(long filmId) {
+        Document document = documents.remove(filmId);
+        if (document == null) {
+            return;
+        }
+        for (String term : document.terms) {
+            LongHashSet list = postings.get(term);
+            list.remove(filmId);
+            if (list.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+        totalLength -= document.length;
+    }
+
+    private void changeLikes(long filmId, int delta) {
+        // лайки частые, поэтому счётчик меняется под блокировкой чтения, не останавливая поиск
+        lock.readLock().lock();
+        try {
+            Document document = documents.get(filmId);
+            if (document != null) {
+                document.likes.addAndGet(delta);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Слова фильма в порядке возрастания с частотами в параллельных массивах.
+     */
+    private static final class Document {
+        private final String[] terms;
+        private final int[] frequencies;
+        private final int length;
+        private final AtomicInteger likes;
+
+        Document(Map<String, Integer> terms, int likes) {
+            this.terms = terms.keySet().toArray(new String[0]);
+            this.frequencies = terms.values().stream().mapToInt(Integer::intValue).toArray();
+            this.length = Arrays.stream(frequencies).sum();
+            this.likes = new AtomicInteger(likes);
+        }
+
+        int frequency(String term) {
+            int index = Arrays.binarySearch(terms, term);
+            return index < 0 ? 0 : frequencies[index];
+        }
+    }
+
+    /**
+     * Кандидаты с их документами и накопленной оценкой в параллельных массивах.
+     */
+    private static final class Candidates {
+        private final long[] ids;
+        private final Document[] documents;
+        private final double[] scores;
+
+        Candidates(long[] ids) {
+            this.ids = ids;
+            this.documents = new Document[ids.length];
+            this.scores = new double[ids.length];
+        }
+    }
+
+    @Value
+    private static class Hit {
+        long filmId;
+        double score;
+    }
+}
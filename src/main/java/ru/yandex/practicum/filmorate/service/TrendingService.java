@@ -0,0 +1,247 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.Value;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.LikeListener;
+
+import java.time.Clock;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Фильмы, набравшие больше всего лайков за последний час, сутки или неделю.
+ * <p>
+ * У каждого фильма с недавними лайками есть два кольцевых буфера: 60 минутных корзин для часа
+ * и 168 часовых для суток и недели. Лайк прибавляет единицу к текущей корзине, снятие лайка вычитает
+ * единицу из неё же: когда был поставлен лайк, хранилище не знает, поэтому снятие учитывается приближённо.
+ * Если за неделю у фильма не учтено ни одного лайка, снятие пропускается, а суммы окон не опускаются ниже нуля,
+ * так что снятие лайка, поставленного до подписки или раньше окна, не уводит фильм в минус.
+ * Корзины, из которых вышло время, обнуляются при следующем обращении. На фильм приходится около килобайта
+ * при любом числе лайков, а счётчики фильмов без лайков за неделю удаляются при подсчёте.
+ */
+@Service
+public class TrendingService implements LikeListener, SmartInitializingSingleton {
+    private static final int MAX_COUNT = 100;
+    private static final long MINUTE = 60_000;
+    private static final long HOUR = 60 * MINUTE;
+    private static final Comparator<Score> WORST_FIRST = Comparator.comparingInt(Score::getLikes)
+            .thenComparing(Comparator.comparingLong(Score::getFilmId).reversed());
+
+    private final FilmStorage filmStorage;
+    private final Clock clock;
+    private final ConcurrentMap<Long, Counter> counters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public TrendingService(FilmStorage filmStorage) {
+        this(filmStorage, Clock.systemUTC());
+    }
+
+    public TrendingService(FilmStorage filmStorage, Clock clock) {
+        this.filmStorage = filmStorage;
+        this.clock = clock;
+    }
+
+    /**
+     * Подписывается на лайки после создания всех бинов. Восстановление из журнала подписчиков не уведомляет,
+     * поэтому старые лайки в окна не попадают.
+     */
+    public void start() {
+        filmStorage.addLikeListener(this);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        start();
+    }
+
+    public List<Film> getTrendingFilms(Window window, int count) {
+        if (count <= 0 || count > MAX_COUNT) {
+            throw new ValidationException("Число фильмов должно быть от 1 до " + MAX_COUNT + ", а у вас: " + count);
+        }
+        long now = clock.millis();
+        PriorityQueue<Score> best = new PriorityQueue<>(count + 1, WORST_FIRST);
+        Iterator<Map.Entry<Long, Counter>> iterator = counters.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Counter> entry = iterator.next();
+            Counter counter = entry.getValue();
+            int likes;
+            synchronized (counter) {
+                if (counter.isIdle(now)) {
+                    // новый лайк этого фильма создаст счётчик заново
+                    iterator.remove();
+                    continue;
+                }
+                likes = counter.sum(window, now);
+            }
+            if (likes > 0) {
+                best.add(new Score(entry.getKey(), likes));
+                if (best.size() > count) {
+                    best.poll();
+                }
+            }
+        }
+        LinkedList<Film> films = new LinkedList<>();
+        while (!best.isEmpty()) {
+            try {
+                films.addFirst(filmStorage.getFilmById(best.poll().getFilmId()));
+            } catch (NotFoundException e) {
+                // фильм удалён, его счётчик доживёт до конца недели
+            }
+        }
+        return films;
+    }
+
+    @Override
+    public void liked(long filmId, long userId) {
+        long now = clock.millis();
+        while (true) {
+            Counter counter = counters.computeIfAbsent(filmId, id -> new Counter(now));
+            synchronized (counter) {
+                // счётчик могли удалить как простаивающий между чтением и блокировкой
+                if (counters.get(filmId) == counter) {
+                    counter.like(now);
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void unliked(long filmId, long userId) {
+        Counter counter = counters.get(filmId);
+        if (counter == null) {
+            // лайков за неделю не было, вычитать нечего
+            return;
+        }
+        synchronized (counter) {
+            counter.unlike(clock.millis());
+        }
+    }
+
+    /**
+     * Лайки, пришедшие вместе с фильмом (при создании или восстановлении из журнала), поставлены
+     * неизвестно когда, поэтому в окна не попадают.
+     */
+    @Override
+    public void replaced(long filmId, Set<Long> before, Set<Long> after) {
+    }
+
+    public enum Window {
+        HOUR("1h", 1), DAY("24h", 24), WEEK("7d", 168);
+
+        private final String name;
+        private final int hours;
+
+        Window(String name, int hours) {
+            this.name = name;
+            this.hours = hours;
+        }
+
+        public static Window of(String name) {
+            for (Window window : values()) {
+                if (window.name.equals(name)) {
+                    return window;
+                }
+            }
+            throw new ValidationException("Окно должно быть 1h, 24h или 7d, а у вас: " + name);
+        }
+    }
+
+    /**
+     * Кольцевые буферы одного фильма. Все методы вызываются под блокировкой счётчика.
+     */
+    private static final class Counter {
+        private final int[] minutes = new int[60];
+        private final int[] hours = new int[Window.WEEK.hours];
+        private long minute;
+        private long hour;
+        private long changedHour;
+        // сумма часовых корзин, то есть лайки, учтённые за неделю
+        private int week;
+
+        Counter(long now) {
+            minute = now / MINUTE;
+            hour = now / HOUR;
+        }
+
+        void like(long now) {
+            advance(now);
+            changedHour = hour;
+            minutes[(int) (minute % minutes.length)]++;
+            hours[(int) (hour % hours.length)]++;
+            week++;
+        }
+
+        void unlike(long now) {
+            advance(now);
+            if (week <= 0) {
+                // за неделю нет учтённых лайков, снимают лайк, который в окна не попадал
+                return;
+            }
+            changedHour = hour;
+            minutes[(int) (minute % minutes.length)]--;
+            hours[(int) (hour % hours.length)]--;
+            week--;
+        }
+
+        int sum(Window window, long now) {
+            advance(now);
+            if (window == Window.HOUR) {
+                return Math.max(0, sum(minutes, minute, minutes.length));
+            }
+            return Math.max(0, sum(hours, hour, window.hours));
+        }
+
+        boolean isIdle(long now) {
+            return now / HOUR - changedHour >= hours.length;
+        }
+
+        private void advance(long now) {
+            clear(minutes, minute, now / MINUTE);
+            week -= clear(hours, hour, now / HOUR);
+            minute = Math.max(minute, now / MINUTE);
+            hour = Math.max(hour, now / HOUR);
+        }
+
+        /**
+         * Обнуляет корзины, прошедшие с {@code from} до {@code to}, но не больше одного круга.
+         *
+         * @return сумма обнулённых корзин
+         */
+        private static int clear(int[] buckets, long from, long to) {
+            int cleared = 0;
+            for (long bucket = from + 1; bucket <= to && bucket <= from + buckets.length; bucket++) {
+                cleared += buckets[(int) (bucket % buckets.length)];
+                buckets[(int) (bucket % buckets.length)] = 0;
+            }
+            return cleared;
+        }
+
+        private static int sum(int[] buckets, long current, int size) {
+            int total = 0;
+            for (long bucket = current - size + 1; bucket <= current; bucket++) {
+                total += buckets[(int) (bucket % buckets.length)];
+            }
+            return total;
+        }
+    }
+
+    @Value
+    private static class Score {
+        long filmId;
+        int likes;
+    }
+}
@@ -1,27 +1,80 @@
 package ru.yandex.practicum.filmorate.service;
 
 import lombok.RequiredArgsConstructor;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.metrics.Metrics;
+import ru.yandex.practicum.filmorate.model.BatchResult;
+import ru.yandex.practicum.filmorate.model.LongHashSet;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 @RequiredArgsConstructor
 @Service
 public class UserService {
     private final UserStorage userStorage;
+    // асинхронная запись включается свойством filmorate.writes.async.enabled
+    private final Optional<WritePipeline> writePipeline;
+    private final Metrics metrics;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_BATCH_SIZE = 10_000;
+    private static final int MAX_SUGGESTIONS = 100;
+    private static final int MAX_EXPANDED_FRIENDS = 500;
+    // в начале кучи худший кандидат: меньше общих друзей, при равенстве — больший id
+    private static final Comparator<Suggestion> WORST_FIRST = Comparator.comparingInt(Suggestion::getMutual)
+            .thenComparing(Comparator.comparingLong(Suggestion::getId).reversed());
 
     public User createUser(User user) {
-        log.info("Проверяем выполнение необходимых условий");
+        log.trace("Проверяем выполнение необходимых условий");
         validate(user);
         return userStorage.addUser(user);
     }
 
+    /**
+     * Проверяет каждый пользователь отдельно и сохраняет прошедшие проверку одной операцией хранилища.
+     */
+    public BatchResult<User> createUsers(List<User> users) {
+        validateBatchSize(users.size());
+        BatchResult<User> result = new BatchResult<>(users.size());
+        List<User> valid = new ArrayList<>(users.size());
+        List<Integer> validIndexes = new ArrayList<>(users.size());
+        for (int i = 0; i < users.size(); i++) {
+            try {
+                validate(users.get(i));
+                valid.add(users.get(i));
+                validIndexes.add(i);
+            } catch (ValidationException e) {
+                result.failed(i, e.getMessage());
+            }
+        }
+        List<User> saved = userStorage.addUsers(valid);
+        for (int i = 0; i < saved.size(); i++) {
+            result.succeeded(validIndexes.get(i), saved.get(i));
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Пакет пользователей: сохранено {}, отклонено {}", result.getSucceeded(), result.getFailed());
+        }
+        // отклонённые элементы пакета не доходят до обработчика ошибок
+        metrics.validationFailed(result.getFailed());
+        return result;
+    }
+
     public User updateUser(User user) {
         validate(user);
         return userStorage.updateUser(user);
@@ -39,12 +92,54 @@ public class UserService {
         return userStorage.getAllUsers();
     }
 
+    public Collection<User> getUsersPage(long afterId, int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new ValidationException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE + ", а у вас: " + limit);
+        }
+        return userStorage.getUsersPage(afterId, limit);
+    }
+
     public User addFriend(Long userId, Long friendId) {
-        return userStorage.addFriend(userId, friendId);
+        return addFriend(userId, friendId, true).orElseThrow();
     }
 
     public User deleteFriend(Long userId, Long friendId) {
-        return userStorage.deleteFriend(userId, friendId);
+        return deleteFriend(userId, friendId, true).orElseThrow();
+    }
+
+    /**
+     * Как {@link FilmService#likeIt(Long, Long, boolean)}: при асинхронной записи без {@code wait}
+     * изменение только ставится в очередь.
+     */
+    public Optional<User> addFriend(Long userId, Long friendId, boolean wait) {
+        if (writePipeline.isEmpty()) {
+            return Optional.of(userStorage.addFriend(userId, friendId));
+        }
+        userStorage.getUserById(userId);
+        userStorage.getUserById(friendId);
+        return awaitUser(userId, writePipeline.get().friend(userId, friendId), wait);
+    }
+
+    public Optional<User> deleteFriend(Long userId, Long friendId, boolean wait) {
+        if (writePipeline.isEmpty()) {
+            return Optional.of(userStorage.deleteFriend(userId, friendId));
+        }
+        userStorage.getUserById(userId);
+        userStorage.getUserById(friendId);
+        return awaitUser(userId, writePipeline.get().unfriend(userId, friendId), wait);
+    }
+
+    private Optional<User> awaitUser(long userId, CompletableFuture<Long> applied, boolean wait) {
+        if (!wait) {
+            return Optional.empty();
+        }
+        WritePipeline.await(applied);
+        return Optional.of(userStorage.getUserById(userId));
+    }
+
+    public BatchResult<Friendship> addFriends(List<Friendship> friendships) {
+        validateBatchSize(friendships.size());
+        return userStorage.addFriends(friendships);
     }
 
     public Collection<User> getUserFriends(Long id) {
@@ -55,18 +150,91 @@ public class UserService {
         return userStorage.getCommonFriends(userId, otherId);
     }
 
+    /**
+     * Друзья друзей по убыванию числа общих друзей, при равенстве — по возрастанию id.
+     * <p>
+     * Обход в ширину ограничен двумя уровнями и {@link #MAX_EXPANDED_FRIENDS} друзьями на пользователя,
+     * поэтому у пользователя с огромным списком друзей ответ не дольше, чем у остальных. Из длинного списка
+     * берётся выборка по хэшу id, а не самые старые аккаунты (см. {@link UserStorage#getFriendIds}).
+     * Друзья второго уровня читаются как id, считаются после сортировки массива, а пользователи читаются
+     * только для попавших в ответ.
+     */
+    public List<User> getFriendSuggestions(Long userId, int count) {
+        if (count <= 0 || count > MAX_SUGGESTIONS) {
+            throw new ValidationException("Число предложений должно быть от 1 до " + MAX_SUGGESTIONS + ", а у вас: "
+                    + count);
+        }
+        LongHashSet known = LongHashSet.from(userStorage.getUserById(userId).getFriends());
+        long[] friends = userStorage.getFriendIds(List.of(userId), MAX_EXPANDED_FRIENDS)
+                .getOrDefault(userId, new long[0]);
+        List<Long> expanded = new ArrayList<>(friends.length);
+        for (long friendId : friends) {
+            expanded.add(friendId);
+        }
+        Collection<long[]> secondLevel = userStorage.getFriendIds(expanded, MAX_EXPANDED_FRIENDS).values();
+        long[] candidates = new long[secondLevel.stream().mapToInt(ids -> ids.length).sum()];
+        int size = 0;
+        for (long[] ids : secondLevel) {
+            for (long id : ids) {
+                if (id != userId && !known.contains(id)) {
+                    candidates[size++] = id;
+                }
+            }
+        }
+        Arrays.sort(candidates, 0, size);
+        PriorityQueue<Suggestion> best = new PriorityQueue<>(count + 1, WORST_FIRST);
+        for (int from = 0, to; from < size; from = to) {
+            to = from + 1;
+            while (to < size && candidates[to] == candidates[from]) {
+                to++;
+            }
+            best.add(new Suggestion(candidates[from], to - from));
+            if (best.size() > count) {
+                best.poll();
+            }
+        }
+        LinkedList<User> suggestions = new LinkedList<>();
+        while (!best.isEmpty()) {
+            try {
+                suggestions.addFirst(userStorage.getUserById(best.poll().getId()));
+            } catch (NotFoundException e) {
+                // пользователя удалили во время обхода
+            }
+        }
+        return suggestions;
+    }
+
+    private void validateBatchSize(int size) {
+        if (size > MAX_BATCH_SIZE) {
+            throw new ValidationException("В пакете может быть не больше " + MAX_BATCH_SIZE + " элементов, а у вас: "
+                    + size);
+        }
+    }
+
     private void validate(User user) {
+        if (user == null) {
+            throw new ValidationException("Элемент пакета не может быть пустым");
+        }
         if (user.getEmail() == null || user.getEmail().isBlank() || !user.getEmail().contains("@")) {
             throw new ValidationException("Электронная почта должна быть указана");
         }
-        if (user.getLogin() == null || user.getLogin().contains(" ")) {
+        if (user.getLogin() == null || user.getLogin().isBlank() || user.getLogin().contains(" ")) {
             throw new ValidationException("Логин не может быть пустым и содержать пробелы");
         }
         if (user.getName() == null || user.getName().isBlank()) {
             user.setName(user.getLogin());
         }
+        if (user.getBirthday() == null) {
+            throw new ValidationException("Дата рождения должна быть указана");
+        }
         if (user.getBirthday().isAfter(LocalDate.now())) {
             throw new ValidationException("Дата рождения не может быть в будущем");
         }
     }
+
+    @Value
+    private static class Suggestion {
+        long id;
+        int mutual;
+    }
 }
@@ -0,0 +1,257 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.BatchResult;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Асинхронная запись лайков и дружб ({@code filmorate.writes.async.enabled=true}).
+ * <p>
+ * Запрос кладёт изменение в ограниченную очередь и сразу получает future. Один поток забирает
+ * изменения пачками и схлопывает изменения одной пары: из лайка и снятия лайка одного пользователя
+ * одному фильму остаётся последнее. Остаток пачки применяется пакетными операциями хранилищ,
+ * после чего пачка получает номер версии и future её изменений завершаются этим номером.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "filmorate.writes.async.enabled", havingValue = "true")
+public class WritePipeline {
+    private static final Change STOP = new Change(null, 0, 0, null);
+
+    private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
+    private final BlockingQueue<Change> queue;
+    private final int batchSize;
+    private final Object closeLock = new Object();
+
+    private Thread writer;
+    private volatile boolean closed;
+    private volatile long version;
+
+    public WritePipeline(FilmStorage filmStorage, UserStorage userStorage,
+                         @Value("${filmorate.writes.async.queue-capacity:65536}") int queueCapacity,
+                         @Value("${filmorate.writes.async.batch-size:1024}") int batchSize) {
+        this.filmStorage = filmStorage;
+        this.userStorage = userStorage;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+    }
+
+    @PostConstruct
+    public void open() {
+        writer = new Thread(this::writeLoop, "filmorate-writes");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Дожидается применения всех изменений, поставленных до вызова, и останавливает поток записи.
+     * Изменения, которые поток записи не успел применить, завершаются ошибкой.
+     */
+    @PreDestroy
+    public void close() throws InterruptedException {
+        synchronized (closeLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            // под тем же замком, что и постановка изменений, поэтому после метки остановки ничего не встанет
+            queue.put(STOP);
+        }
+        writer.join();
+        List<Change> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        rest.remove(STOP);
+        rest.forEach(change -> change.done.completeExceptionally(
+                new IllegalStateException("Асинхронная запись остановлена")));
+        log.info("Асинхронная запись остановлена, версия {}", version);
+    }
+
+    public CompletableFuture<Long> like(long filmId, long userId) {
+        return submit(Kind.LIKE, filmId, userId);
+    }
+
+    public CompletableFuture<Long> unlike(long filmId, long userId) {
+        return submit(Kind.UNLIKE, filmId, userId);
+    }
+
+    public CompletableFuture<Long> friend(long userId, long friendId) {
+        return submit(Kind.FRIEND, userId, friendId);
+    }
+
+    public CompletableFuture<Long> unfriend(long userId, long friendId) {
+        return submit(Kind.UNFRIEND, userId, friendId);
+    }
+
+    /**
+     * Номер последней применённой пачки.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Ждёт применения изменения; ошибка хранилища выбрасывается как есть.
+     */
+    public static long await(CompletableFuture<Long> applied) {
+        try {
+            return applied.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private CompletableFuture<Long> submit(Kind kind, long first, long second) {
+        Change change = new Change(kind, first, second, new CompletableFuture<>());
+        synchronized (closeLock) {
+            if (closed) {
+                throw new IllegalStateException("Асинхронная запись остановлена");
+            }
+            try {
+                // полная очередь притормаживает запросы, а не копит изменения без предела;
+                // поток записи разбирает её без замка, поэтому место освободится
+                queue.put(change);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Прервано ожидание места в очереди записи", e);
+            }
+        }
+        return change.done;
+    }
+
+    private void writeLoop() {
+        List<Change> batch = new ArrayList<>(batchSize);
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, batchSize - 1);
+                boolean stop = batch.remove(STOP);
+                if (!batch.isEmpty()) {
+                    apply(batch);
+                }
+                if (stop) {
+                    return;
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void apply(List<Change> batch) {
+        Map<Object, Change> last = new LinkedHashMap<>();
+        for (Change change : batch) {
+            last.put(change.key(), change);
+        }
+        Map<Kind, List<Change>> byKind = new EnumMap<>(Kind.class);
+        for (Change change : last.values()) {
+            byKind.computeIfAbsent(change.kind, kind -> new ArrayList<>()).add(change);
+        }
+        Map<Object, RuntimeException> errors = new HashMap<>();
+        // после схлопывания у каждой пары одно изменение, поэтому группы независимы:
+        // сбой одной группы не отменяет уже применённые
+        for (Map.Entry<Kind, List<Change>> group : byKind.entrySet()) {
+            try {
+                applyGroup(group.getKey(), group.getValue(), errors);
+            } catch (RuntimeException e) {
+                log.error("Не удалось применить {} изменений типа {}", group.getValue().size(), group.getKey(), e);
+                group.getValue().forEach(change -> errors.put(change.key(), e));
+            }
+        }
+        long applied = ++version;
+        for (Change change : batch) {
+            RuntimeException error = errors.get(change.key());
+            if (error != null) {
+                change.done.completeExceptionally(error);
+            } else {
+                change.done.complete(applied);
+            }
+        }
+        log.debug("Применена пачка {}: изменений {}, после схлопывания {}", applied, batch.size(), last.size());
+    }
+
+    private void applyGroup(Kind kind, List<Change> changes, Map<Object, RuntimeException> errors) {
+        BatchResult<?> result;
+        switch (kind) {
+            case LIKE:
+                result = filmStorage.likeAll(likes(changes));
+                break;
+            case UNLIKE:
+                result = filmStorage.deleteLikes(likes(changes));
+                break;
+            case FRIEND:
+                result = userStorage.addFriends(friendships(changes));
+                break;
+            case UNFRIEND:
+                result = userStorage.deleteFriends(friendships(changes));
+                break;
+            default:
+                throw new IllegalStateException("Неизвестный тип изменения: " + kind);
+        }
+        for (int i = 0; i < changes.size(); i++) {
+            String error = result.getItems().get(i).getError();
+            if (error != null) {
+                errors.put(changes.get(i).key(), new NotFoundException(error));
+            }
+        }
+    }
+
+    private static List<Like> likes(List<Change> changes) {
+        List<Like> likes = new ArrayList<>(changes.size());
+        changes.forEach(change -> likes.add(new Like(change.first, change.second)));
+        return likes;
+    }
+
+    private static List<Friendship> friendships(List<Change> changes) {
+        List<Friendship> friendships = new ArrayList<>(changes.size());
+        changes.forEach(change -> friendships.add(new Friendship(change.first, change.second)));
+        return friendships;
+    }
+
+    private enum Kind {
+        LIKE, UNLIKE, FRIEND, UNFRIEND
+    }
+
+    @AllArgsConstructor
+    private static final class Change {
+        private final Kind kind;
+        private final long first;
+        private final long second;
+        private final CompletableFuture<Long> done;
+
+        /**
+         * Изменения с одинаковым ключом схлопываются. Дружба симметрична, поэтому пара упорядочивается.
+         */
+        Object key() {
+            if (kind == Kind.LIKE || kind == Kind.UNLIKE) {
+                return new Like(first, second);
+            }
+            return new Friendship(Math.min(first, second), Math.max(first, second));
+        }
+    }
+}
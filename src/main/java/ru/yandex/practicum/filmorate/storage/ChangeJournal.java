@@ -0,0 +1,54 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+/**
+ * Журнал изменений хранилищ в памяти. Хранилище вызывает методы журнала под блокировкой
+ * изменяемой сущности до того, как применить изменение, поэтому порядок записей совпадает
+ * с порядком изменений, а изменение, которое журнал отклонил исключением, никто не увидит.
+ * Каждый метод возвращает номер записи, которого затем можно дождаться вне блокировки
+ * через {@link #awaitDurable(long)}.
+ */
+public interface ChangeJournal {
+    ChangeJournal NONE = new ChangeJournal() {
+    };
+
+    default long filmSaved(Film film) {
+        return 0;
+    }
+
+    default long filmDeleted(long filmId) {
+        return 0;
+    }
+
+    default long userSaved(User user) {
+        return 0;
+    }
+
+    default long userDeleted(long userId) {
+        return 0;
+    }
+
+    default long liked(long filmId, long userId) {
+        return 0;
+    }
+
+    default long unliked(long filmId, long userId) {
+        return 0;
+    }
+
+    default long friended(long userId, long friendId) {
+        return 0;
+    }
+
+    default long unfriended(long userId, long friendId) {
+        return 0;
+    }
+
+    /**
+     * Ждёт, пока запись с указанным номером и все предыдущие окажутся на диске.
+     */
+    default void awaitDurable(long lsn) {
+    }
+}
@@ -0,0 +1,130 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * Кэш фильмов и пользователей по id перед JDBC-хранилищами.
+ * <p>
+ * Размер ограничен, вытеснение — W-TinyLFU (Caffeine). Промах по ключу загружает значение один раз:
+ * параллельные запросы того же id ждут эту загрузку, а не идут в базу каждый сам.
+ * Отсутствующие сущности не кэшируются: загрузчик возвращает {@code null}, Caffeine молча убирает
+ * future без значения, а {@code null} получают все ждавшие его запросы. Исключение загрузчика
+ * уходит вызывающему; такие ошибки Caffeine пишет в журнал, поэтому промах ими не сообщается.
+ * <p>
+ * Загрузка идёт в потоке запроса вне блокировок кэша: в кэш кладётся незавершённый future, остальные
+ * ждут его. Так запрос к базе не держит монитор и не закрепляет виртуальный поток за несущим.
+ * <p>
+ * Хранилища сбрасывают запись после коммита изменения. Сброс убирает и незавершённую загрузку,
+ * поэтому значение, прочитанное до коммита, в кэше не остаётся.
+ */
+@Component
+@Profile("jdbc")
+public class EntityCache {
+    private final AsyncCache<Long, Film> films;
+    private final AsyncCache<Long, User> users;
+    private final AtomicLong filmsVersion = new AtomicLong();
+
+    public EntityCache(@Value("${filmorate.cache.films.maximum-size:100000}") long filmsSize,
+                       @Value("${filmorate.cache.users.maximum-size:100000}") long usersSize) {
+        films = Caffeine.newBuilder().maximumSize(filmsSize).recordStats().buildAsync();
+        users = Caffeine.newBuilder().maximumSize(usersSize).recordStats().buildAsync();
+    }
+
+    /**
+     * Фильм из кэша или из {@code loader}; {@code null}, если загрузчик его не нашёл.
+     */
+    public Film film(long id, LongFunction<Film> loader) {
+        return load(films, id, loader);
+    }
+
+    /**
+     * Пользователь из кэша или из {@code loader}; {@code null}, если загрузчик его не нашёл.
+     */
+    public User user(long id, LongFunction<User> loader) {
+        return load(users, id, loader);
+    }
+
+    private static <V> V load(AsyncCache<Long, V> cache, long id, LongFunction<V> loader) {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> future = cache.get(id, (key, executor) -> created);
+        if (future == created) {
+            try {
+                created.complete(loader.apply(id));
+            } catch (RuntimeException e) {
+                // неудачная загрузка, как и загрузка без значения, удаляется из кэша самим Caffeine
+                created.completeExceptionally(e);
+                throw e;
+            }
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public void evictFilm(long id) {
+        films.synchronous().invalidate(id);
+        filmsVersion.incrementAndGet();
+    }
+
+    public void evictFilms(Iterable<Long> ids) {
+        films.synchronous().invalidateAll(ids);
+        filmsVersion.incrementAndGet();
+    }
+
+    /**
+     * Растёт при каждом сбросе фильма, то есть после каждого изменения фильмов и их лайков.
+     */
+    public long filmsVersion() {
+        return filmsVersion.get();
+    }
+
+    public void evictUser(long id) {
+        users.synchronous().invalidate(id);
+    }
+
+    public void evictUsers(Iterable<Long> ids) {
+        users.synchronous().invalidateAll(ids);
+    }
+
+    /**
+     * Счётчики попаданий, промахов и вытеснений по каждому кэшу.
+     */
+    public Map<String, Map<String, Number>> stats() {
+        Map<String, Map<String, Number>> stats = new LinkedHashMap<>();
+        stats.put("films", stats(films.synchronous()));
+        stats.put("users", stats(users.synchronous()));
+        return stats;
+    }
+
+    private static Map<String, Number> stats(Cache<?, ?> cache) {
+        CacheStats stats = cache.stats();
+        Map<String, Number> values = new LinkedHashMap<>();
+        values.put("size", cache.estimatedSize());
+        values.put("hits", stats.hitCount());
+        values.put("misses", stats.missCount());
+        values.put("hitRate", stats.hitRate());
+        values.put("evictions", stats.evictionCount());
+        values.put("loadFailures", stats.loadFailureCount());
+        return values;
+    }
+}
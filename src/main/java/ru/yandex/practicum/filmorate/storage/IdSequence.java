@@ -0,0 +1,36 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Атомарный генератор id для хранилищ в памяти.
+ */
+public class IdSequence {
+    private final AtomicLong lastId = new AtomicLong();
+
+    public long next() {
+        return lastId.incrementAndGet();
+    }
+
+    /**
+     * Резервирует непрерывный диапазон из {@code size} id и возвращает первый из них.
+     */
+    public long reserve(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Размер блока id должен быть положительным: " + size);
+        }
+        return lastId.getAndAdd(size) + 1;
+    }
+
+    /**
+     * Сдвигает последовательность так, чтобы следующий id был больше {@code id}.
+     * Используется при старте и восстановлении хранилища.
+     */
+    public void advanceTo(long id) {
+        lastId.accumulateAndGet(id, Math::max);
+    }
+
+    public long current() {
+        return lastId.get();
+    }
+}
@@ -0,0 +1,109 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Групповая запись мелких изменений (лайков, дружбы) в базу.
+ * <p>
+ * Запрос кладёт свои строки в очередь и встаёт за блокировкой сброса. Тот, кто её получил,
+ * забирает всё накопленное и пишет одной транзакцией через JDBC batch; остальные к этому времени
+ * уже обслужены и сразу выходят. Пока идёт один сброс, следующая пачка копится сама собой,
+ * поэтому под нагрузкой на лайк приходится доля round-trip, а без нагрузки задержки нет.
+ * <p>
+ * Изменения применяются в порядке постановки в очередь. Метод возвращает управление после
+ * коммита, поэтому следующее чтение того же запроса видит изменение.
+ */
+@Slf4j
+@Component
+@Profile("jdbc")
+@RequiredArgsConstructor
+public class JdbcBatchWriter {
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Queue<Change> pending = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    /**
+     * Выполняет {@code sql} для каждой строки параметров в составе ближайшей пачки.
+     */
+    public void execute(String sql, Object[]... rows) {
+        Change change = new Change(sql, rows);
+        pending.add(change);
+        flushLock.lock();
+        try {
+            if (!change.done) {
+                flush();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+        if (change.failure != null) {
+            throw change.failure;
+        }
+    }
+
+    private void flush() {
+        List<Change> batch = new ArrayList<>();
+        for (Change change = pending.poll(); change != null; change = pending.poll()) {
+            batch.add(change);
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> write(batch));
+        } catch (RuntimeException e) {
+            // одна ошибочная строка откатывает всю пачку, поэтому повторяем по одному изменению
+            log.debug("Пачка из {} изменений не записана, повторяем по одному: {}", batch.size(), e.getMessage());
+            for (Change change : batch) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> write(List.of(change)));
+                } catch (RuntimeException failure) {
+                    change.failure = failure;
+                }
+            }
+        }
+        for (Change change : batch) {
+            change.done = true;
+        }
+        log.debug("Записана пачка из {} изменений", batch.size());
+    }
+
+    /**
+     * Пишет подряд идущие изменения с одинаковым sql одним batch-запросом.
+     */
+    private void write(List<Change> batch) {
+        int from = 0;
+        while (from < batch.size()) {
+            String sql = batch.get(from).sql;
+            List<Object[]> rows = new ArrayList<>();
+            int to = from;
+            while (to < batch.size() && batch.get(to).sql.equals(sql)) {
+                rows.addAll(List.of(batch.get(to).rows));
+                to++;
+            }
+            jdbcTemplate.batchUpdate(sql, rows);
+            from = to;
+        }
+    }
+
+    private static final class Change {
+        final String sql;
+        final Object[][] rows;
+        boolean done;
+        RuntimeException failure;
+
+        Change(String sql, Object[][] rows) {
+            this.sql = sql;
+            this.rows = rows;
+        }
+    }
+}
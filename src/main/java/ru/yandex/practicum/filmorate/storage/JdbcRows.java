@@ -0,0 +1,50 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.LongHashSet;
+
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+
+/**
+ * Общие преобразования строк JDBC-хранилищ.
+ */
+public final class JdbcRows {
+    private JdbcRows() {
+    }
+
+    /**
+     * Читает столбец-массив id, собранный через {@code ARRAY(SELECT ...)}.
+     */
+    public static LongHashSet ids(ResultSet rs, String column) throws SQLException {
+        LongHashSet ids = new LongHashSet();
+        Array array = rs.getArray(column);
+        if (array == null) {
+            return ids;
+        }
+        try {
+            for (Object id : (Object[]) array.getArray()) {
+                ids.add(((Number) id).longValue());
+            }
+        } finally {
+            array.free();
+        }
+        return ids;
+    }
+
+    /**
+     * Те из {@code ids}, что есть в таблице {@code table}, одним запросом.
+     */
+    public static LongHashSet existingIds(JdbcTemplate jdbcTemplate, String table, Collection<Long> ids) {
+        LongHashSet existing = new LongHashSet();
+        if (!ids.isEmpty()) {
+            jdbcTemplate.query("SELECT id FROM " + table + " WHERE id = ANY(?)",
+                    rs -> {
+                        existing.add(rs.getLong(1));
+                    }, (Object) ids.toArray(new Long[0]));
+        }
+        return existing;
+    }
+}
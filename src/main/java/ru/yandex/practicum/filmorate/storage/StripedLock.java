@@ -0,0 +1,82 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Набор блокировок, разделённых по id сущности. Операции над разными id в большинстве случаев
+ * берут разные блокировки, поэтому не мешают друг другу.
+ */
+public class StripedLock {
+    private static final int STRIPES_PER_CPU = 16;
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    public StripedLock() {
+        this(Runtime.getRuntime().availableProcessors() * STRIPES_PER_CPU);
+    }
+
+    public StripedLock(int minStripes) {
+        int stripes = minStripes <= 1 ? 1 : Integer.highestOneBit(minStripes - 1) << 1;
+        locks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        mask = stripes - 1;
+    }
+
+    public void lock(long id) {
+        locks[index(id)].lock();
+    }
+
+    public void unlock(long id) {
+        locks[index(id)].unlock();
+    }
+
+    /**
+     * Берёт блокировки обоих id в порядке номеров, поэтому встречные вызовы для одной пары
+     * не приводят к взаимной блокировке.
+     */
+    public void lock(long first, long second) {
+        int i = index(first);
+        int j = index(second);
+        locks[Math.min(i, j)].lock();
+        if (i != j) {
+            locks[Math.max(i, j)].lock();
+        }
+    }
+
+    public void unlock(long first, long second) {
+        int i = index(first);
+        int j = index(second);
+        if (i != j) {
+            locks[Math.max(i, j)].unlock();
+        }
+        locks[Math.min(i, j)].unlock();
+    }
+
+    /**
+     * Ждёт, пока освободятся блокировки, взятые до вызова: каждая берётся и сразу отпускается.
+     */
+    public void awaitReleased() {
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+            lock.unlock();
+        }
+    }
+
+    public <T> T withLock(long id, Supplier<T> action) {
+        lock(id);
+        try {
+            return action.get();
+        } finally {
+            unlock(id);
+        }
+    }
+
+    private int index(long id) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & mask;
+    }
+}
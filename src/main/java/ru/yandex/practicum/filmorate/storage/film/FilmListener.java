@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import ru.yandex.practicum.filmorate.model.Film;
+
+/**
+ * Получает изменения фильмов от хранилища: создание, обновление, восстановление из журнала и удаление.
+ * <p>
+ * Вызовы идут в потоке изменения. Переданный фильм — объект хранилища, сохранять ссылку на него нельзя.
+ */
+public interface FilmListener {
+    void saved(Film film);
+
+    void deleted(long filmId);
+}
@@ -0,0 +1,31 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Подписчики на изменения фильмов одного хранилища.
+ */
+class FilmListeners implements FilmListener {
+    private final List<FilmListener> listeners = new CopyOnWriteArrayList<>();
+
+    void add(FilmListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void saved(Film film) {
+        for (FilmListener listener : listeners) {
+            listener.saved(film);
+        }
+    }
+
+    @Override
+    public void deleted(long filmId) {
+        for (FilmListener listener : listeners) {
+            listener.deleted(filmId);
+        }
+    }
+}
@@ -1,12 +1,21 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
+import ru.yandex.practicum.filmorate.model.BatchResult;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
+import ru.yandex.practicum.filmorate.model.Like;
 
 import java.util.Collection;
+import java.util.List;
 
 public interface FilmStorage {
     Film addFilm(Film film);
 
+    /**
+     * Сохраняет фильмы одной операцией хранилища, id выделяются одним блоком.
+     */
+    List<Film> addFilms(List<Film> films);
+
     Film updateFilm(Film film);
 
     Film getFilmById(Long id);
@@ -15,11 +24,63 @@ public interface FilmStorage {
 
     Collection<Film> getAllFilms();
 
+    /**
+     * Страница каталога в порядке возрастания id: не более {@code limit} фильмов с id больше {@code afterId}.
+     */
+    Collection<Film> getFilmsPage(long afterId, int limit);
+
     Film likeIt(Long filmId, Long userId);
 
     Film deleteLike(Long filmId, Long userId);
 
+    /**
+     * Ставит лайки одной операцией хранилища. Лайки несуществующим фильмам или от несуществующих
+     * пользователей не ставятся и попадают в результат с ошибкой.
+     */
+    BatchResult<Like> likeAll(List<Like> likes);
+
+    /**
+     * Снимает лайки одной операцией хранилища, ошибки — как у {@link #likeAll(List)}.
+     */
+    BatchResult<Like> deleteLikes(List<Like> likes);
+
     Collection<Film> getPopularFilms(int size);
 
+    /**
+     * Не больше {@code limit} фильмов, подходящих под {@code filter}, в заданном в нём порядке.
+     */
+    Collection<Film> findFilms(FilmFilter filter, int limit);
+
+    /**
+     * Версия данных фильмов: увеличивается при каждом изменении фильма или его лайков.
+     * Позволяет не пересчитывать производные данные, пока версия не изменилась.
+     */
+    long getVersion();
+
+    /**
+     * Число фильмов. Считается при каждом вызове, поэтому годится для метрик, но не для горячего пути.
+     */
+    long getFilmCount();
+
+    /**
+     * Число лайков всех фильмов, считается так же, как {@link #getFilmCount()}.
+     */
+    long getLikeCount();
+
+    /**
+     * Подписывает на изменения лайков, в том числе при сохранении, замене и удалении фильмов.
+     */
+    void addLikeListener(LikeListener listener);
+
+    /**
+     * Подписывает как {@link #addLikeListener(LikeListener)} и передаёт уже сохранённые лайки каждого фильма
+     * через {@link LikeListener#replaced}. Хранилище в памяти передаёт лайки фильма под его блокировкой,
+     * поэтому изменения, пришедшие во время обхода, подписчик получает в том же порядке, что и хранилище.
+     */
+    void addLikeListenerWithLikes(LikeListener listener);
 
+    /**
+     * Подписывает на создание, обновление и удаление фильмов этого хранилища.
+     */
+    void addFilmListener(FilmListener listener);
 }
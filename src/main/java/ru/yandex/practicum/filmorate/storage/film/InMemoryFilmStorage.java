@@ -1,55 +1,225 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
 import lombok.RequiredArgsConstructor;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.IncorrectObjectStructureException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.BatchResult;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.LongHashSet;
+import ru.yandex.practicum.filmorate.storage.ChangeJournal;
+import ru.yandex.practicum.filmorate.storage.IdSequence;
+import ru.yandex.practicum.filmorate.storage.StripedLock;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 @Slf4j
 @RequiredArgsConstructor
 @Component
+@Profile("!jdbc")
 public class InMemoryFilmStorage implements FilmStorage {
-    private final Map<Long, Film> filmsStorage = new HashMap<>();
+    private final NavigableMap<Long, Film> filmsStorage = new ConcurrentSkipListMap<>();
+    private final PopularityIndex popularity = new PopularityIndex();
+    private final RangeIndex<LocalDate> releaseIndex = new RangeIndex<>();
+    private final RangeIndex<Integer> durationIndex = new RangeIndex<>();
+    private final IdSequence ids = new IdSequence();
+    private final StripedLock locks = new StripedLock();
+    private final AtomicLong version = new AtomicLong();
+    // лайки всех фильмов: метрика читает счётчик, а не обходит каталог
+    private final LongAdder likeCount = new LongAdder();
+    private final LikeListeners likeListeners = new LikeListeners();
+    private final FilmListeners filmListeners = new FilmListeners();
     private final UserStorage userStorage;
+    private volatile ChangeJournal journal = ChangeJournal.NONE;
+
+    public void setJournal(ChangeJournal journal) {
+        this.journal = journal;
+    }
 
     @Override
     public Film addFilm(Film film) {
         log.trace("Получаем id фильма name={}", film.getName());
-        film.setId(getNextId());
-        filmsStorage.put(film.getId(), film);
-        log.info("Новый фильм сохранён в памяти приложения id={}", film.getId());
+        long id = ids.next();
+        film.setId(id);
+        film.setLikes(LongHashSet.from(film.getLikes()));
+        long lsn;
+        locks.lock(id);
+        try {
+            // журнал первым: если он отказал, фильм не появится ни в памяти, ни у подписчиков
+            lsn = journal.filmSaved(film);
+            replace(id, film);
+            popularity.update(id, this::likesCount);
+            indexRanges(film);
+            version.incrementAndGet();
+            likeListeners.replaced(id, Set.of(), film.getLikes());
+            filmListeners.saved(film);
+        } finally {
+            locks.unlock(id);
+        }
+        journal.awaitDurable(lsn);
+        log.debug("Новый фильм сохранён в памяти приложения id={}", film.getId());
         return film;
     }
 
+    @Override
+    public List<Film> addFilms(List<Film> films) {
+        if (films.isEmpty()) {
+            return films;
+        }
+        long firstId = ids.reserve(films.size());
+        long lsn = 0;
+        for (int i = 0; i < films.size(); i++) {
+            Film film = films.get(i);
+            long id = firstId + i;
+            film.setId(id);
+            film.setLikes(LongHashSet.from(film.getLikes()));
+            locks.lock(id);
+            try {
+                lsn = journal.filmSaved(film);
+                replace(id, film);
+                popularity.update(id, this::likesCount);
+                indexRanges(film);
+                version.incrementAndGet();
+                likeListeners.replaced(id, Set.of(), film.getLikes());
+                filmListeners.saved(film);
+            } finally {
+                locks.unlock(id);
+            }
+        }
+        // одно ожидание записи журнала на весь пакет
+        journal.awaitDurable(lsn);
+        if (log.isDebugEnabled()) {
+            log.debug("Сохранено фильмов в памяти приложения: {}, id с {}", films.size(), firstId);
+        }
+        return films;
+    }
+
+    /**
+     * Кладёт фильм с уже назначенным id при восстановлении из журнала. Как и остальные методы восстановления,
+     * не пишет в журнал и не уведомляет подписчиков: они читают хранилище, когда оно уже восстановлено.
+     */
+    public void restoreFilm(Film film) {
+        film.setLikes(LongHashSet.from(film.getLikes()));
+        ids.advanceTo(film.getId());
+        locks.withLock(film.getId(), () -> {
+            replace(film.getId(), film);
+            popularity.update(film.getId(), this::likesCount);
+            indexRanges(film);
+            version.incrementAndGet();
+            return film;
+        });
+    }
+
+    /**
+     * Последний выданный id фильма, в том числе удалённого.
+     */
+    public long getLastId() {
+        return ids.current();
+    }
+
+    public void restoreLastId(long id) {
+        ids.advanceTo(id);
+    }
+
+    /**
+     * Ждёт, пока применятся изменения, уже записанные в журнал. Запись в журнал идёт под блокировкой фильма
+     * раньше изменения в памяти, поэтому достаточно дождаться каждой из блокировок.
+     */
+    public void awaitJournaledChanges() {
+        locks.awaitReleased();
+    }
+
+    public void restoreFilmDeleted(long id) {
+        locks.withLock(id, () -> {
+            if (replace(id, null) == null) {
+                throw NotFoundException.film(id);
+            }
+            popularity.remove(id);
+            releaseIndex.remove(id);
+            durationIndex.remove(id);
+            version.incrementAndGet();
+            return null;
+        });
+    }
+
+    public void restoreLike(long filmId, long userId, boolean like) {
+        userStorage.getUserById(userId);
+        locks.withLock(filmId, () -> {
+            Film film = getFilmById(filmId);
+            if (like ? film.getLikes().add(userId) : film.getLikes().remove(userId)) {
+                likeCount.add(like ? 1 : -1);
+                popularity.update(filmId, this::likesCount);
+                version.incrementAndGet();
+            }
+            return film;
+        });
+    }
+
     @Override
     public Film updateFilm(Film film) {
         if (film.getId() == null) {
             throw new IncorrectObjectStructureException("Id фильма не указан.");
         }
-        log.info("Проверяем по id наличие фильма в памяти приложения");
-        validateId(film.getId());
-        filmsStorage.put(film.getId(), film);
-        log.info("Фильм обновлён в памяти приложения id={}", film.getId());
+        log.trace("Проверяем по id наличие фильма в памяти приложения");
+        film.setLikes(LongHashSet.from(film.getLikes()));
+        long lsn;
+        locks.lock(film.getId());
+        try {
+            Film previous = getFilmById(film.getId());
+            lsn = journal.filmSaved(film);
+            replace(film.getId(), film);
+            popularity.update(film.getId(), this::likesCount);
+            indexRanges(film);
+            version.incrementAndGet();
+            likeListeners.replaced(film.getId(), previous.getLikes(), film.getLikes());
+            filmListeners.saved(film);
+        } finally {
+            locks.unlock(film.getId());
+        }
+        journal.awaitDurable(lsn);
+        log.debug("Фильм обновлён в памяти приложения id={}", film.getId());
         return film;
     }
 
     @Override
     public Film getFilmById(Long id) {
-        validateId(id);
-        return filmsStorage.get(id);
+        Film film = filmsStorage.get(id);
+        if (film == null) {
+            throw NotFoundException.film(id);
+        }
+        return film;
     }
 
     @Override
     public Film deleteFilm(Long id) {
-        validateId(id);
-        Film filmForDelete = filmsStorage.get(id);
-        filmsStorage.remove(id);
+        Film filmForDelete;
+        long lsn;
+        locks.lock(id);
+        try {
+            filmForDelete = getFilmById(id);
+            lsn = journal.filmDeleted(id);
+            replace(id, null);
+            popularity.remove(id);
+            releaseIndex.remove(id);
+            durationIndex.remove(id);
+            version.incrementAndGet();
+            likeListeners.replaced(id, filmForDelete.getLikes(), Set.of());
+            filmListeners.deleted(id);
+        } finally {
+            locks.unlock(id);
+        }
+        journal.awaitDurable(lsn);
         return filmForDelete;
     }
 
@@ -58,42 +228,313 @@ public class InMemoryFilmStorage implements FilmStorage {
         return filmsStorage.values();
     }
 
+    @Override
+    public Collection<Film> getFilmsPage(long afterId, int limit) {
+        return filmsStorage.tailMap(afterId, false).values().stream().limit(limit).collect(Collectors.toList());
+    }
+
     @Override
     public Film likeIt(Long filmId, Long userId) {
-        Film film = getFilmById(filmId);
-        userStorage.getUserById(userId);
-        film.getLikes().add(userId);
-        return film;
+        return changeLike(filmId, userId, true);
     }
 
     @Override
     public Film deleteLike(Long filmId, Long userId) {
-        Film film = getFilmById(filmId);
+        return changeLike(filmId, userId, false);
+    }
+
+    private Film changeLike(long filmId, long userId, boolean like) {
+        getFilmById(filmId);
         userStorage.getUserById(userId);
-        film.getLikes().remove(userId);
+        Film film;
+        long lsn = 0;
+        locks.lock(filmId);
+        try {
+            // перечитываем под блокировкой: фильм могли заменить или удалить
+            film = getFilmById(filmId);
+            if (film.getLikes().contains(userId) != like) {
+                lsn = like ? journal.liked(filmId, userId) : journal.unliked(filmId, userId);
+                applyLike(film, userId, like);
+            }
+        } finally {
+            locks.unlock(filmId);
+        }
+        journal.awaitDurable(lsn);
         return film;
     }
 
+    @Override
+    public BatchResult<Like> likeAll(List<Like> likes) {
+        return changeLikes(likes, true);
+    }
+
+    @Override
+    public BatchResult<Like> deleteLikes(List<Like> likes) {
+        return changeLikes(likes, false);
+    }
+
+    private BatchResult<Like> changeLikes(List<Like> likes, boolean like) {
+        BatchResult<Like> result = new BatchResult<>(likes.size());
+        long lsn = 0;
+        for (int i = 0; i < likes.size(); i++) {
+            long filmId = likes.get(i).getFilmId();
+            long userId = likes.get(i).getUserId();
+            try {
+                userStorage.getUserById(userId);
+                locks.lock(filmId);
+                try {
+                    Film film = getFilmById(filmId);
+                    if (film.getLikes().contains(userId) != like) {
+                        lsn = like ? journal.liked(filmId, userId) : journal.unliked(filmId, userId);
+                        applyLike(film, userId, like);
+                    }
+                } finally {
+                    locks.unlock(filmId);
+                }
+                result.succeeded(i, likes.get(i));
+            } catch (NotFoundException e) {
+                result.failed(i, e.getMessage());
+            }
+        }
+        journal.awaitDurable(lsn);
+        return result;
+    }
+
     @Override
     public Collection<Film> getPopularFilms(int size) {
-        Comparator<Film> comparator = Comparator.comparing(x -> x.getLikes().size());
-        comparator = comparator.reversed();
-        return getAllFilms().stream().filter(film -> !film.getLikes().isEmpty())
-                .sorted(comparator).limit(size).collect(Collectors.toList());
+        return popularity.top(size).stream().map(filmsStorage::get).filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Выборка по индексам диапазонов. Если условий несколько, диапазоны обходятся попеременно,
+     * пока один не закончится: он самый узкий, и дальше проверяются только его фильмы.
+     * Так выбор индекса не требует статистики и стоит не больше размера самого узкого диапазона
+     * на каждый индекс, а остальной каталог не читается. При сортировке по id в обходе участвует
+     * и сам каталог по возрастанию id до {@code limit} подходящих фильмов, поэтому широкий диапазон
+     * стоит столько фильмов, сколько нужно просмотреть ради {@code limit} совпадений, а не весь каталог.
+     */
+    @Override
+    public Collection<Film> findFilms(FilmFilter filter, int limit) {
+        List<Iterator<Long>> ranges = new ArrayList<>(2);
+        if (filter.getReleasedFrom() != null || filter.getReleasedTo() != null) {
+            ranges.add(releaseIndex.range(filter.getReleasedFrom(), filter.getReleasedTo()));
+        }
+        if (filter.getMaxDuration() != null) {
+            ranges.add(durationIndex.range(null, filter.getMaxDuration()));
+        }
+        boolean byPopularity = filter.getSort() == FilmFilter.Sort.POPULARITY;
+        if (ranges.isEmpty()) {
+            return byPopularity ? popularThenRest(limit) : getFilmsPage(0, limit);
+        }
+        ranges.add(byPopularity ? mostPopularMatches(filter, limit) : firstMatches(filter, limit));
+        // лайки запоминаются при отборе, чтобы порядок в куче не менялся от лайков во время запроса
+        Comparator<Match> worstFirst = byPopularity
+                ? Comparator.comparingInt(Match::getLikes).thenComparing(Match::getFilmId, Comparator.reverseOrder())
+                : Comparator.comparing(Match::getFilmId, Comparator.reverseOrder());
+        PriorityQueue<Match> best = new PriorityQueue<>(limit + 1, worstFirst);
+        LongHashSet seen = new LongHashSet();
+        for (long id : narrowest(ranges)) {
+            // при изменении фильма во время обхода он может встретиться в диапазоне дважды
+            if (!seen.add(id)) {
+                continue;
+            }
+            Film film = filmsStorage.get(id);
+            // фильм проверяется по всем условиям, это и есть пересечение с остальными индексами
+            if (film != null && filter.matches(film)) {
+                best.add(new Match(id, film.getLikes().size(), film));
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+        }
+        LinkedList<Film> films = new LinkedList<>();
+        while (!best.isEmpty()) {
+            films.addFirst(best.poll().getFilm());
+        }
+        return films;
+    }
+
+    private static long[] narrowest(List<Iterator<Long>> ranges) {
+        long[][] read = new long[ranges.size()][16];
+        int[] sizes = new int[ranges.size()];
+        while (true) {
+            for (int i = 0; i < ranges.size(); i++) {
+                if (!ranges.get(i).hasNext()) {
+                    return Arrays.copyOf(read[i], sizes[i]);
+                }
+                if (sizes[i] == read[i].length) {
+                    read[i] = Arrays.copyOf(read[i], sizes[i] * 2);
+                }
+                read[i][sizes[i]++] = ranges.get(i).next();
+            }
+        }
+    }
+
+    /**
+     * Id фильмов каталога по возрастанию, пока среди них не наберётся {@code limit} подходящих под фильтр.
+     * Каждый шаг читает один фильм, чтобы в попеременном обходе этот «диапазон» шёл наравне с индексами.
+     */
+    private Iterator<Long> firstMatches(FilmFilter filter, int limit) {
+        Iterator<Film> films = filmsStorage.values().iterator();
+        return new Iterator<>() {
+            private int matched;
+
+            @Override
+            public boolean hasNext() {
+                return matched < limit && films.hasNext();
+            }
+
+            @Override
+            public Long next() {
+                Film film = films.next();
+                if (filter.matches(film)) {
+                    matched++;
+                }
+                return film.getId();
+            }
+        };
+    }
+
+    /**
+     * Id фильмов в порядке сортировки по популярности, пока среди них не наберётся {@code limit} подходящих:
+     * сначала фильмы с лайками по рейтингу, затем фильмы без лайков по возрастанию id. Как и
+     * {@link #firstMatches}, каждый шаг читает один фильм.
+     */
+    private Iterator<Long> mostPopularMatches(FilmFilter filter, int limit) {
+        Iterator<Long> ranked = popularity.ids();
+        Iterator<Film> rest = filmsStorage.values().iterator();
+        LongHashSet counted = new LongHashSet();
+        return new Iterator<>() {
+            private int matched;
+
+            @Override
+            public boolean hasNext() {
+                return matched < limit && (ranked.hasNext() || rest.hasNext());
+            }
+
+            @Override
+            public Long next() {
+                if (ranked.hasNext()) {
+                    long id = ranked.next();
+                    Film film = filmsStorage.get(id);
+                    if (film != null && counted.add(id) && filter.matches(film)) {
+                        matched++;
+                    }
+                    return id;
+                }
+                // фильмы с лайками уже пройдены по рейтингу, повтор отсеет сам поиск
+                Film film = rest.next();
+                if (film.getLikes().isEmpty() && filter.matches(film)) {
+                    matched++;
+                }
+                return film.getId();
+            }
+        };
+    }
+
+    /**
+     * Популярные фильмы, а за ними, если их не хватило, фильмы без лайков по возрастанию id.
+     */
+    private List<Film> popularThenRest(int limit) {
+        List<Film> films = new ArrayList<>(getPopularFilms(limit));
+        LongHashSet added = new LongHashSet();
+        films.forEach(film -> added.add(film.getId()));
+        for (Iterator<Film> rest = filmsStorage.values().iterator(); films.size() < limit && rest.hasNext(); ) {
+            Film film = rest.next();
+            if (film.getLikes().isEmpty() && added.add(film.getId())) {
+                films.add(film);
+            }
+        }
+        return films;
+    }
+
+    @Override
+    public long getVersion() {
+        return version.get();
+    }
+
+    @Override
+    public long getFilmCount() {
+        return filmsStorage.size();
+    }
+
+    @Override
+    public long getLikeCount() {
+        return likeCount.sum();
+    }
+
+    @Override
+    public void addLikeListener(LikeListener listener) {
+        likeListeners.add(listener);
+    }
+
+    @Override
+    public void addLikeListenerWithLikes(LikeListener listener) {
+        likeListeners.add(listener);
+        for (Long id : filmsStorage.keySet()) {
+            locks.withLock(id, () -> {
+                Film film = filmsStorage.get(id);
+                if (film != null) {
+                    listener.replaced(id, Set.of(), film.getLikes());
+                }
+                return null;
+            });
+        }
+    }
+
+    @Override
+    public void addFilmListener(FilmListener listener) {
+        filmListeners.add(listener);
     }
 
-    private long getNextId() {
-        long currentMaxId = filmsStorage.keySet()
-                .stream()
-                .mapToLong(id -> id)
-                .max()
-                .orElse(0);
-        return ++currentMaxId;
+    private void applyLike(Film film, long userId, boolean like) {
+        if (like ? film.getLikes().add(userId) : film.getLikes().remove(userId)) {
+            likeCount.add(like ? 1 : -1);
+        }
+        popularity.update(film.getId(), this::likesCount);
+        version.incrementAndGet();
+        if (like) {
+            likeListeners.liked(film.getId(), userId);
+        } else {
+            likeListeners.unliked(film.getId(), userId);
+        }
     }
 
     protected void validateId(Long id) {
         if (!filmsStorage.containsKey(id)) {
-            throw new NotFoundException("Фильм с id = " + id + " не найден");
+            throw NotFoundException.film(id);
         }
     }
+
+    private void indexRanges(Film film) {
+        releaseIndex.update(film.getId(), film.getReleaseDate());
+        durationIndex.update(film.getId(), film.getDuration());
+    }
+
+    /**
+     * Кладёт фильм или убирает его при {@code film == null} и поправляет счётчик лайков каталога.
+     * Вызывается под блокировкой фильма.
+     */
+    private Film replace(long id, Film film) {
+        Film previous = film == null ? filmsStorage.remove(id) : filmsStorage.put(id, film);
+        likeCount.add(likesOf(film) - likesOf(previous));
+        return previous;
+    }
+
+    private static int likesOf(Film film) {
+        return film == null ? 0 : film.getLikes().size();
+    }
+
+    private int likesCount(long filmId) {
+        Film film = filmsStorage.get(filmId);
+        return film == null ? 0 : film.getLikes().size();
+    }
+
+    @Value
+    private static class Match {
+        long filmId;
+        int likes;
+        Film film;
+    }
 }
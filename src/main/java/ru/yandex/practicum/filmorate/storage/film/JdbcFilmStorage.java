@@ -0,0 +1,369 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.exception.IncorrectObjectStructureException;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.BatchResult;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.LongHashSet;
+import ru.yandex.practicum.filmorate.storage.EntityCache;
+import ru.yandex.practicum.filmorate.storage.JdbcBatchWriter;
+import ru.yandex.practicum.filmorate.storage.JdbcRows;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Component
+@Profile("jdbc")
+@RequiredArgsConstructor
+public class JdbcFilmStorage implements FilmStorage {
+    // лайки собираются в массив подзапросом по первичному ключу film_likes, без отдельного запроса на фильм
+    private static final String SELECT_FILMS = "SELECT f.id, f.name, f.description, f.release_date, f.duration, "
+            + "ARRAY(SELECT l.user_id FROM film_likes l WHERE l.film_id = f.id ORDER BY l.user_id) AS likes "
+            + "FROM films f ";
+    private static final String INSERT_FILM = "INSERT INTO films (name, description, release_date, duration) "
+            + "VALUES (?, ?, ?, ?)";
+    private static final String INSERT_LIKE = "MERGE INTO film_likes (film_id, user_id) KEY (film_id, user_id) "
+            + "VALUES (?, ?)";
+    private static final String DELETE_LIKE = "DELETE FROM film_likes WHERE film_id = ? AND user_id = ?";
+    private static final String SELECT_LIKES = "SELECT film_id, user_id FROM film_likes "
+            + "WHERE film_id = ANY(?) AND user_id = ANY(?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcBatchWriter batchWriter;
+    private final EntityCache cache;
+    private final UserStorage userStorage;
+    private final LikeListeners likeListeners = new LikeListeners();
+    private final FilmListeners filmListeners = new FilmListeners();
+
+    @Override
+    public Film addFilm(Film film) {
+        transactionTemplate.executeWithoutResult(status -> {
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+            jdbcTemplate.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement(INSERT_FILM, new String[]{"id"});
+                bindFilm(statement, film);
+                return statement;
+            }, keyHolder);
+            film.setId(keyHolder.getKey().longValue());
+            insertLikes(List.of(film));
+        });
+        cache.evictFilm(film.getId());
+        likeListeners.replaced(film.getId(), Set.of(), film.getLikes());
+        filmListeners.saved(film);
+        log.debug("Новый фильм сохранён в базе id={}", film.getId());
+        return film;
+    }
+
+    @Override
+    public List<Film> addFilms(List<Film> films) {
+        if (films.isEmpty()) {
+            return films;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(INSERT_FILM, new String[]{"id"})) {
+                    for (Film film : films) {
+                        bindFilm(statement, film);
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                    try (ResultSet keys = statement.getGeneratedKeys()) {
+                        for (Film film : films) {
+                            keys.next();
+                            film.setId(keys.getLong(1));
+                        }
+                    }
+                }
+                return null;
+            });
+            insertLikes(films);
+        });
+        cache.evictFilms(films.stream().map(Film::getId).collect(Collectors.toList()));
+        films.forEach(film -> {
+            likeListeners.replaced(film.getId(), Set.of(), film.getLikes());
+            filmListeners.saved(film);
+        });
+        if (log.isDebugEnabled()) {
+            log.debug("Сохранено фильмов в базе: {}", films.size());
+        }
+        return films;
+    }
+
+    @Override
+    public Film updateFilm(Film film) {
+        if (film.getId() == null) {
+            throw new IncorrectObjectStructureException("Id фильма не указан.");
+        }
+        Set<Long> previousLikes = new LongHashSet();
+        transactionTemplate.executeWithoutResult(status -> {
+            int updated = jdbcTemplate.update(
+                    "UPDATE films SET name = ?, description = ?, release_date = ?, duration = ? WHERE id = ?",
+                    film.getName(), film.getDescription(), film.getReleaseDate(), film.getDuration(), film.getId());
+            if (updated == 0) {
+                throw NotFoundException.film(film.getId());
+            }
+            previousLikes.addAll(jdbcTemplate.queryForList("SELECT user_id FROM film_likes WHERE film_id = ?",
+                    Long.class, film.getId()));
+            jdbcTemplate.update("DELETE FROM film_likes WHERE film_id = ?", film.getId());
+            insertLikes(List.of(film));
+        });
+        cache.evictFilm(film.getId());
+        likeListeners.replaced(film.getId(), previousLikes, film.getLikes());
+        filmListeners.saved(film);
+        log.debug("Фильм обновлён в базе id={}", film.getId());
+        return film;
+    }
+
+    @Override
+    public Film getFilmById(Long id) {
+        Film film = cache.film(id, this::loadFilm);
+        if (film == null) {
+            throw NotFoundException.film(id);
+        }
+        return film;
+    }
+
+    private Film loadFilm(long id) {
+        List<Film> films = jdbcTemplate.query(SELECT_FILMS + "WHERE f.id = ?", this::mapFilm, id);
+        return films.isEmpty() ? null : films.get(0);
+    }
+
+    @Override
+    public Film deleteFilm(Long id) {
+        Film filmForDelete = getFilmById(id);
+        jdbcTemplate.update("DELETE FROM films WHERE id = ?", id);
+        cache.evictFilm(id);
+        likeListeners.replaced(id, filmForDelete.getLikes(), Set.of());
+        filmListeners.deleted(id);
+        return filmForDelete;
+    }
+
+    @Override
+    public Collection<Film> getAllFilms() {
+        return jdbcTemplate.query(SELECT_FILMS + "ORDER BY f.id", this::mapFilm);
+    }
+
+    @Override
+    public Collection<Film> getFilmsPage(long afterId, int limit) {
+        return jdbcTemplate.query(SELECT_FILMS + "WHERE f.id > ? ORDER BY f.id LIMIT ?", this::mapFilm,
+                afterId, limit);
+    }
+
+    @Override
+    public Film likeIt(Long filmId, Long userId) {
+        return changeLike(INSERT_LIKE, filmId, userId);
+    }
+
+    @Override
+    public Film deleteLike(Long filmId, Long userId) {
+        return changeLike(DELETE_LIKE, filmId, userId);
+    }
+
+    private Film changeLike(String sql, long filmId, long userId) {
+        // проверки идут через кэш и обычно не обращаются к базе
+        boolean liked = getFilmById(filmId).getLikes().contains(userId);
+        userStorage.getUserById(userId);
+        batchWriter.execute(sql, new Object[]{filmId, userId});
+        cache.evictFilm(filmId);
+        // повторный лайк по кэшу не сообщаем; при гонке с другим запросом повтор всё же возможен
+        if (liked != INSERT_LIKE.equals(sql)) {
+            notifyLike(sql, filmId, userId);
+        }
+        return getFilmById(filmId);
+    }
+
+    @Override
+    public BatchResult<Like> likeAll(List<Like> likes) {
+        return changeLikes(INSERT_LIKE, likes);
+    }
+
+    @Override
+    public BatchResult<Like> deleteLikes(List<Like> likes) {
+        return changeLikes(DELETE_LIKE, likes);
+    }
+
+    private BatchResult<Like> changeLikes(String sql, List<Like> likes) {
+        BatchResult<Like> result = new BatchResult<>(likes.size());
+        LongHashSet changedFilms = new LongHashSet();
+        List<Like> changed = new ArrayList<>(likes.size());
+        transactionTemplate.executeWithoutResult(status -> {
+            LongHashSet films = JdbcRows.existingIds(jdbcTemplate, "films",
+                    likes.stream().map(Like::getFilmId).collect(Collectors.toSet()));
+            LongHashSet users = JdbcRows.existingIds(jdbcTemplate, "users",
+                    likes.stream().map(Like::getUserId).collect(Collectors.toSet()));
+            // MERGE не сообщает, был ли лайк раньше, поэтому подписчикам уходят только пары, чьё состояние
+            // до пакета было другим; при гонке с другим запросом повтор всё же возможен, как и в одиночном пути
+            Set<Like> current = existingLikes(likes);
+            boolean insert = INSERT_LIKE.equals(sql);
+            List<Object[]> rows = new ArrayList<>(likes.size());
+            for (int i = 0; i < likes.size(); i++) {
+                Like like = likes.get(i);
+                if (!films.contains(like.getFilmId())) {
+                    result.failed(i, "Фильм с id = " + like.getFilmId() + " не найден");
+                } else if (!users.contains(like.getUserId())) {
+                    result.failed(i, "Пользователь с id = " + like.getUserId() + " не найден");
+                } else {
+                    rows.add(new Object[]{like.getFilmId(), like.getUserId()});
+                    changedFilms.add(like.getFilmId());
+                    result.succeeded(i, like);
+                    if (insert ? current.add(like) : current.remove(like)) {
+                        changed.add(like);
+                    }
+                }
+            }
+            if (!rows.isEmpty()) {
+                jdbcTemplate.batchUpdate(sql, rows);
+            }
+        });
+        cache.evictFilms(changedFilms);
+        for (Like like : changed) {
+            notifyLike(sql, like.getFilmId(), like.getUserId());
+        }
+        return result;
+    }
+
+    /**
+     * Те из {@code likes}, что уже сохранены, одним запросом.
+     */
+    private Set<Like> existingLikes(List<Like> likes) {
+        Set<Like> existing = new HashSet<>();
+        if (!likes.isEmpty()) {
+            jdbcTemplate.query(SELECT_LIKES, rs -> {
+                existing.add(new Like(rs.getLong(1), rs.getLong(2)));
+            }, likes.stream().map(Like::getFilmId).distinct().toArray(Long[]::new),
+                    likes.stream().map(Like::getUserId).distinct().toArray(Long[]::new));
+        }
+        return existing;
+    }
+
+    @Override
+    public Collection<Film> getPopularFilms(int size) {
+        return jdbcTemplate.query(SELECT_FILMS
+                + "JOIN (SELECT film_id, COUNT(*) AS likes_count FROM film_likes "
+                + "GROUP BY film_id ORDER BY likes_count DESC, film_id LIMIT ?) top ON top.film_id = f.id "
+                + "ORDER BY top.likes_count DESC, f.id", this::mapFilm, size);
+    }
+
+    /**
+     * Условия выборки переводятся в WHERE, а выбор индекса по дате выхода или продолжительности
+     * и порядок обхода остаются планировщику базы.
+     */
+    @Override
+    public Collection<Film> findFilms(FilmFilter filter, int limit) {
+        StringBuilder sql = new StringBuilder(SELECT_FILMS);
+        List<Object> args = new ArrayList<>();
+        if (filter.getSort() == FilmFilter.Sort.POPULARITY) {
+            sql.append("LEFT JOIN (SELECT film_id, COUNT(*) AS likes_count FROM film_likes GROUP BY film_id) lc "
+                    + "ON lc.film_id = f.id ");
+        }
+        sql.append("WHERE TRUE ");
+        if (filter.getReleasedFrom() != null) {
+            sql.append("AND f.release_date >= ? ");
+            args.add(filter.getReleasedFrom());
+        }
+        if (filter.getReleasedTo() != null) {
+            sql.append("AND f.release_date <= ? ");
+            args.add(filter.getReleasedTo());
+        }
+        if (filter.getMaxDuration() != null) {
+            sql.append("AND f.duration <= ? ");
+            args.add(filter.getMaxDuration());
+        }
+        sql.append(filter.getSort() == FilmFilter.Sort.POPULARITY
+                ? "ORDER BY COALESCE(lc.likes_count, 0) DESC, f.id LIMIT ?" : "ORDER BY f.id LIMIT ?");
+        args.add(limit);
+        return jdbcTemplate.query(sql.toString(), this::mapFilm, args.toArray());
+    }
+
+    @Override
+    public long getVersion() {
+        return cache.filmsVersion();
+    }
+
+    @Override
+    public long getFilmCount() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM films", Long.class);
+    }
+
+    @Override
+    public long getLikeCount() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM film_likes", Long.class);
+    }
+
+    @Override
+    public void addLikeListener(LikeListener listener) {
+        likeListeners.add(listener);
+    }
+
+    @Override
+    public void addLikeListenerWithLikes(LikeListener listener) {
+        likeListeners.add(listener);
+        // порядок одновременных изменений в базе и так не гарантирован, поэтому обход без блокировок
+        for (Film film : getAllFilms()) {
+            listener.replaced(film.getId(), Set.of(), film.getLikes());
+        }
+    }
+
+    @Override
+    public void addFilmListener(FilmListener listener) {
+        filmListeners.add(listener);
+    }
+
+    private void notifyLike(String sql, long filmId, long userId) {
+        if (INSERT_LIKE.equals(sql)) {
+            likeListeners.liked(filmId, userId);
+        } else {
+            likeListeners.unliked(filmId, userId);
+        }
+    }
+
+    private static void bindFilm(PreparedStatement statement, Film film) throws SQLException {
+        statement.setString(1, film.getName());
+        statement.setString(2, film.getDescription());
+        statement.setDate(3, film.getReleaseDate() == null ? null : Date.valueOf(film.getReleaseDate()));
+        statement.setInt(4, film.getDuration());
+    }
+
+    private void insertLikes(List<Film> films) {
+        List<Object[]> rows = films.stream()
+                .flatMap(film -> film.getLikes().stream().map(userId -> new Object[]{film.getId(), userId}))
+                .collect(Collectors.toList());
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_LIKE, rows);
+        }
+    }
+
+    private Film mapFilm(ResultSet rs, int rowNum) throws SQLException {
+        Date releaseDate = rs.getDate("release_date");
+        return Film.builder()
+                .id(rs.getLong("id"))
+                .name(rs.getString("name"))
+                .description(rs.getString("description"))
+                .releaseDate(releaseDate == null ? null : releaseDate.toLocalDate())
+                .duration(rs.getInt("duration"))
+                .likes(JdbcRows.ids(rs, "likes"))
+                .build();
+    }
+}
@@ -0,0 +1,33 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import java.util.Set;
+
+/**
+ * Получает изменения лайков от хранилища фильмов.
+ * <p>
+ * Хранилище может сообщить об уже учтённом лайке повторно, поэтому обработка должна быть идемпотентной.
+ * Вызовы идут в потоке изменения. В памяти изменения одного фильма приходят по порядку, в базе порядок
+ * одновременных изменений одной пары не гарантирован.
+ */
+public interface LikeListener {
+    void liked(long filmId, long userId);
+
+    void unliked(long filmId, long userId);
+
+    /**
+     * Лайки фильма заменены целиком: фильм создан, обновлён, удалён или восстановлен из журнала.
+     * По умолчанию разница приходит как отдельные лайки и снятия лайков.
+     */
+    default void replaced(long filmId, Set<Long> before, Set<Long> after) {
+        for (Long userId : before) {
+            if (!after.contains(userId)) {
+                unliked(filmId, userId);
+            }
+        }
+        for (Long userId : after) {
+            if (!before.contains(userId)) {
+                liked(filmId, userId);
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Подписчики на лайки одного хранилища фильмов.
+ */
+class LikeListeners implements LikeListener {
+    private final List<LikeListener> listeners = new CopyOnWriteArrayList<>();
+
+    void add(LikeListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void liked(long filmId, long userId) {
+        for (LikeListener listener : listeners) {
+            listener.liked(filmId, userId);
+        }
+    }
+
+    @Override
+    public void unliked(long filmId, long userId) {
+        for (LikeListener listener : listeners) {
+            listener.unliked(filmId, userId);
+        }
+    }
+
+    @Override
+    public void replaced(long filmId, Set<Long> before, Set<Long> after) {
+        for (LikeListener listener : listeners) {
+            listener.replaced(filmId, before, after);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.LongToIntFunction;
+
+/**
+ * Рейтинг фильмов по количеству лайков, который поддерживается при каждом изменении,
+ * чтобы топ-K читался без обхода всего каталога.
+ * Фильмы без лайков в рейтинг не попадают.
+ */
+class PopularityIndex {
+    private static final Comparator<Rank> ORDER = Comparator.comparingInt(Rank::getLikes).reversed()
+            .thenComparingLong(Rank::getFilmId);
+
+    private final ConcurrentMap<Long, Rank> ranks = new ConcurrentHashMap<>();
+    private final NavigableSet<Rank> ranking = new ConcurrentSkipListSet<>(ORDER);
+
+    /**
+     * Пересчитывает позицию фильма. Текущее число лайков читается внутри блокировки записи
+     * этого фильма, поэтому при одновременных лайках последний пересчёт видит итоговое значение.
+     */
+    void update(long filmId, LongToIntFunction likes) {
+        ranks.compute(filmId, (id, old) -> {
+            int current = likes.applyAsInt(id);
+            if (old != null && old.getLikes() == current) {
+                return old;
+            }
+            Rank rank = current > 0 ? new Rank(id, current) : null;
+            if (rank != null) {
+                ranking.add(rank);
+            }
+            if (old != null) {
+                ranking.remove(old);
+            }
+            return rank;
+        });
+    }
+
+    void remove(long filmId) {
+        update(filmId, id -> 0);
+    }
+
+    List<Long> top(int size) {
+        List<Long> result = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        Iterator<Rank> iterator = ranking.iterator();
+        while (result.size() < size && iterator.hasNext()) {
+            long filmId = iterator.next().getFilmId();
+            // во время пересчёта фильм может ненадолго оказаться в рейтинге дважды
+            if (seen.add(filmId)) {
+                result.add(filmId);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Id фильмов с лайками в порядке рейтинга. Обход идёт по живому рейтингу, поэтому во время
+     * пересчёта фильм может встретиться дважды.
+     */
+    Iterator<Long> ids() {
+        Iterator<Rank> iterator = ranking.iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Long next() {
+                return iterator.next().getFilmId();
+            }
+        };
+    }
+
+    @Value
+    private static class Rank {
+        long filmId;
+        int likes;
+    }
+}
@@ -0,0 +1,68 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.Value;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Упорядоченный индекс фильмов по значению поля, чтобы выборка по диапазону читала только
+ * попавшие в него фильмы. Фильмы без значения в индекс не попадают.
+ * Как и {@link PopularityIndex}, обновляется под блокировкой записи фильма.
+ */
+class RangeIndex<K extends Comparable<? super K>> {
+    private final ConcurrentMap<Long, Entry<K>> entries = new ConcurrentHashMap<>();
+    private final NavigableSet<Entry<K>> sorted = new ConcurrentSkipListSet<>(
+            Comparator.<Entry<K>, K>comparing(Entry::getKey).thenComparingLong(Entry::getFilmId));
+
+    void update(long filmId, K key) {
+        Entry<K> entry = key == null ? null : new Entry<>(key, filmId);
+        Entry<K> old = entry == null ? entries.remove(filmId) : entries.put(filmId, entry);
+        if (entry != null) {
+            sorted.add(entry);
+        }
+        if (old != null && !old.equals(entry)) {
+            sorted.remove(old);
+        }
+    }
+
+    void remove(long filmId) {
+        update(filmId, null);
+    }
+
+    /**
+     * Id фильмов со значением от {@code from} до {@code to} включительно по возрастанию значения;
+     * {@code null} снимает границу. Итератор ленивый и читает индекс по мере обхода.
+     */
+    Iterator<Long> range(K from, K to) {
+        NavigableSet<Entry<K>> range = sorted;
+        if (from != null) {
+            range = range.tailSet(new Entry<>(from, Long.MIN_VALUE), true);
+        }
+        if (to != null) {
+            range = range.headSet(new Entry<>(to, Long.MAX_VALUE), true);
+        }
+        Iterator<Entry<K>> iterator = range.iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Long next() {
+                return iterator.next().getFilmId();
+            }
+        };
+    }
+
+    @Value
+    private static class Entry<K> {
+        K key;
+        long filmId;
+    }
+}
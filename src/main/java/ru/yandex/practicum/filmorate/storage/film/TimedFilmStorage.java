@@ -0,0 +1,237 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.metrics.LatencyTimer;
+import ru.yandex.practicum.filmorate.metrics.Metrics;
+import ru.yandex.practicum.filmorate.model.BatchResult;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
+import ru.yandex.practicum.filmorate.model.Like;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Хранилище фильмов профиля с замером времени каждого метода и счётчиками лайков.
+ * <p>
+ * Внедряется везде, где нужен {@link FilmStorage}, и передаёт вызовы хранилищу профиля. Таймер вызывается
+ * напрямую, без лямбд и упаковки аргументов, поэтому на горячем пути память не выделяется.
+ */
+@Primary
+@Component
+public class TimedFilmStorage implements FilmStorage {
+    private static final String STORAGE = "film";
+
+    private final FilmStorage storage;
+    private final LatencyTimer addFilm;
+    private final LatencyTimer addFilms;
+    private final LatencyTimer updateFilm;
+    private final LatencyTimer getFilmById;
+    private final LatencyTimer deleteFilm;
+    private final LatencyTimer getAllFilms;
+    private final LatencyTimer getFilmsPage;
+    private final LatencyTimer likeIt;
+    private final LatencyTimer deleteLike;
+    private final LatencyTimer likeAll;
+    private final LatencyTimer deleteLikes;
+    private final LatencyTimer getPopularFilms;
+    private final LatencyTimer findFilms;
+
+    public TimedFilmStorage(FilmStorage storage, Metrics metrics) {
+        this.storage = storage;
+        addFilm = metrics.timer(STORAGE, "addFilm");
+        addFilms = metrics.timer(STORAGE, "addFilms");
+        updateFilm = metrics.timer(STORAGE, "updateFilm");
+        getFilmById = metrics.timer(STORAGE, "getFilmById");
+        deleteFilm = metrics.timer(STORAGE, "deleteFilm");
+        getAllFilms = metrics.timer(STORAGE, "getAllFilms");
+        getFilmsPage = metrics.timer(STORAGE, "getFilmsPage");
+        likeIt = metrics.timer(STORAGE, "likeIt");
+        deleteLike = metrics.timer(STORAGE, "deleteLike");
+        likeAll = metrics.timer(STORAGE, "likeAll");
+        deleteLikes = metrics.timer(STORAGE, "deleteLikes");
+        getPopularFilms = metrics.timer(STORAGE, "getPopularFilms");
+        findFilms = metrics.timer(STORAGE, "findFilms");
+        metrics.gauge("filmorate_films", "Число фильмов", storage::getFilmCount);
+        metrics.gauge("filmorate_likes", "Число лайков всех фильмов", storage::getLikeCount);
+        // считаются изменения, о которых сообщило хранилище, а не вызовы: повторный лайк не в счёт
+        storage.addLikeListener(new LikeListener() {
+            @Override
+            public void liked(long filmId, long userId) {
+                metrics.liked(1);
+            }
+
+            @Override
+            public void unliked(long filmId, long userId) {
+                metrics.unliked(1);
+            }
+
+            @Override
+            public void replaced(long filmId, Set<Long> before, Set<Long> after) {
+                // лайки, пришедшие с фильмом или ушедшие с ним, лайками пользователей не считаются
+            }
+        });
+    }
+
+    @Override
+    public Film addFilm(Film film) {
+        long start = addFilm.start();
+        try {
+            return storage.addFilm(film);
+        } finally {
+            addFilm.stop(start);
+        }
+    }
+
+    @Override
+    public List<Film> addFilms(List<Film> films) {
+        long start = addFilms.start();
+        try {
+            return storage.addFilms(films);
+        } finally {
+            addFilms.stop(start);
+        }
+    }
+
+    @Override
+    public Film updateFilm(Film film) {
+        long start = updateFilm.start();
+        try {
+            return storage.updateFilm(film);
+        } finally {
+            updateFilm.stop(start);
+        }
+    }
+
+    @Override
+    public Film getFilmById(Long id) {
+        long start = getFilmById.start();
+        try {
+            return storage.getFilmById(id);
+        } finally {
+            getFilmById.stop(start);
+        }
+    }
+
+    @Override
+    public Film deleteFilm(Long id) {
+        long start = deleteFilm.start();
+        try {
+            return storage.deleteFilm(id);
+        } finally {
+            deleteFilm.stop(start);
+        }
+    }
+
+    @Override
+    public Collection<Film> getAllFilms() {
+        long start = getAllFilms.start();
+        try {
+            return storage.getAllFilms();
+        } finally {
+            getAllFilms.stop(start);
+        }
+    }
+
+    @Override
+    public Collection<Film> getFilmsPage(long afterId, int limit) {
+        long start = getFilmsPage.start();
+        try {
+            return storage.getFilmsPage(afterId, limit);
+        } finally {
+            getFilmsPage.stop(start);
+        }
+    }
+
+    @Override
+    public Film likeIt(Long filmId, Long userId) {
+        long start = likeIt.start();
+        try {
+            return storage.likeIt(filmId, userId);
+        } finally {
+            likeIt.stop(start);
+        }
+    }
+
+    @Override
+    public Film deleteLike(Long filmId, Long userId) {
+        long start = deleteLike.start();
+        try {
+            return storage.deleteLike(filmId, userId);
+        } finally {
+            deleteLike.stop(start);
+        }
+    }
+
+    @Override
+    public BatchResult<Like> likeAll(List<Like> likes) {
+        long start = likeAll.start();
+        try {
+            return storage.likeAll(likes);
+        } finally {
+            likeAll.stop(start);
+        }
+    }
+
+    @Override
+    public BatchResult<Like> deleteLikes(List<Like> likes) {
+        long start = deleteLikes.start();
+        try {
+            return storage.deleteLikes(likes);
+        } finally {
+            deleteLikes.stop(start);
+        }
+    }
+
+    @Override
+    public Collection<Film> getPopularFilms(int size) {
+        long start = getPopularFilms.start();
+        try {
+            return storage.getPopularFilms(size);
+        } finally {
+            getPopularFilms.stop(start);
+        }
+    }
+
+    @Override
+    public Collection<Film> findFilms(FilmFilter filter, int limit) {
+        long start = findFilms.start();
+        try {
+            return storage.findFilms(filter, limit);
+        } finally {
+            findFilms.stop(start);
+        }
+    }
+
+    @Override
+    public long getVersion() {
+        return storage.getVersion();
+    }
+
+    @Override
+    public long getFilmCount() {
+        return storage.getFilmCount();
+    }
+
+    @Override
+    public long getLikeCount() {
+        return storage.getLikeCount();
+    }
+
+    @Override
+    public void addLikeListener(LikeListener listener) {
+        storage.addLikeListener(listener);
+    }
+
+    @Override
+    public void addLikeListenerWithLikes(LikeListener listener) {
+        storage.addLikeListenerWithLikes(listener);
+    }
+
+    @Override
+    public void addFilmListener(FilmListener listener) {
+        storage.addFilmListener(listener);
+    }
+}
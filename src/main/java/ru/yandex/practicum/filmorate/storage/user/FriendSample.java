@@ -0,0 +1,48 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import java.util.Arrays;
+
+/**
+ * Выборка из длинного списка друзей. Берутся друзья с наименьшим хэшем id, а не с наименьшими id,
+ * иначе в выборку попадали бы только самые старые аккаунты. Выборка одна и та же между запросами
+ * и совпадает в памяти и в базе: {@link #SQL_ORDER} считает тот же хэш.
+ */
+public final class FriendSample {
+    private static final long MULTIPLIER = 40503;
+    private static final long MODULUS = 65521;
+    // хэш меньше 2^16, поэтому хэш и id до 2^47 помещаются в один long
+    private static final int ID_BITS = 47;
+    private static final long ID_MASK = (1L << ID_BITS) - 1;
+
+    /**
+     * Порядок выборки для ORDER BY по столбцу {@code friend_id}.
+     */
+    public static final String SQL_ORDER = "MOD(friend_id * " + MULTIPLIER + ", " + MODULUS + "), friend_id";
+
+    private FriendSample() {
+    }
+
+    /**
+     * Не больше {@code limit} id из отсортированного массива, результат тоже отсортирован.
+     */
+    public static long[] take(long[] sortedIds, int limit) {
+        if (sortedIds.length <= limit) {
+            return sortedIds;
+        }
+        long[] keyed = new long[sortedIds.length];
+        for (int i = 0; i < sortedIds.length; i++) {
+            keyed[i] = hash(sortedIds[i]) << ID_BITS | sortedIds[i];
+        }
+        Arrays.sort(keyed);
+        long[] sample = new long[limit];
+        for (int i = 0; i < limit; i++) {
+            sample[i] = keyed[i] & ID_MASK;
+        }
+        Arrays.sort(sample);
+        return sample;
+    }
+
+    private static long hash(long id) {
+        return id * MULTIPLIER % MODULUS;
+    }
+}
@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+/**
+ * Получает изменения дружбы от хранилища пользователей.
+ * <p>
+ * Сообщаются только изменения: повторное добавление друга и удаление отсутствующего не приходят.
+ * В базе это проверяется по состоянию до записи, поэтому при гонке одновременных запросов повтор возможен.
+ * Вызовы идут в потоке изменения. Восстановление из журнала подписчиков не уведомляет.
+ */
+public interface FriendshipListener {
+    void friended(long userId, long friendId);
+
+    void unfriended(long userId, long friendId);
+}
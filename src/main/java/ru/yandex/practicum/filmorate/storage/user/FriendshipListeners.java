@@ -0,0 +1,29 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Подписчики на дружбы одного хранилища пользователей.
+ */
+class FriendshipListeners implements FriendshipListener {
+    private final List<FriendshipListener> listeners = new CopyOnWriteArrayList<>();
+
+    void add(FriendshipListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void friended(long userId, long friendId) {
+        for (FriendshipListener listener : listeners) {
+            listener.friended(userId, friendId);
+        }
+    }
+
+    @Override
+    public void unfriended(long userId, long friendId) {
+        for (FriendshipListener listener : listeners) {
+            listener.unfriended(userId, friendId);
+        }
+    }
+}
@@ -1,51 +1,185 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.IncorrectObjectStructureException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.BatchResult;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.LongHashSet;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.ChangeJournal;
+import ru.yandex.practicum.filmorate.storage.IdSequence;
+import ru.yandex.practicum.filmorate.storage.StripedLock;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 @Slf4j
 @Component
+@Profile("!jdbc")
 public class InMemoryUserStorage implements UserStorage {
-    private final Map<Long, User> usersStorage = new HashMap<>();
+    private final NavigableMap<Long, User> usersStorage = new ConcurrentSkipListMap<>();
+    private final IdSequence ids = new IdSequence();
+    private final StripedLock locks = new StripedLock();
+    private final FriendshipListeners friendshipListeners = new FriendshipListeners();
+    // записи во всех списках друзей: метрика читает счётчик, а не обходит всех пользователей
+    private final LongAdder friendLinks = new LongAdder();
+    private volatile ChangeJournal journal = ChangeJournal.NONE;
+
+    public void setJournal(ChangeJournal journal) {
+        this.journal = journal;
+    }
 
     @Override
     public User addUser(User user) {
         log.trace("Получаем id пользователя login={}", user.getLogin());
-        user.setId(getNextId());
-        usersStorage.put(user.getId(), user);
-        log.info("Новый пользователь сохранён в памяти приложения id={}", user.getId());
+        long id = ids.next();
+        user.setId(id);
+        user.setFriends(LongHashSet.from(user.getFriends()));
+        long lsn;
+        locks.lock(id);
+        try {
+            // журнал первым: если он отказал, пользователь не появится в памяти
+            lsn = journal.userSaved(user);
+            replace(id, user);
+        } finally {
+            locks.unlock(id);
+        }
+        journal.awaitDurable(lsn);
+        log.debug("Новый пользователь сохранён в памяти приложения id={}", user.getId());
         return user;
     }
 
+    @Override
+    public List<User> addUsers(List<User> users) {
+        if (users.isEmpty()) {
+            return users;
+        }
+        long firstId = ids.reserve(users.size());
+        long lsn = 0;
+        for (int i = 0; i < users.size(); i++) {
+            User user = users.get(i);
+            long id = firstId + i;
+            user.setId(id);
+            user.setFriends(LongHashSet.from(user.getFriends()));
+            locks.lock(id);
+            try {
+                lsn = journal.userSaved(user);
+                replace(id, user);
+            } finally {
+                locks.unlock(id);
+            }
+        }
+        // одно ожидание записи журнала на весь пакет
+        journal.awaitDurable(lsn);
+        if (log.isDebugEnabled()) {
+            log.debug("Сохранено пользователей в памяти приложения: {}, id с {}", users.size(), firstId);
+        }
+        return users;
+    }
+
     @Override
     public User updateUser(User user) {
         if (user.getId() == 0) {
             throw new IncorrectObjectStructureException("Id пользователя не указан.");
         }
-        log.info("Проверяем по id наличие пользователя в памяти приложения");
-        validateId(user.getId());
-        usersStorage.put(user.getId(), user);
-        log.info("Данные пользователя обновлены в памяти приложения id={}", user.getId());
+        log.trace("Проверяем по id наличие пользователя в памяти приложения");
+        user.setFriends(LongHashSet.from(user.getFriends()));
+        long lsn;
+        locks.lock(user.getId());
+        try {
+            validateId(user.getId());
+            lsn = journal.userSaved(user);
+            replace(user.getId(), user);
+        } finally {
+            locks.unlock(user.getId());
+        }
+        journal.awaitDurable(lsn);
+        log.debug("Данные пользователя обновлены в памяти приложения id={}", user.getId());
         return user;
     }
 
+    /**
+     * Кладёт пользователя с уже назначенным id при восстановлении из журнала, без записи в журнал,
+     * как и остальные методы восстановления.
+     */
+    public void restoreUser(User user) {
+        user.setFriends(LongHashSet.from(user.getFriends()));
+        ids.advanceTo(user.getId());
+        locks.withLock(user.getId(), () -> replace(user.getId(), user));
+    }
+
+    /**
+     * Последний выданный id пользователя, в том числе удалённого.
+     */
+    public long getLastId() {
+        return ids.current();
+    }
+
+    public void restoreLastId(long id) {
+        ids.advanceTo(id);
+    }
+
+    /**
+     * Ждёт, пока применятся изменения, уже записанные в журнал. Запись в журнал идёт под блокировкой
+     * пользователя раньше изменения в памяти, поэтому достаточно дождаться каждой из блокировок.
+     */
+    public void awaitJournaledChanges() {
+        locks.awaitReleased();
+    }
+
+    public void restoreUserDeleted(long id) {
+        locks.withLock(id, () -> {
+            if (replace(id, null) == null) {
+                throw NotFoundException.user(id);
+            }
+            return null;
+        });
+    }
+
+    public void restoreFriendship(long userId, long friendId, boolean add) {
+        locks.lock(userId, friendId);
+        try {
+            User user = getUserById(userId);
+            User friend = getUserById(friendId);
+            if (add) {
+                link(user, friendId);
+                link(friend, userId);
+            } else {
+                unlink(user, friendId);
+                unlink(friend, userId);
+            }
+        } finally {
+            locks.unlock(userId, friendId);
+        }
+    }
+
     @Override
     public User getUserById(Long id) {
-        validateId(id);
-        return usersStorage.get(id);
+        User user = usersStorage.get(id);
+        if (user == null) {
+            throw NotFoundException.user(id);
+        }
+        return user;
     }
 
     @Override
     public User deleteUser(Long id) {
-        validateId(id);
-        User userForDelete = usersStorage.get(id);
-        usersStorage.remove(id);
+        User userForDelete;
+        long lsn;
+        locks.lock(id);
+        try {
+            validateId(id);
+            lsn = journal.userDeleted(id);
+            userForDelete = replace(id, null);
+        } finally {
+            locks.unlock(id);
+        }
+        journal.awaitDurable(lsn);
         return userForDelete;
     }
 
@@ -54,61 +188,185 @@ public class InMemoryUserStorage implements UserStorage {
         return usersStorage.values();
     }
 
+    @Override
+    public Collection<User> getUsersPage(long afterId, int limit) {
+        return usersStorage.tailMap(afterId, false).values().stream().limit(limit).collect(Collectors.toList());
+    }
+
     @Override
     public User addFriend(Long userId, Long friendId) {
-        log.info("Проверяем по id наличие пользователей в памяти приложения");
-        validateId(userId);
-        validateId(friendId);
-        usersStorage.get(userId).getFriends().add(friendId);
-        log.info("Добавили в список друзей пользователя с id = {}", friendId);
-        usersStorage.get(friendId).getFriends().add(userId);
-        log.info("Провели симметричное добавление в список друзей");
-        return getUserById(userId);
+        log.trace("Проверяем по id наличие пользователей в памяти приложения");
+        User user;
+        long lsn = 0;
+        locks.lock(userId, friendId);
+        try {
+            user = getUserById(userId);
+            User friend = getUserById(friendId);
+            if (!areFriends(user, friend)) {
+                lsn = journal.friended(userId, friendId);
+                link(user, friendId);
+                log.debug("Добавили в список друзей пользователя с id = {}", friendId);
+                link(friend, userId);
+                log.trace("Провели симметричное добавление в список друзей");
+                friendshipListeners.friended(userId, friendId);
+            }
+        } finally {
+            locks.unlock(userId, friendId);
+        }
+        journal.awaitDurable(lsn);
+        return user;
     }
 
     @Override
     public User deleteFriend(Long userId, Long friendId) {
-        validateId(userId);
-        validateId(friendId);
-        User user = usersStorage.get(userId);
-        if (!user.getFriends().contains(friendId)) {
-            return user;
-        }
-        user.getFriends().remove(friendId);
-        log.info("Удалили из списка друзей пользователя с id = {}", friendId);
-        usersStorage.get(friendId).getFriends().remove(userId);
-        log.info("Провели симметричное удаление из списка друзей");
+        User user;
+        long lsn = 0;
+        locks.lock(userId, friendId);
+        try {
+            user = getUserById(userId);
+            User friend = getUserById(friendId);
+            if (user.getFriends().contains(friendId)) {
+                lsn = journal.unfriended(userId, friendId);
+                unlink(user, friendId);
+                log.debug("Удалили из списка друзей пользователя с id = {}", friendId);
+                unlink(friend, userId);
+                log.trace("Провели симметричное удаление из списка друзей");
+                friendshipListeners.unfriended(userId, friendId);
+            }
+        } finally {
+            locks.unlock(userId, friendId);
+        }
+        journal.awaitDurable(lsn);
         return user;
     }
 
+    @Override
+    public BatchResult<Friendship> addFriends(List<Friendship> friendships) {
+        return changeFriendships(friendships, true);
+    }
+
+    @Override
+    public BatchResult<Friendship> deleteFriends(List<Friendship> friendships) {
+        return changeFriendships(friendships, false);
+    }
+
+    private BatchResult<Friendship> changeFriendships(List<Friendship> friendships, boolean add) {
+        BatchResult<Friendship> result = new BatchResult<>(friendships.size());
+        long lsn = 0;
+        for (int i = 0; i < friendships.size(); i++) {
+            long userId = friendships.get(i).getUserId();
+            long friendId = friendships.get(i).getFriendId();
+            locks.lock(userId, friendId);
+            try {
+                User user = getUserById(userId);
+                User friend = getUserById(friendId);
+                if (add) {
+                    if (!areFriends(user, friend)) {
+                        lsn = journal.friended(userId, friendId);
+                        link(user, friendId);
+                        link(friend, userId);
+                        friendshipListeners.friended(userId, friendId);
+                    }
+                } else if (user.getFriends().contains(friendId)) {
+                    lsn = journal.unfriended(userId, friendId);
+                    unlink(user, friendId);
+                    unlink(friend, userId);
+                    friendshipListeners.unfriended(userId, friendId);
+                }
+                result.succeeded(i, friendships.get(i));
+            } catch (NotFoundException e) {
+                result.failed(i, e.getMessage());
+            } finally {
+                locks.unlock(userId, friendId);
+            }
+        }
+        journal.awaitDurable(lsn);
+        return result;
+    }
+
     @Override
     public Collection<User> getCommonFriends(Long userId, Long otherId) {
-        validateId(userId);
-        validateId(otherId);
-        Set<Long> userFriends = getUserById(userId).getFriends();
-        Set<Long> otherUserFriends = getUserById(otherId).getFriends();
-        return userFriends.stream().filter(otherUserFriends::contains)
-                .map(this::getUserById).collect(Collectors.toList());
+        long[] userFriends = LongHashSet.from(getUserById(userId).getFriends()).toSortedArray();
+        long[] otherUserFriends = LongHashSet.from(getUserById(otherId).getFriends()).toSortedArray();
+        long[] common = SortedIntersection.intersect(userFriends, otherUserFriends);
+        List<User> result = new ArrayList<>(common.length);
+        for (long id : common) {
+            User friend = usersStorage.get(id);
+            if (friend != null) {
+                result.add(friend);
+            }
+        }
+        return result;
     }
 
     @Override
     public Collection<User> getUserFriends(Long userId) {
-        validateId(userId);
-        return getUserById(userId).getFriends().stream().map(this::getUserById).collect(Collectors.toList());
+        return getUserById(userId).getFriends().stream()
+                .map(usersStorage::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    @Override
+    public Map<Long, long[]> getFriendIds(Collection<Long> ids, int limit) {
+        Map<Long, long[]> result = new HashMap<>();
+        for (Long id : ids) {
+            User user = usersStorage.get(id);
+            if (user == null || user.getFriends().isEmpty()) {
+                continue;
+            }
+            // отсортированный снимок кэшируется в множестве, выборка строится только для списков длиннее limit
+            result.put(id, FriendSample.take(LongHashSet.from(user.getFriends()).toSortedArray(), limit));
+        }
+        return result;
+    }
+
+    @Override
+    public long getUserCount() {
+        return usersStorage.size();
+    }
+
+    @Override
+    public long getFriendshipCount() {
+        return friendLinks.sum() / 2;
+    }
+
+    @Override
+    public void addFriendshipListener(FriendshipListener listener) {
+        friendshipListeners.add(listener);
+    }
+
+    /**
+     * Кладёт пользователя или убирает его при {@code user == null} и поправляет счётчик записей
+     * в списках друзей. Вызывается под блокировкой пользователя.
+     */
+    private User replace(long id, User user) {
+        User previous = user == null ? usersStorage.remove(id) : usersStorage.put(id, user);
+        friendLinks.add(friendsCount(user) - friendsCount(previous));
+        return previous;
+    }
+
+    private void link(User user, long friendId) {
+        if (user.getFriends().add(friendId)) {
+            friendLinks.increment();
+        }
+    }
+
+    private void unlink(User user, long friendId) {
+        if (user.getFriends().remove(friendId)) {
+            friendLinks.decrement();
+        }
+    }
+
+    private static int friendsCount(User user) {
+        return user == null ? 0 : user.getFriends().size();
     }
 
-    private Long getNextId() {
-        long currentMaxId = usersStorage.keySet()
-                .stream()
-                .mapToLong(id -> id)
-                .max()
-                .orElse(0);
-        return ++currentMaxId;
+    private static boolean areFriends(User user, User friend) {
+        return user.getFriends().contains(friend.getId()) && friend.getFriends().contains(user.getId());
     }
 
     protected void validateId(Long id) {
         if (!usersStorage.containsKey(id)) {
-            throw new NotFoundException("Пользователь с id = " + id + " не найден");
+            throw NotFoundException.user(id);
         }
     }
 }
@@ -0,0 +1,415 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.exception.IncorrectObjectStructureException;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.BatchResult;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.LongHashSet;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.EntityCache;
+import ru.yandex.practicum.filmorate.storage.JdbcBatchWriter;
+import ru.yandex.practicum.filmorate.storage.JdbcRows;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Slf4j
+@Component
+@Profile("jdbc")
+@RequiredArgsConstructor
+public class JdbcUserStorage implements UserStorage {
+    private static final String SELECT_USERS = "SELECT u.id, u.email, u.login, u.name, u.birthday, "
+            + "ARRAY(SELECT uf.friend_id FROM friendships uf WHERE uf.user_id = u.id ORDER BY uf.friend_id) AS friends "
+            + "FROM users u ";
+    private static final String INSERT_USER = "INSERT INTO users (email, login, name, birthday) VALUES (?, ?, ?, ?)";
+    private static final String INSERT_FRIEND = "MERGE INTO friendships (user_id, friend_id) KEY (user_id, friend_id) "
+            + "VALUES (?, ?)";
+    // ограничение на пользователя: у хаба с миллионом друзей читается только выборка из limit по хэшу id
+    private static final String SELECT_FRIEND_IDS = "SELECT user_id, friend_id FROM (SELECT user_id, friend_id, "
+            + "ROW_NUMBER() OVER (PARTITION BY user_id ORDER BY " + FriendSample.SQL_ORDER + ") AS n FROM friendships "
+            + "WHERE user_id = ANY(?)) WHERE n <= ?";
+    private static final String DELETE_FRIEND = "DELETE FROM friendships WHERE user_id = ? AND friend_id = ?";
+    private static final String SELECT_FRIENDSHIPS = "SELECT user_id, friend_id FROM friendships "
+            + "WHERE user_id = ANY(?) AND friend_id = ANY(?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcBatchWriter batchWriter;
+    private final EntityCache cache;
+    private final FriendshipListeners friendshipListeners = new FriendshipListeners();
+
+    @Override
+    public User addUser(User user) {
+        List<Friendship> friendships = new ArrayList<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            requireUsers(friendIds(List.of(user)));
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+            jdbcTemplate.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement(INSERT_USER, new String[]{"id"});
+                bindUser(statement, user);
+                return statement;
+            }, keyHolder);
+            user.setId(keyHolder.getKey().longValue());
+            friendships.addAll(insertFriends(List.of(user)));
+        });
+        friended(friendships);
+        log.debug("Новый пользователь сохранён в базе id={}", user.getId());
+        return user;
+    }
+
+    @Override
+    public List<User> addUsers(List<User> users) {
+        if (users.isEmpty()) {
+            return users;
+        }
+        List<Friendship> friendships = new ArrayList<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            requireUsers(friendIds(users));
+            jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(INSERT_USER, new String[]{"id"})) {
+                    for (User user : users) {
+                        bindUser(statement, user);
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                    try (ResultSet keys = statement.getGeneratedKeys()) {
+                        for (User user : users) {
+                            keys.next();
+                            user.setId(keys.getLong(1));
+                        }
+                    }
+                }
+                return null;
+            });
+            friendships.addAll(insertFriends(users));
+        });
+        friended(friendships);
+        if (log.isDebugEnabled()) {
+            log.debug("Сохранено пользователей в базе: {}", users.size());
+        }
+        return users;
+    }
+
+    @Override
+    public User updateUser(User user) {
+        if (user.getId() == null) {
+            throw new IncorrectObjectStructureException("Id пользователя не указан.");
+        }
+        long userId = user.getId();
+        List<Friendship> added = new ArrayList<>();
+        List<Friendship> removed = new ArrayList<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            int updated = jdbcTemplate.update("UPDATE users SET email = ?, login = ?, name = ?, birthday = ? WHERE id = ?",
+                    user.getEmail(), user.getLogin(), user.getName(), user.getBirthday(), userId);
+            if (updated == 0) {
+                throw NotFoundException.user(userId);
+            }
+            requireUsers(user.getFriends());
+            // список друзей заменяется присланным; дружба хранится двумя строками, поэтому
+            // добавленные и удалённые друзья меняются у обоих пользователей
+            Set<Long> current = new HashSet<>(jdbcTemplate.queryForList(
+                    "SELECT friend_id FROM friendships WHERE user_id = ?", Long.class, userId));
+            for (Long friendId : current) {
+                if (!user.getFriends().contains(friendId)) {
+                    removed.add(new Friendship(userId, friendId));
+                }
+            }
+            for (Long friendId : user.getFriends()) {
+                if (!current.contains(friendId)) {
+                    added.add(new Friendship(userId, friendId));
+                }
+            }
+            if (!removed.isEmpty()) {
+                jdbcTemplate.batchUpdate(DELETE_FRIEND, bothWays(removed));
+            }
+            if (!added.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_FRIEND, bothWays(added));
+            }
+        });
+        cache.evictUser(userId);
+        for (Friendship friendship : removed) {
+            cache.evictUser(friendship.getFriendId());
+            friendshipListeners.unfriended(userId, friendship.getFriendId());
+        }
+        friended(added);
+        log.debug("Данные пользователя обновлены в базе id={}", user.getId());
+        return user;
+    }
+
+    @Override
+    public User getUserById(Long id) {
+        User user = cache.user(id, this::loadUser);
+        if (user == null) {
+            throw NotFoundException.user(id);
+        }
+        return user;
+    }
+
+    private User loadUser(long id) {
+        List<User> users = jdbcTemplate.query(SELECT_USERS + "WHERE u.id = ?", this::mapUser, id);
+        return users.isEmpty() ? null : users.get(0);
+    }
+
+    @Override
+    public User deleteUser(Long id) {
+        User userForDelete = getUserById(id);
+        // каскадное удаление меняет списки друзей и лайков у других записей, их тоже сбрасываем из кэша
+        List<Long> friendOf = jdbcTemplate.queryForList("SELECT user_id FROM friendships WHERE friend_id = ?",
+                Long.class, id);
+        List<Long> likedFilms = jdbcTemplate.queryForList("SELECT film_id FROM film_likes WHERE user_id = ?",
+                Long.class, id);
+        jdbcTemplate.update("DELETE FROM users WHERE id = ?", id);
+        cache.evictUser(id);
+        cache.evictUsers(friendOf);
+        cache.evictFilms(likedFilms);
+        return userForDelete;
+    }
+
+    @Override
+    public Collection<User> getAllUsers() {
+        return jdbcTemplate.query(SELECT_USERS + "ORDER BY u.id", this::mapUser);
+    }
+
+    @Override
+    public Collection<User> getUsersPage(long afterId, int limit) {
+        return jdbcTemplate.query(SELECT_USERS + "WHERE u.id > ? ORDER BY u.id LIMIT ?", this::mapUser,
+                afterId, limit);
+    }
+
+    @Override
+    public User addFriend(Long userId, Long friendId) {
+        return changeFriendship(INSERT_FRIEND, userId, friendId);
+    }
+
+    @Override
+    public User deleteFriend(Long userId, Long friendId) {
+        return changeFriendship(DELETE_FRIEND, userId, friendId);
+    }
+
+    private User changeFriendship(String sql, long userId, long friendId) {
+        // проверки идут через кэш и обычно не обращаются к базе
+        boolean friends = getUserById(userId).getFriends().contains(friendId);
+        getUserById(friendId);
+        batchWriter.execute(sql, new Object[]{userId, friendId}, new Object[]{friendId, userId});
+        cache.evictUser(userId);
+        cache.evictUser(friendId);
+        // повтор по кэшу не сообщаем; при гонке с другим запросом он всё же возможен
+        if (friends != INSERT_FRIEND.equals(sql)) {
+            notifyFriendship(sql, userId, friendId);
+        }
+        return getUserById(userId);
+    }
+
+    @Override
+    public BatchResult<Friendship> addFriends(List<Friendship> friendships) {
+        return changeFriendships(INSERT_FRIEND, friendships);
+    }
+
+    @Override
+    public BatchResult<Friendship> deleteFriends(List<Friendship> friendships) {
+        return changeFriendships(DELETE_FRIEND, friendships);
+    }
+
+    private BatchResult<Friendship> changeFriendships(String sql, List<Friendship> friendships) {
+        BatchResult<Friendship> result = new BatchResult<>(friendships.size());
+        LongHashSet changedUsers = new LongHashSet();
+        List<Friendship> changed = new ArrayList<>(friendships.size());
+        transactionTemplate.executeWithoutResult(status -> {
+            LongHashSet users = JdbcRows.existingIds(jdbcTemplate, "users", friendships.stream()
+                    .flatMap(friendship -> Stream.of(friendship.getUserId(), friendship.getFriendId()))
+                    .collect(Collectors.toSet()));
+            // MERGE не сообщает, была ли дружба раньше, поэтому подписчикам уходят только пары,
+            // чьё состояние до пакета было другим
+            Set<Friendship> current = existingFriendships(friendships);
+            boolean insert = INSERT_FRIEND.equals(sql);
+            List<Object[]> rows = new ArrayList<>(friendships.size() * 2);
+            for (int i = 0; i < friendships.size(); i++) {
+                Friendship friendship = friendships.get(i);
+                long userId = friendship.getUserId();
+                long friendId = friendship.getFriendId();
+                if (!users.contains(userId)) {
+                    result.failed(i, "Пользователь с id = " + userId + " не найден");
+                } else if (!users.contains(friendId)) {
+                    result.failed(i, "Пользователь с id = " + friendId + " не найден");
+                } else {
+                    rows.add(new Object[]{userId, friendId});
+                    rows.add(new Object[]{friendId, userId});
+                    changedUsers.add(userId);
+                    changedUsers.add(friendId);
+                    result.succeeded(i, friendship);
+                    if (insert ? current.add(friendship) : current.remove(friendship)) {
+                        changed.add(friendship);
+                    }
+                }
+            }
+            if (!rows.isEmpty()) {
+                jdbcTemplate.batchUpdate(sql, rows);
+            }
+        });
+        cache.evictUsers(changedUsers);
+        for (Friendship friendship : changed) {
+            notifyFriendship(sql, friendship.getUserId(), friendship.getFriendId());
+        }
+        return result;
+    }
+
+    /**
+     * Те из {@code friendships}, что уже сохранены, одним запросом.
+     */
+    private Set<Friendship> existingFriendships(List<Friendship> friendships) {
+        Set<Friendship> existing = new HashSet<>();
+        if (!friendships.isEmpty()) {
+            jdbcTemplate.query(SELECT_FRIENDSHIPS, rs -> {
+                existing.add(new Friendship(rs.getLong(1), rs.getLong(2)));
+            }, friendships.stream().map(Friendship::getUserId).distinct().toArray(Long[]::new),
+                    friendships.stream().map(Friendship::getFriendId).distinct().toArray(Long[]::new));
+        }
+        return existing;
+    }
+
+    private void notifyFriendship(String sql, long userId, long friendId) {
+        if (INSERT_FRIEND.equals(sql)) {
+            friendshipListeners.friended(userId, friendId);
+        } else {
+            friendshipListeners.unfriended(userId, friendId);
+        }
+    }
+
+    @Override
+    public Collection<User> getCommonFriends(Long userId, Long otherId) {
+        List<User> common = jdbcTemplate.query(SELECT_USERS
+                + "JOIN friendships a ON a.friend_id = u.id "
+                + "JOIN friendships b ON b.friend_id = u.id "
+                + "WHERE a.user_id = ? AND b.user_id = ? ORDER BY u.id", this::mapUser, userId, otherId);
+        if (common.isEmpty()) {
+            getUserById(userId);
+            getUserById(otherId);
+        }
+        return common;
+    }
+
+    @Override
+    public Collection<User> getUserFriends(Long userId) {
+        List<User> friends = jdbcTemplate.query(SELECT_USERS
+                + "JOIN friendships fr ON fr.friend_id = u.id WHERE fr.user_id = ? ORDER BY u.id", this::mapUser, userId);
+        if (friends.isEmpty()) {
+            getUserById(userId);
+        }
+        return friends;
+    }
+
+    @Override
+    public Map<Long, long[]> getFriendIds(Collection<Long> ids, int limit) {
+        Map<Long, LongHashSet> friends = new HashMap<>();
+        if (!ids.isEmpty()) {
+            jdbcTemplate.query(SELECT_FRIEND_IDS, rs -> {
+                friends.computeIfAbsent(rs.getLong(1), id -> new LongHashSet()).add(rs.getLong(2));
+            }, ids.toArray(new Long[0]), limit);
+        }
+        Map<Long, long[]> result = new HashMap<>();
+        friends.forEach((id, set) -> result.put(id, set.toSortedArray()));
+        return result;
+    }
+
+    @Override
+    public long getUserCount() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users", Long.class);
+    }
+
+    @Override
+    public long getFriendshipCount() {
+        // каждая дружба хранится двумя строками
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM friendships", Long.class) / 2;
+    }
+
+    @Override
+    public void addFriendshipListener(FriendshipListener listener) {
+        friendshipListeners.add(listener);
+    }
+
+    private static void bindUser(PreparedStatement statement, User user) throws SQLException {
+        statement.setString(1, user.getEmail());
+        statement.setString(2, user.getLogin());
+        statement.setString(3, user.getName());
+        statement.setDate(4, user.getBirthday() == null ? null : Date.valueOf(user.getBirthday()));
+    }
+
+    /**
+     * Сохраняет друзей новых пользователей в обе стороны и возвращает сохранённые пары.
+     */
+    private List<Friendship> insertFriends(List<User> users) {
+        List<Friendship> friendships = users.stream()
+                .flatMap(user -> user.getFriends().stream().map(friendId -> new Friendship(user.getId(), friendId)))
+                .collect(Collectors.toList());
+        if (!friendships.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_FRIEND, bothWays(friendships));
+        }
+        return friendships;
+    }
+
+    /**
+     * Сбрасывает из кэша друзей, у которых появилась строка дружбы, и сообщает о парах подписчикам.
+     */
+    private void friended(List<Friendship> friendships) {
+        for (Friendship friendship : friendships) {
+            cache.evictUser(friendship.getFriendId());
+            friendshipListeners.friended(friendship.getUserId(), friendship.getFriendId());
+        }
+    }
+
+    private static List<Object[]> bothWays(List<Friendship> friendships) {
+        List<Object[]> rows = new ArrayList<>(friendships.size() * 2);
+        for (Friendship friendship : friendships) {
+            rows.add(new Object[]{friendship.getUserId(), friendship.getFriendId()});
+            rows.add(new Object[]{friendship.getFriendId(), friendship.getUserId()});
+        }
+        return rows;
+    }
+
+    private static Set<Long> friendIds(List<User> users) {
+        Set<Long> ids = new HashSet<>();
+        users.forEach(user -> ids.addAll(user.getFriends()));
+        return ids;
+    }
+
+    private void requireUsers(Collection<Long> ids) {
+        LongHashSet existing = JdbcRows.existingIds(jdbcTemplate, "users", ids);
+        for (Long id : ids) {
+            if (!existing.contains(id)) {
+                throw NotFoundException.user(id);
+            }
+        }
+    }
+
+    private User mapUser(ResultSet rs, int rowNum) throws SQLException {
+        Date birthday = rs.getDate("birthday");
+        return User.builder()
+                .id(rs.getLong("id"))
+                .email(rs.getString("email"))
+                .login(rs.getString("login"))
+                .name(rs.getString("name"))
+                .birthday(birthday == null ? null : birthday.toLocalDate())
+                .friends(JdbcRows.ids(rs, "friends"))
+                .build();
+    }
+}
@@ -0,0 +1,109 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import java.util.Arrays;
+
+/**
+ * Пересечение отсортированных массивов id. Способ выбирается по соотношению размеров:
+ * при сопоставимых размерах — слияние или побитовое AND, при сильном перекосе —
+ * галопирующий поиск элементов меньшего массива в большем.
+ */
+public final class SortedIntersection {
+    // во сколько раз больший массив должен превосходить меньший, чтобы выгоднее был поиск
+    public static final int GALLOP_RATIO = 32;
+    // максимальный разброс значений (в битах на элемент), при котором строится битовая карта
+    public static final int BITMAP_DENSITY = 64;
+
+    private SortedIntersection() {
+    }
+
+    public static long[] intersect(long[] first, long[] second) {
+        long[] small = first.length <= second.length ? first : second;
+        long[] large = small == first ? second : first;
+        if (small.length == 0) {
+            return small;
+        }
+        if ((long) small.length * GALLOP_RATIO < large.length) {
+            return gallop(small, large);
+        }
+        long from = Math.max(small[0], large[0]);
+        long to = Math.min(small[small.length - 1], large[large.length - 1]);
+        if (from > to) {
+            return new long[0];
+        }
+        if (to - from >= 0 && to - from < (long) (small.length + large.length) * BITMAP_DENSITY) {
+            return bitmap(small, large, from, to);
+        }
+        return merge(small, large);
+    }
+
+    public static long[] merge(long[] small, long[] large) {
+        long[] result = new long[small.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < small.length && j < large.length) {
+            if (small[i] < large[j]) {
+                i++;
+            } else if (small[i] > large[j]) {
+                j++;
+            } else {
+                result[count++] = small[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    public static long[] gallop(long[] small, long[] large) {
+        long[] result = new long[small.length];
+        int count = 0;
+        int low = 0;
+        for (long id : small) {
+            int bound = 1;
+            while (low + bound < large.length && large[low + bound] < id) {
+                bound <<= 1;
+            }
+            int found = Arrays.binarySearch(large, low, Math.min(low + bound + 1, large.length), id);
+            if (found >= 0) {
+                result[count++] = id;
+                low = found + 1;
+            } else {
+                low = -found - 1;
+            }
+            if (low >= large.length) {
+                break;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    public static long[] bitmap(long[] small, long[] large, long from, long to) {
+        if (from > to) {
+            return new long[0];
+        }
+        long[] left = toBitmap(small, from, to);
+        long[] right = toBitmap(large, from, to);
+        long[] result = new long[small.length];
+        int count = 0;
+        for (int word = 0; word < left.length; word++) {
+            long bits = left[word] & right[word];
+            while (bits != 0) {
+                result[count++] = from + ((long) word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static long[] toBitmap(long[] ids, long from, long to) {
+        long[] words = new long[(int) ((to - from) >>> 6) + 1];
+        for (long id : ids) {
+            if (id >= from && id <= to) {
+                long offset = id - from;
+                words[(int) (offset >>> 6)] |= 1L << offset;
+            }
+        }
+        return words;
+    }
+}
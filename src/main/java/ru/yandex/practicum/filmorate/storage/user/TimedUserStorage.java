@@ -0,0 +1,226 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.metrics.LatencyTimer;
+import ru.yandex.practicum.filmorate.metrics.Metrics;
+import ru.yandex.practicum.filmorate.model.BatchResult;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Хранилище пользователей профиля с замером времени каждого метода и счётчиками дружб,
+ * устроено так же, как {@link ru.yandex.practicum.filmorate.storage.film.TimedFilmStorage}.
+ */
+@Primary
+@Component
+public class TimedUserStorage implements UserStorage {
+    private static final String STORAGE = "user";
+
+    private final UserStorage storage;
+    private final LatencyTimer addUser;
+    private final LatencyTimer addUsers;
+    private final LatencyTimer updateUser;
+    private final LatencyTimer getUserById;
+    private final LatencyTimer deleteUser;
+    private final LatencyTimer getAllUsers;
+    private final LatencyTimer getUsersPage;
+    private final LatencyTimer addFriend;
+    private final LatencyTimer deleteFriend;
+    private final LatencyTimer addFriends;
+    private final LatencyTimer deleteFriends;
+    private final LatencyTimer getCommonFriends;
+    private final LatencyTimer getUserFriends;
+    private final LatencyTimer getFriendIds;
+
+    public TimedUserStorage(UserStorage storage, Metrics metrics) {
+        this.storage = storage;
+        addUser = metrics.timer(STORAGE, "addUser");
+        addUsers = metrics.timer(STORAGE, "addUsers");
+        updateUser = metrics.timer(STORAGE, "updateUser");
+        getUserById = metrics.timer(STORAGE, "getUserById");
+        deleteUser = metrics.timer(STORAGE, "deleteUser");
+        getAllUsers = metrics.timer(STORAGE, "getAllUsers");
+        getUsersPage = metrics.timer(STORAGE, "getUsersPage");
+        addFriend = metrics.timer(STORAGE, "addFriend");
+        deleteFriend = metrics.timer(STORAGE, "deleteFriend");
+        addFriends = metrics.timer(STORAGE, "addFriends");
+        deleteFriends = metrics.timer(STORAGE, "deleteFriends");
+        getCommonFriends = metrics.timer(STORAGE, "getCommonFriends");
+        getUserFriends = metrics.timer(STORAGE, "getUserFriends");
+        getFriendIds = metrics.timer(STORAGE, "getFriendIds");
+        metrics.gauge("filmorate_users", "Число пользователей", storage::getUserCount);
+        metrics.gauge("filmorate_friendships", "Число пар друзей", storage::getFriendshipCount);
+        // считаются изменения, о которых сообщило хранилище, а не вызовы: повтор уже существующей дружбы не в счёт
+        storage.addFriendshipListener(new FriendshipListener() {
+            @Override
+            public void friended(long userId, long friendId) {
+                metrics.friended(1);
+            }
+
+            @Override
+            public void unfriended(long userId, long friendId) {
+                metrics.unfriended(1);
+            }
+        });
+    }
+
+    @Override
+    public User addUser(User user) {
+        long start = addUser.start();
+        try {
+            return storage.addUser(user);
+        } finally {
+            addUser.stop(start);
+        }
+    }
+
+    @Override
+    public List<User> addUsers(List<User> users) {
+        long start = addUsers.start();
+        try {
+            return storage.addUsers(users);
+        } finally {
+            addUsers.stop(start);
+        }
+    }
+
+    @Override
+    public User updateUser(User user) {
+        long start = updateUser.start();
+        try {
+            return storage.updateUser(user);
+        } finally {
+            updateUser.stop(start);
+        }
+    }
+
+    @Override
+    public User getUserById(Long id) {
+        long start = getUserById.start();
+        try {
+            return storage.getUserById(id);
+        } finally {
+            getUserById.stop(start);
+        }
+    }
+
+    @Override
+    public User deleteUser(Long id) {
+        long start = deleteUser.start();
+        try {
+            return storage.deleteUser(id);
+        } finally {
+            deleteUser.stop(start);
+        }
+    }
+
+    @Override
+    public Collection<User> getAllUsers() {
+        long start = getAllUsers.start();
+        try {
+            return storage.getAllUsers();
+        } finally {
+            getAllUsers.stop(start);
+        }
+    }
+
+    @Override
+    public Collection<User> getUsersPage(long afterId, int limit) {
+        long start = getUsersPage.start();
+        try {
+            return storage.getUsersPage(afterId, limit);
+        } finally {
+            getUsersPage.stop(start);
+        }
+    }
+
+    @Override
+    public User addFriend(Long id, Long friendId) {
+        long start = addFriend.start();
+        try {
+            return storage.addFriend(id, friendId);
+        } finally {
+            addFriend.stop(start);
+        }
+    }
+
+    @Override
+    public User deleteFriend(Long id, Long friendId) {
+        long start = deleteFriend.start();
+        try {
+            return storage.deleteFriend(id, friendId);
+        } finally {
+            deleteFriend.stop(start);
+        }
+    }
+
+    @Override
+    public BatchResult<Friendship> addFriends(List<Friendship> friendships) {
+        long start = addFriends.start();
+        try {
+            return storage.addFriends(friendships);
+        } finally {
+            addFriends.stop(start);
+        }
+    }
+
+    @Override
+    public BatchResult<Friendship> deleteFriends(List<Friendship> friendships) {
+        long start = deleteFriends.start();
+        try {
+            return storage.deleteFriends(friendships);
+        } finally {
+            deleteFriends.stop(start);
+        }
+    }
+
+    @Override
+    public Collection<User> getCommonFriends(Long id, Long otherId) {
+        long start = getCommonFriends.start();
+        try {
+            return storage.getCommonFriends(id, otherId);
+        } finally {
+            getCommonFriends.stop(start);
+        }
+    }
+
+    @Override
+    public Collection<User> getUserFriends(Long id) {
+        long start = getUserFriends.start();
+        try {
+            return storage.getUserFriends(id);
+        } finally {
+            getUserFriends.stop(start);
+        }
+    }
+
+    @Override
+    public Map<Long, long[]> getFriendIds(Collection<Long> ids, int limit) {
+        long start = getFriendIds.start();
+        try {
+            return storage.getFriendIds(ids, limit);
+        } finally {
+            getFriendIds.stop(start);
+        }
+    }
+
+    @Override
+    public long getUserCount() {
+        return storage.getUserCount();
+    }
+
+    @Override
+    public long getFriendshipCount() {
+        return storage.getFriendshipCount();
+    }
+
+    @Override
+    public void addFriendshipListener(FriendshipListener listener) {
+        storage.addFriendshipListener(listener);
+    }
+}
@@ -1,12 +1,21 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
+import ru.yandex.practicum.filmorate.model.BatchResult;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 public interface UserStorage {
     User addUser(User user);
 
+    /**
+     * Сохраняет пользователей одной операцией хранилища, id выделяются одним блоком.
+     */
+    List<User> addUsers(List<User> users);
+
     User updateUser(User user);
 
     User getUserById(Long id);
@@ -15,12 +24,49 @@ public interface UserStorage {
 
     Collection<User> getAllUsers();
 
+    /**
+     * Страница пользователей в порядке возрастания id: не более {@code limit} записей с id больше {@code afterId}.
+     */
+    Collection<User> getUsersPage(long afterId, int limit);
+
     User addFriend(Long id, Long friendId);
 
     User deleteFriend(Long id, Long friendId);
 
+    /**
+     * Добавляет дружбы одной операцией хранилища. Дружбы с несуществующими пользователями
+     * не добавляются и попадают в результат с ошибкой.
+     */
+    BatchResult<Friendship> addFriends(List<Friendship> friendships);
+
+    /**
+     * Удаляет дружбы одной операцией хранилища, ошибки — как у {@link #addFriends(List)}.
+     */
+    BatchResult<Friendship> deleteFriends(List<Friendship> friendships);
+
     Collection<User> getCommonFriends(Long id, Long otherId);
 
     Collection<User> getUserFriends(Long id);
 
+    /**
+     * Id друзей каждого из {@code ids} по возрастанию, не больше {@code limit} на пользователя,
+     * без чтения самих пользователей. Из более длинного списка берётся {@link FriendSample выборка по хэшу id}.
+     * Пользователей без друзей и несуществующих в ответе нет.
+     */
+    Map<Long, long[]> getFriendIds(Collection<Long> ids, int limit);
+
+    /**
+     * Число пользователей. Считается при каждом вызове, поэтому годится для метрик, но не для горячего пути.
+     */
+    long getUserCount();
+
+    /**
+     * Число пар друзей: дружба симметрична и считается один раз.
+     */
+    long getFriendshipCount();
+
+    /**
+     * Подписывает на добавление и удаление дружбы.
+     */
+    void addFriendshipListener(FriendshipListener listener);
 }
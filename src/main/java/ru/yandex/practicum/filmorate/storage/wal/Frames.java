@@ -0,0 +1,88 @@
+package ru.yandex.practicum.filmorate.storage.wal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Формат записей журнала и снимков: {@code [int длина][byte тип][данные][int crc32]},
+ * длина и crc считаются по типу и данным.
+ */
+final class Frames {
+    private static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+    private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+
+    private Frames() {
+    }
+
+    interface Payload {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    interface Handler {
+        void accept(RecordType type, ByteBuffer payload);
+    }
+
+    static byte[] encode(RecordType type, Payload payload) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0);
+            out.writeByte(type.code);
+            payload.write(out);
+            out.writeInt(0);
+            byte[] frame = bytes.toByteArray();
+            int length = frame.length - 2 * Integer.BYTES;
+            CRC32 crc = new CRC32();
+            crc.update(frame, Integer.BYTES, length);
+            ByteBuffer.wrap(frame).putInt(0, length).putInt(frame.length - Integer.BYTES, (int) crc.getValue());
+            return frame;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Читает файл через отображение в память окнами по 256 МБ и передаёт записи обработчику.
+     * Чтение останавливается на первой неполной или повреждённой записи.
+     *
+     * @return длина корректной части файла
+     */
+    static long read(FileChannel channel, Handler handler) throws IOException {
+        long size = channel.size();
+        long position = 0;
+        long windowStart = 0;
+        MappedByteBuffer window = null;
+        CRC32 crc = new CRC32();
+        while (size - position >= Integer.BYTES) {
+            if (window == null || position + Integer.BYTES > windowStart + window.capacity()) {
+                windowStart = position;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, size - position));
+            }
+            int length = window.getInt((int) (position - windowStart));
+            long end = position + Integer.BYTES + length + Integer.BYTES;
+            if (length <= 0 || length > MAX_FRAME_SIZE || end > size) {
+                break;
+            }
+            if (end > windowStart + window.capacity()) {
+                windowStart = position;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, size - position));
+            }
+            int offset = (int) (position - windowStart) + Integer.BYTES;
+            ByteBuffer body = window.slice(offset, length);
+            crc.reset();
+            crc.update(body.duplicate());
+            if (window.getInt(offset + length) != (int) crc.getValue()) {
+                break;
+            }
+            handler.accept(RecordType.of(body.get(0)), body.position(1));
+            position = end;
+        }
+        return position;
+    }
+}
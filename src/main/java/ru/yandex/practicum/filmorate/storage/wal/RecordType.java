@@ -0,0 +1,39 @@
+package ru.yandex.practicum.filmorate.storage.wal;
+
+/**
+ * Тип записи журнала. Код пишется в файл, поэтому существующие коды менять нельзя.
+ */
+enum RecordType {
+    FILM_SAVED(1),
+    FILM_DELETED(2),
+    USER_SAVED(3),
+    USER_DELETED(4),
+    LIKED(5),
+    UNLIKED(6),
+    FRIENDED(7),
+    UNFRIENDED(8),
+    // последние выданные id пользователей и фильмов; пишется только в снимки
+    SEQUENCES(9);
+
+    private static final RecordType[] BY_CODE = new RecordType[10];
+
+    static {
+        for (RecordType type : values()) {
+            BY_CODE[type.code] = type;
+        }
+    }
+
+    final byte code;
+
+    RecordType(int code) {
+        this.code = (byte) code;
+    }
+
+    static RecordType of(byte code) {
+        RecordType type = code > 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+        if (type == null) {
+            throw new IllegalArgumentException("Неизвестный тип записи журнала: " + code);
+        }
+        return type;
+    }
+}
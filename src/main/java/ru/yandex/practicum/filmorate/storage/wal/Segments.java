@@ -0,0 +1,56 @@
+package ru.yandex.practicum.filmorate.storage.wal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Файлы сегментов журнала: {@code changes-N.wal}, где N — номер первой записи сегмента.
+ */
+final class Segments {
+    private static final String PREFIX = "changes-";
+    private static final String SUFFIX = ".wal";
+
+    private Segments() {
+    }
+
+    static Path path(Path dir, long firstLsn) {
+        return dir.resolve(String.format("%s%020d%s", PREFIX, firstLsn, SUFFIX));
+    }
+
+    static long lsnOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * Сегменты, которые начинаются после записи {@code lsn}, по возрастанию номеров.
+     */
+    static List<Path> after(Path dir, long lsn) throws IOException {
+        return list(dir).stream().filter(segment -> lsnOf(segment) > lsn).collect(Collectors.toList());
+    }
+
+    /**
+     * Удаляет сегменты, которые начинаются не позже записи {@code lsn}.
+     * Вызывается после снимка с границей {@code lsn}: такие сегменты целиком покрыты снимком.
+     */
+    static void deleteUpTo(Path dir, long lsn) throws IOException {
+        for (Path segment : list(dir)) {
+            if (lsnOf(segment) <= lsn) {
+                Files.deleteIfExists(segment);
+            }
+        }
+    }
+
+    private static List<Path> list(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package ru.yandex.practicum.filmorate.storage.wal;
+
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Снимки хранилищ: {@code snapshot-N.snap}, где N — номер последней записи журнала, покрытой снимком.
+ * Снимок начинается с записи {@link RecordType#SEQUENCES}, чтобы после загрузки не повторились id
+ * удалённых сущностей, затем идут записи {@link RecordType#USER_SAVED} и {@link RecordType#FILM_SAVED}
+ * в формате {@link Frames}. Файл сначала пишется под временным именем и переименовывается
+ * только после fsync, поэтому недописанный снимок никогда не загружается.
+ */
+final class Snapshots {
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".snap";
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private Snapshots() {
+    }
+
+    static long lsnOf(Path snapshot) {
+        String name = snapshot.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    static Path latest(Path dir) throws IOException {
+        List<Path> snapshots = list(dir);
+        return snapshots.isEmpty() ? null : snapshots.get(snapshots.size() - 1);
+    }
+
+    static Path write(Path dir, long lsn, long lastUserId, long lastFilmId, Collection<User> users,
+                      Collection<Film> films) throws IOException {
+        Path snapshot = dir.resolve(String.format("%s%020d%s", PREFIX, lsn, SUFFIX));
+        Path tmp = dir.resolve(snapshot.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+            out.write(Frames.encode(RecordType.SEQUENCES, data -> {
+                data.writeLong(lastUserId);
+                data.writeLong(lastFilmId);
+            }));
+            for (User user : users) {
+                out.write(Frames.encode(RecordType.USER_SAVED, data -> EntityCodec.writeUser(data, user)));
+            }
+            for (Film film : films) {
+                out.write(Frames.encode(RecordType.FILM_SAVED, data -> EntityCodec.writeFilm(data, film)));
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(tmp, snapshot, StandardCopyOption.ATOMIC_MOVE);
+        return snapshot;
+    }
+
+    /**
+     * Удаляет снимки старше {@code lsn} и оставшиеся от сбоев временные файлы.
+     */
+    static void deleteBefore(Path dir, long lsn) throws IOException {
+        for (Path snapshot : list(dir)) {
+            if (lsnOf(snapshot) < lsn) {
+                Files.deleteIfExists(snapshot);
+            }
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path tmp : files.filter(file -> file.getFileName().toString().endsWith(SUFFIX + ".tmp"))
+                    .collect(Collectors.toList())) {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    private static List<Path> list(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,470 @@
+package ru.yandex.practicum.filmorate.storage.wal;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.ChangeJournal;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Журнал изменений хранилищ в памяти на диске.
+ * <p>
+ * Журнал состоит из сегментов {@code changes-N.wal}, где N — номер первой записи сегмента,
+ * номера остальных записей идут по порядку. Формат записи описан в {@link Frames}.
+ * <p>
+ * Хранилища кладут записи в ограниченную очередь, отдельный поток забирает их пачками,
+ * пишет одним вызовом и делает один fsync на пачку. Запрос ждёт fsync своей записи
+ * уже после снятия блокировок хранилища, поэтому параллельные запросы попадают в одну пачку.
+ * <p>
+ * Периодически состояние хранилищ сохраняется в снимок, после чего сегменты до снимка удаляются,
+ * см. {@link #snapshot()}. При старте загружается последний снимок, затем проигрываются сегменты
+ * после него. Недописанная запись в конце последнего сегмента (сбой посреди записи) отбрасывается.
+ * Повреждённый снимок, повреждение в середине журнала и пропуск записей между сегментами останавливают
+ * запуск: загрузка части данных молча потеряла бы подтверждённые изменения.
+ * <p>
+ * Записи применяются методами восстановления хранилищ, которые не уведомляют подписчиков:
+ * восстановленное состояние — не новые изменения. Подписчики читают хранилища после загрузки.
+ */
+@Slf4j
+@Component
+@Profile("!jdbc")
+@ConditionalOnProperty(name = "filmorate.storage.wal.enabled", havingValue = "true")
+public class WriteAheadLog implements ChangeJournal {
+    private static final Entry STOP = new Entry(-1, new byte[0]);
+    private static final byte[] ROTATE = new byte[0];
+
+    private final InMemoryFilmStorage filmStorage;
+    private final InMemoryUserStorage userStorage;
+    private final Path dir;
+    private final BlockingQueue<Entry> queue;
+    private final int batchSize;
+    private final Duration snapshotInterval;
+    private final long snapshotMinRecords;
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ReentrantLock durableLock = new ReentrantLock();
+    private final Condition durableChanged = durableLock.newCondition();
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+
+    private FileChannel channel;
+    private Thread writer;
+    private ScheduledExecutorService snapshotter;
+    private long appended;
+    private boolean closed;
+    private long snapshotLsn;
+    private volatile long durable;
+    private volatile IOException failure;
+
+    public WriteAheadLog(InMemoryFilmStorage filmStorage, InMemoryUserStorage userStorage,
+                         @Value("${filmorate.storage.wal.dir:data}") Path dir,
+                         @Value("${filmorate.storage.wal.queue-capacity:65536}") int queueCapacity,
+                         @Value("${filmorate.storage.wal.batch-size:1024}") int batchSize,
+                         @Value("${filmorate.storage.wal.snapshot-interval:10m}") Duration snapshotInterval,
+                         @Value("${filmorate.storage.wal.snapshot-min-records:100000}") long snapshotMinRecords) {
+        this.filmStorage = filmStorage;
+        this.userStorage = userStorage;
+        this.dir = dir;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.snapshotInterval = snapshotInterval;
+        this.snapshotMinRecords = snapshotMinRecords;
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        Files.createDirectories(dir);
+        long start = System.nanoTime();
+        Path snapshot = Snapshots.latest(dir);
+        if (snapshot != null) {
+            snapshotLsn = Snapshots.lsnOf(snapshot);
+            try (FileChannel in = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+                long validSize = Frames.read(in, this::apply);
+                if (validSize != in.size()) {
+                    throw new IOException("Снимок " + snapshot + " повреждён: корректны " + validSize + " из "
+                            + in.size() + " байт");
+                }
+            }
+            log.info("Загружен снимок {} за {} мс", snapshot, (System.nanoTime() - start) / 1_000_000);
+        }
+        appended = snapshotLsn;
+        List<Path> segments = Segments.after(dir, snapshotLsn);
+        for (int i = 0; i < segments.size(); i++) {
+            replay(segments.get(i), i == segments.size() - 1);
+        }
+        durable = appended;
+        log.info("Журнал {} проигран до записи {} за {} мс", dir, appended, (System.nanoTime() - start) / 1_000_000);
+
+        channel = openSegment(appended + 1);
+        writer = new Thread(this::writeLoop, "filmorate-wal");
+        writer.setDaemon(true);
+        writer.start();
+        filmStorage.setJournal(this);
+        userStorage.setJournal(this);
+
+        if (!snapshotInterval.isZero()) {
+            snapshotter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "filmorate-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = snapshotInterval.toMillis();
+            snapshotter.scheduleWithFixedDelay(this::scheduledSnapshot, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException, InterruptedException {
+        if (snapshotter != null) {
+            snapshotter.shutdownNow();
+            snapshotter.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        filmStorage.setJournal(ChangeJournal.NONE);
+        userStorage.setJournal(ChangeJournal.NONE);
+        appendLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (failure == null) {
+                put(STOP);
+            }
+        } catch (IllegalStateException e) {
+            // поток записи остановился с ошибкой, пока ждали места в очереди
+        } finally {
+            appendLock.unlock();
+        }
+        writer.join();
+        channel.close();
+        log.info("Журнал {} закрыт, последняя запись {}", dir, durable);
+    }
+
+    /**
+     * Сохраняет состояние хранилищ в снимок и удаляет сегменты, которые он покрывает.
+     * <p>
+     * Сначала журнал переключается на новый сегмент, и снимок ждёт, пока изменения с номерами
+     * до границы применятся к хранилищам, остальные пойдут в новый сегмент. Затем хранилища обходятся без
+     * блокировок, параллельно с записью. Снимок может захватить часть более поздних изменений,
+     * но при загрузке они применятся повторно из новых сегментов в том же порядке, а каждая
+     * запись журнала при повторе даёт тот же результат.
+     *
+     * @return номер последней записи, покрытой снимком
+     */
+    public long snapshot() throws IOException {
+        snapshotLock.lock();
+        try {
+            long lsn = rotate();
+            awaitDurable(lsn);
+            // запись попадает в журнал раньше, чем в память: дожидаемся, пока хранилища применят записи до границы
+            userStorage.awaitJournaledChanges();
+            filmStorage.awaitJournaledChanges();
+            long start = System.nanoTime();
+            // id только растут, поэтому прочитанные сейчас не меньше id любой сущности в снимке
+            Path snapshot = Snapshots.write(dir, lsn, userStorage.getLastId(), filmStorage.getLastId(),
+                    userStorage.getAllUsers(), filmStorage.getAllFilms());
+            snapshotLsn = lsn;
+            Snapshots.deleteBefore(dir, lsn);
+            Segments.deleteUpTo(dir, lsn);
+            log.info("Снимок {} записан за {} мс", snapshot, (System.nanoTime() - start) / 1_000_000);
+            return lsn;
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    @Override
+    public long filmSaved(Film film) {
+        return append(RecordType.FILM_SAVED, out -> EntityCodec.writeFilm(out, film));
+    }
+
+    @Override
+    public long filmDeleted(long filmId) {
+        return append(RecordType.FILM_DELETED, out -> out.writeLong(filmId));
+    }
+
+    @Override
+    public long userSaved(User user) {
+        return append(RecordType.USER_SAVED, out -> EntityCodec.writeUser(out, user));
+    }
+
+    @Override
+    public long userDeleted(long userId) {
+        return append(RecordType.USER_DELETED, out -> out.writeLong(userId));
+    }
+
+    @Override
+    public long liked(long filmId, long userId) {
+        return append(RecordType.LIKED, out -> writePair(out, filmId, userId));
+    }
+
+    @Override
+    public long unliked(long filmId, long userId) {
+        return append(RecordType.UNLIKED, out -> writePair(out, filmId, userId));
+    }
+
+    @Override
+    public long friended(long userId, long friendId) {
+        return append(RecordType.FRIENDED, out -> writePair(out, userId, friendId));
+    }
+
+    @Override
+    public long unfriended(long userId, long friendId) {
+        return append(RecordType.UNFRIENDED, out -> writePair(out, userId, friendId));
+    }
+
+    @Override
+    public void awaitDurable(long lsn) {
+        if (lsn <= durable) {
+            return;
+        }
+        durableLock.lock();
+        try {
+            while (durable < lsn && failure == null) {
+                durableChanged.awaitUninterruptibly();
+            }
+        } finally {
+            durableLock.unlock();
+        }
+        if (durable < lsn) {
+            throw new UncheckedIOException("Не удалось записать изменение в журнал", failure);
+        }
+    }
+
+    private long append(RecordType type, Frames.Payload payload) {
+        return enqueue(Frames.encode(type, payload));
+    }
+
+    /**
+     * Ставит в очередь переключение на новый сегмент.
+     *
+     * @return номер последней записи старого сегмента
+     */
+    private long rotate() {
+        return enqueue(ROTATE);
+    }
+
+    private long enqueue(byte[] frame) {
+        appendLock.lock();
+        try {
+            if (closed || failure != null) {
+                throw new IllegalStateException("Журнал изменений закрыт");
+            }
+            long lsn = frame == ROTATE ? appended : appended + 1;
+            put(new Entry(lsn, frame));
+            appended = lsn;
+            return lsn;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Запись в журнал прервана", e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Ждёт места в очереди, пока жив поток записи: после его ошибки очередь уже никто не разберёт,
+     * а ожидающий держит {@link #appendLock} и не дал бы остальным увидеть ошибку.
+     */
+    private void put(Entry entry) throws InterruptedException {
+        while (!queue.offer(entry, 100, TimeUnit.MILLISECONDS)) {
+            if (failure != null) {
+                throw new IllegalStateException("Журнал изменений закрыт после ошибки записи", failure);
+            }
+        }
+    }
+
+    private void scheduledSnapshot() {
+        try {
+            if (durable - snapshotLsn >= snapshotMinRecords) {
+                snapshot();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Не удалось записать снимок хранилищ в {}", dir, e);
+        }
+    }
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, batchSize - 1);
+                int from = 0;
+                for (int i = 0; i < batch.size(); i++) {
+                    Entry entry = batch.get(i);
+                    if (entry != STOP && entry.frame != ROTATE) {
+                        continue;
+                    }
+                    buffer = flush(batch.subList(from, i), buffer);
+                    if (entry == STOP) {
+                        return;
+                    }
+                    channel.close();
+                    channel = openSegment(entry.lsn + 1);
+                    from = i + 1;
+                }
+                buffer = flush(batch.subList(from, batch.size()), buffer);
+                batch.clear();
+            }
+        } catch (IOException e) {
+            log.error("Ошибка записи журнала {}", dir, e);
+            failure = e;
+            publish(durable);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ByteBuffer flush(List<Entry> entries, ByteBuffer buffer) throws IOException {
+        if (entries.isEmpty()) {
+            return buffer;
+        }
+        int size = 0;
+        for (Entry entry : entries) {
+            size += entry.frame.length;
+        }
+        if (buffer.capacity() < size) {
+            buffer = ByteBuffer.allocateDirect(Integer.highestOneBit(size) << 1);
+        }
+        buffer.clear();
+        for (Entry entry : entries) {
+            buffer.put(entry.frame);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+        publish(entries.get(entries.size() - 1).lsn);
+        return buffer;
+    }
+
+    private void publish(long lsn) {
+        durableLock.lock();
+        try {
+            durable = lsn;
+            durableChanged.signalAll();
+        } finally {
+            durableLock.unlock();
+        }
+    }
+
+    private FileChannel openSegment(long firstLsn) throws IOException {
+        FileChannel segment = FileChannel.open(Segments.path(dir, firstLsn), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        segment.position(segment.size());
+        return segment;
+    }
+
+    /**
+     * Проигрывает сегмент. Обрезать можно только конец последнего сегмента: поток записи переходит
+     * к новому сегменту после fsync старого, поэтому повреждение или пропуск раньше — потеря
+     * подтверждённых записей, и проигрывать следующие за ними нельзя.
+     */
+    private void replay(Path segment, boolean last) throws IOException {
+        long firstLsn = Segments.lsnOf(segment);
+        if (firstLsn != appended + 1) {
+            throw new IOException("Сегмент " + segment + " начинается с записи " + firstLsn + ", ожидалась "
+                    + (appended + 1));
+        }
+        try (FileChannel in = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long validSize = Frames.read(in, (type, payload) -> {
+                apply(type, payload);
+                appended++;
+            });
+            if (validSize < in.size() && !last) {
+                throw new IOException("Сегмент " + segment + " повреждён: корректны " + validSize + " из "
+                        + in.size() + " байт, а за ним есть ещё сегменты");
+            }
+            if (validSize < in.size()) {
+                log.warn("Конец сегмента {} повреждён, отбрасываем {} байт", segment, in.size() - validSize);
+                in.truncate(validSize);
+                in.force(true);
+            }
+        }
+    }
+
+    private void apply(RecordType type, ByteBuffer in) {
+        try {
+            switch (type) {
+                case FILM_SAVED:
+                    filmStorage.restoreFilm(EntityCodec.readFilm(in));
+                    break;
+                case FILM_DELETED:
+                    filmStorage.restoreFilmDeleted(in.getLong());
+                    break;
+                case USER_SAVED:
+                    userStorage.restoreUser(EntityCodec.readUser(in));
+                    break;
+                case USER_DELETED:
+                    userStorage.restoreUserDeleted(in.getLong());
+                    break;
+                case LIKED:
+                    filmStorage.restoreLike(in.getLong(), in.getLong(), true);
+                    break;
+                case UNLIKED:
+                    filmStorage.restoreLike(in.getLong(), in.getLong(), false);
+                    break;
+                case FRIENDED:
+                    userStorage.restoreFriendship(in.getLong(), in.getLong(), true);
+                    break;
+                case UNFRIENDED:
+                    userStorage.restoreFriendship(in.getLong(), in.getLong(), false);
+                    break;
+                case SEQUENCES:
+                    userStorage.restoreLastId(in.getLong());
+                    filmStorage.restoreLastId(in.getLong());
+                    break;
+                default:
+                    throw new IllegalStateException("Нет обработчика для записи журнала " + type);
+            }
+        } catch (NotFoundException e) {
+            // лайк и удаление пользователя идут под разными блокировками и могли записаться в любом порядке,
+            // а после снимка повторяются удаления, которые в нём уже учтены
+            log.debug("Пропускаем запись журнала {}: {}", type, e.getMessage());
+        }
+    }
+
+    private static void writePair(DataOutputStream out, long first, long second) throws IOException {
+        out.writeLong(first);
+        out.writeLong(second);
+    }
+
+    private static final class Entry {
+        final long lsn;
+        final byte[] frame;
+
+        Entry(long lsn, byte[] frame) {
+            this.lsn = lsn;
+            this.frame = frame;
+        }
+    }
+}
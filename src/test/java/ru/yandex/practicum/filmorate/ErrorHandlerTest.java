@@ -0,0 +1,43 @@
+package ru.yandex.practicum.filmorate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import ru.yandex.practicum.filmorate.controller.ErrorHandler;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.ErrorResponse;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ErrorHandlerTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void templateMatchesJackson() throws Exception {
+        for (String message : Arrays.asList("Фильм с id = 1 не найден", "кавычки \" и \\ слеш", "перевод\nстроки\t",
+                "", null)) {
+            assertArrayEquals(objectMapper.writeValueAsBytes(new ErrorResponse(message)),
+                    new ErrorResponse(message).toJson(), "Тело должно совпадать с ответом Jackson: " + message);
+        }
+    }
+
+    @Test
+    void notFoundHasNoStackTraceAndLazyMessage() throws Exception {
+        NotFoundException e = assertThrows(NotFoundException.class,
+                () -> new InMemoryFilmStorage(new InMemoryUserStorage()).getFilmById(42L));
+        assertEquals(0, e.getStackTrace().length, "Стек вызовов не должен заполняться");
+        assertEquals("Фильм с id = 42 не найден", e.getMessage());
+
+        ResponseEntity<byte[]> response = new ErrorHandler().handleVNotFoundException(NotFoundException.user(7L));
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+        assertEquals(MediaType.APPLICATION_JSON, response.getHeaders().getContentType());
+        assertArrayEquals(objectMapper.writeValueAsBytes(new ErrorResponse("Пользователь с id = 7 не найден")),
+                response.getBody());
+    }
+}
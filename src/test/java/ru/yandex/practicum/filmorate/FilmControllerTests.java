@@ -1,36 +1,82 @@
 package ru.yandex.practicum.filmorate;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
 import ru.yandex.practicum.filmorate.controller.FilmController;
+import ru.yandex.practicum.filmorate.controller.NdjsonWriter;
+import ru.yandex.practicum.filmorate.controller.PopularFilmsResponses;
 import ru.yandex.practicum.filmorate.controller.UserController;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.metrics.Metrics;
+import ru.yandex.practicum.filmorate.model.BatchResult;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
+import ru.yandex.practicum.filmorate.model.Like;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.RecommendationService;
+import ru.yandex.practicum.filmorate.service.SearchService;
+import ru.yandex.practicum.filmorate.service.TrendingService;
 import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.service.WritePipeline;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
 import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 class FilmControllerTests {
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
     private FilmController filmController;
     private UserController userController;
+    private UserStorage userStorage;
+    private FilmStorage filmStorage;
+    private FilmService filmService;
+    private Metrics metrics;
 
     @BeforeEach
     public void beforeEach() {
-        UserStorage userStorage = new InMemoryUserStorage();
-        FilmStorage filmStorage = new InMemoryFilmStorage(userStorage);
-        filmController = new FilmController(new FilmService(filmStorage));
-        userController = new UserController(new UserService(userStorage));
+        userStorage = new InMemoryUserStorage();
+        filmStorage = new InMemoryFilmStorage(userStorage);
+        NdjsonWriter ndjsonWriter = new NdjsonWriter(objectMapper);
+        metrics = new Metrics(Metrics.DEFAULT_SAMPLE_EVERY);
+        filmService = new FilmService(filmStorage, userStorage, Optional.empty(), metrics);
+        TrendingService trendingService = new TrendingService(filmStorage);
+        trendingService.start();
+        SearchService searchService = new SearchService(filmStorage);
+        searchService.start();
+        filmController = new FilmController(filmService, ndjsonWriter,
+                new PopularFilmsResponses(filmService, objectMapper), trendingService, searchService);
+        RecommendationService recommendations = new RecommendationService(filmStorage, userStorage, 500, 100);
+        recommendations.start();
+        userController = new UserController(new UserService(userStorage, Optional.empty(), metrics), ndjsonWriter, recommendations);
     }
 
     @Test
@@ -43,12 +89,62 @@ class FilmControllerTests {
                 .build();
         Film addFilm = filmController.createFilm(film);
         assertNotNull(addFilm.getLikes());
-        Collection<Film> listFilms = filmController.findAllFilms();
+        Collection<Film> listFilms = filmController.findAllFilms(null, null, null, null, 100, null);
         assertEquals(1, listFilms.size(), "GET-запрос работает некорректно");
         assertEquals(1, addFilm.getId(), "Генерация id работает некорректно");
         assertEquals(film.getName(), addFilm.getName(), "POST-запрос работает некорректно");
     }
 
+    @Test
+    void idIsNotReusedAfterDelete() {
+        Film film1 = filmController.createFilm(Film.builder()
+                .name("Film1")
+                .description("D_film1")
+                .releaseDate(LocalDate.of(2020, 1, 1))
+                .duration(60)
+                .build());
+        filmController.deleteFilm(film1.getId());
+        Film film2 = filmController.createFilm(Film.builder()
+                .name("Film2")
+                .description("D_film2")
+                .releaseDate(LocalDate.of(2020, 1, 1))
+                .duration(60)
+                .build());
+        assertEquals(2, film2.getId(), "id удалённого фильма не должен выдаваться повторно");
+    }
+
+    @Test
+    void getFilmsPageAndStream() throws Exception {
+        for (int i = 1; i <= 5; i++) {
+            filmController.createFilm(Film.builder()
+                    .name("Film" + i)
+                    .description("D_film" + i)
+                    .releaseDate(LocalDate.of(2020, 1, i))
+                    .duration(60)
+                    .build());
+        }
+        filmController.deleteFilm(3L);
+        assertEquals(List.of(1L, 2L), filmController.findFilmsPage(0, 2).stream()
+                .map(Film::getId).collect(Collectors.toList()), "Первая страница сформирована неверно");
+        assertEquals(List.of(4L, 5L), filmController.findFilmsPage(2, 10).stream()
+                .map(Film::getId).collect(Collectors.toList()), "Страница после курсора сформирована неверно");
+        assertThrows(ValidationException.class, () -> filmController.findFilmsPage(0, 0));
+        assertEquals(List.of(4L, 5L), filmController.findAllFilms(null, null, null, null, 100, 2L).stream()
+                .map(Film::getId).collect(Collectors.toList()), "Курсор без limit должен отдавать страницу");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        filmController.streamFilms(1, null).getBody().writeTo(out);
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(3, lines.length, "Каждый фильм должен выводиться отдельной строкой");
+        assertTrue(lines[0].startsWith("{\"id\":2,"));
+        assertTrue(lines[2].contains("\"name\":\"Film5\""));
+
+        out.reset();
+        filmController.streamFilms(0, 2).getBody().writeTo(out);
+        assertEquals(2, out.toString(StandardCharsets.UTF_8).split("\n").length,
+                "Поток должен ограничиваться параметром limit");
+    }
+
     @Test
     void getPopularFilms() {
         User user1 = User.builder()
@@ -90,29 +186,265 @@ class FilmControllerTests {
                 .releaseDate(LocalDate.of(2020, 3, 1))
                 .duration(60)
                 .build();
-        assertTrue(filmController.getPopularFilms(10).isEmpty(),
+        assertTrue(popular(10).isEmpty(),
                 "Список популярных фильмов должен быть пустым");
         filmController.createFilm(film1);
         filmController.createFilm(film2);
         filmController.createFilm(film3);
 
-        assertEquals(3, filmController.findAllFilms().size(),
+        assertEquals(3, filmController.findAllFilms(null, null, null, null, 100, null).size(),
                 "Размер списка фильмов должен быть равен 3");
 
-        filmController.like(1L, 1L);
-        filmController.like(1L, 2L);
-        filmController.like(1L, 3L);
-        filmController.like(2L, 1L);
-        filmController.like(2L, 2L);
-        filmController.like(3L, 1L);
-        assertEquals(3, filmController.getPopularFilms(1000).size(),
+        filmController.like(1L, 1L, false);
+        filmController.like(1L, 2L, false);
+        filmController.like(1L, 3L, false);
+        filmController.like(2L, 1L, false);
+        filmController.like(2L, 2L, false);
+        filmController.like(3L, 1L, false);
+        assertEquals(3, popular(1000).size(),
                 "Размер списка фильмов должен быть равен 3");
-        assertEquals(2, filmController.getPopularFilms(2).size(),
+        assertEquals(2, popular(2).size(),
                 "Размер списка фильмов должен быть равен 2");
-        assertFalse(filmController.getPopularFilms(2).contains(film3),
+        assertFalse(popular(2).contains(film3),
                 "Список не должен содержать film3");
     }
 
+    @Test
+    void getPopularFilmsOrderAfterDeleteLike() {
+        for (int i = 1; i <= 3; i++) {
+            userController.createUser(User.builder()
+                    .email("test" + i + "@ya.ru")
+                    .login("login" + i)
+                    .birthday(LocalDate.of(1980, 1, i))
+                    .build());
+            filmController.createFilm(Film.builder()
+                    .name("Film" + i)
+                    .description("D_film" + i)
+                    .releaseDate(LocalDate.of(2020, i, 1))
+                    .duration(60)
+                    .build());
+        }
+        filmController.like(2L, 1L, false);
+        filmController.like(2L, 2L, false);
+        filmController.like(3L, 1L, false);
+        filmController.like(1L, 3L, false);
+        assertEquals(List.of(2L, 1L, 3L), popular(10).stream()
+                .map(Film::getId).collect(Collectors.toList()),
+                "Фильмы должны быть упорядочены по убыванию лайков, при равенстве — по id");
+
+        filmController.deleteLike(2L, 1L, false);
+        filmController.deleteLike(2L, 2L, false);
+        filmController.like(3L, 2L, false);
+        assertEquals(List.of(3L, 1L), popular(10).stream()
+                .map(Film::getId).collect(Collectors.toList()),
+                "Фильм без лайков не должен попадать в список популярных");
+    }
+
+    @Test
+    void popularFilmsHonorEtag() {
+        userController.createUser(User.builder()
+                .email("test1@ya.ru")
+                .login("login1")
+                .birthday(LocalDate.of(1980, 1, 1))
+                .build());
+        filmController.createFilm(Film.builder()
+                .name("Film1")
+                .description("D_film1")
+                .releaseDate(LocalDate.of(2020, 1, 1))
+                .duration(60)
+                .build());
+        filmController.like(1L, 1L, false);
+        ResponseEntity<byte[]> first = filmController.getPopularFilms(10, request(null));
+        String etag = first.getHeaders().getETag();
+        assertNotNull(etag, "Ответ должен содержать ETag");
+        assertSame(first.getBody(), filmController.getPopularFilms(10, request(null)).getBody(),
+                "Без изменений ответ не должен пересобираться");
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockHttpServletRequest conditional = new MockHttpServletRequest("GET", "/films/popular");
+        conditional.addHeader(HttpHeaders.IF_NONE_MATCH, etag);
+        assertNull(filmController.getPopularFilms(10, new ServletWebRequest(conditional, response)));
+        assertEquals(HttpStatus.NOT_MODIFIED.value(), response.getStatus(), "Совпавший ETag должен давать 304");
+
+        filmController.deleteLike(1L, 1L, false);
+        ResponseEntity<byte[]> changed = filmController.getPopularFilms(10, request(etag));
+        assertNotNull(changed, "После изменения лайков ответ должен пересобраться");
+        assertNotEquals(etag, changed.getHeaders().getETag(), "После изменения лайков ETag должен измениться");
+    }
+
+    @Test
+    void batchCreateAndLike() {
+        userController.createUser(User.builder()
+                .email("test1@ya.ru")
+                .login("login1")
+                .birthday(LocalDate.of(1980, 1, 1))
+                .build());
+        List<Film> films = List.of(
+                Film.builder().name("Film1").description("D1").releaseDate(LocalDate.of(2020, 1, 1)).duration(60).build(),
+                Film.builder().name("").description("D2").releaseDate(LocalDate.of(2020, 1, 1)).duration(60).build(),
+                Film.builder().name("Film3").description("D3").releaseDate(LocalDate.of(2020, 1, 1)).duration(60).build(),
+                Film.builder().name("Film4").description("D4").duration(60).build());
+        BatchResult<Film> created = filmController.createFilms(films);
+        assertEquals(2, created.getSucceeded(), "Корректные фильмы должны сохраниться");
+        assertEquals("Название не может быть пустым", created.getItems().get(1).getError());
+        assertEquals("Дата релиза должна быть указана", created.getItems().get(3).getError(),
+                "Фильм без даты должен отклоняться отдельно, а не ронять весь пакет");
+        assertEquals(2L, created.getItems().get(2).getValue().getId(), "Id выдаются только сохранённым фильмам");
+
+        BatchResult<Like> liked = filmController.likeAll(List.of(new Like(2L, 1L), new Like(7L, 1L),
+                new Like(1L, 5L), new Like(2L, 1L)));
+        assertEquals(2, liked.getSucceeded());
+        assertEquals("Фильм с id = 7 не найден", liked.getItems().get(1).getError());
+        assertEquals("Пользователь с id = 5 не найден", liked.getItems().get(2).getError());
+        assertEquals(List.of(2L), popular(10).stream().map(Film::getId).collect(Collectors.toList()),
+                "Повторный лайк в пакете не должен учитываться дважды");
+        assertThrows(ValidationException.class, () -> filmController.likeAll(
+                Collections.nCopies(10_001, new Like(2L, 1L))));
+    }
+
+    @Test
+    void filterByReleaseDateAndDuration() {
+        userController.createUser(User.builder()
+                .email("test1@ya.ru")
+                .login("login1")
+                .birthday(LocalDate.of(1980, 1, 1))
+                .build());
+        for (int i = 1; i <= 6; i++) {
+            filmController.createFilm(Film.builder()
+                    .name("Film" + i)
+                    .description("D" + i)
+                    .releaseDate(LocalDate.of(2000 + i, 1, 1))
+                    .duration(i % 2 == 0 ? 150 : 90)
+                    .build());
+        }
+        filmController.like(5L, 1L, false);
+
+        assertEquals(List.of(2L, 3L, 4L, 5L), ids(filmController.findAllFilms(LocalDate.of(2002, 1, 1),
+                LocalDate.of(2005, 1, 1), null, null, 100, null)), "Границы периода включаются");
+        assertEquals(List.of(3L, 5L), ids(filmController.findAllFilms(LocalDate.of(2002, 1, 1),
+                null, 100, null, 100, null)), "Условия по дате и продолжительности должны пересекаться");
+        assertEquals(List.of(5L, 1L), ids(filmController.findAllFilms(null, null, 100, "popularity", 2, null)),
+                "Сначала фильмы с лайками, затем по id, не больше limit");
+        assertEquals(List.of(5L, 1L, 2L), ids(filmController.findAllFilms(null, null, null, "popularity", 3, null)));
+        assertThrows(ValidationException.class, () -> filmController.findAllFilms(LocalDate.of(2005, 1, 1),
+                LocalDate.of(2002, 1, 1), null, null, 100, null));
+        assertThrows(ValidationException.class, () -> filmController.findAllFilms(null, null, null, "name", 100, null));
+        assertThrows(ValidationException.class, () -> filmController.findAllFilms(null, null, null, "popularity", 100,
+                2L), "Курсор с условиями выборки не поддерживается");
+    }
+
+    @Test
+    void wideRangeSortedByIdDoesNotScanCatalog() {
+        InMemoryFilmStorage storage = new InMemoryFilmStorage(new InMemoryUserStorage());
+        for (int i = 1; i <= 1000; i++) {
+            storage.addFilm(Film.builder()
+                    .name("Film" + i)
+                    .description("D" + i)
+                    .releaseDate(LocalDate.of(1950, 1, 1).plusDays(i))
+                    .duration(90)
+                    .build());
+        }
+        AtomicInteger checked = new AtomicInteger();
+        FilmFilter wide = new FilmFilter(LocalDate.of(1900, 1, 1), null, 10_000, FilmFilter.Sort.ID) {
+            @Override
+            public boolean matches(Film film) {
+                checked.incrementAndGet();
+                return super.matches(film);
+            }
+        };
+
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), ids(storage.findFilms(wide, 5)),
+                "Диапазон на весь каталог должен вернуть первые фильмы по id");
+        assertTrue(checked.get() <= 20, "Для limit фильмов не нужно проверять весь каталог, проверено: "
+                + checked.get());
+    }
+
+    @Test
+    void wideRangeSortedByPopularityDoesNotScanCatalog() {
+        InMemoryUserStorage users = new InMemoryUserStorage();
+        InMemoryFilmStorage storage = new InMemoryFilmStorage(users);
+        for (int i = 1; i <= 1000; i++) {
+            storage.addFilm(Film.builder()
+                    .name("Film" + i)
+                    .description("D" + i)
+                    .releaseDate(LocalDate.of(1950, 1, 1).plusDays(i))
+                    .duration(90)
+                    .build());
+        }
+        for (int i = 1; i <= 3; i++) {
+            users.addUser(User.builder()
+                    .email("test" + i + "@ya.ru")
+                    .login("login" + i)
+                    .birthday(LocalDate.of(1980, 1, 1))
+                    .build());
+        }
+        storage.likeIt(700L, 1L);
+        storage.likeIt(700L, 2L);
+        storage.likeIt(500L, 1L);
+        AtomicInteger checked = new AtomicInteger();
+        FilmFilter wide = new FilmFilter(LocalDate.of(1900, 1, 1), null, 10_000, FilmFilter.Sort.POPULARITY) {
+            @Override
+            public boolean matches(Film film) {
+                checked.incrementAndGet();
+                return super.matches(film);
+            }
+        };
+
+        assertEquals(List.of(700L, 500L, 1L, 2L, 3L), ids(storage.findFilms(wide, 5)),
+                "Сначала фильмы по числу лайков, затем без лайков по id");
+        assertTrue(checked.get() <= 20, "Для limit фильмов не нужно проверять весь каталог, проверено: "
+                + checked.get());
+    }
+
+    private static List<Long> ids(Collection<Film> films) {
+        return films.stream().map(Film::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    void concurrentLikesAreCountedOnce() throws InterruptedException {
+        int usersCount = 200;
+        for (int i = 1; i <= usersCount; i++) {
+            userController.createUser(User.builder()
+                    .email("test" + i + "@ya.ru")
+                    .login("login" + i)
+                    .birthday(LocalDate.of(1980, 1, 1))
+                    .build());
+        }
+        Film film = filmController.createFilm(Film.builder()
+                .name("Film1")
+                .description("D_film1")
+                .releaseDate(LocalDate.of(2020, 1, 1))
+                .duration(60)
+                .build());
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < usersCount * 4; i++) {
+            long userId = i % usersCount + 1;
+            executor.execute(() -> filmController.like(film.getId(), userId, false));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(usersCount, film.getLikes().size(), "Повторные лайки не должны учитываться");
+        assertEquals(usersCount, popular(1).iterator().next().getLikes().size());
+    }
+
+    private List<Film> popular(int count) {
+        try {
+            return objectMapper.readValue(filmController.getPopularFilms(count, request(null)).getBody(),
+                    new TypeReference<>() {
+                    });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static ServletWebRequest request(String ifNoneMatch) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/films/popular");
+        if (ifNoneMatch != null) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        return new ServletWebRequest(request, new MockHttpServletResponse());
+    }
+
     @Test
     void testExceptionByPostWithoutName() {
         Film film = Film.builder()
@@ -261,11 +593,11 @@ class FilmControllerTests {
                 .duration(60)
                 .build();
         Film addFilm = filmController.createFilm(film);
-        Collection<Film> listFilms = filmController.findAllFilms();
+        Collection<Film> listFilms = filmController.findAllFilms(null, null, null, null, 100, null);
         assertEquals(1, listFilms.size(), "POST-запрос работает некорректно");
         addFilm.setName("updFilm1");
         Film updFilm = filmController.updateFilm(addFilm);
-        Collection<Film> updListFilms = filmController.findAllFilms();
+        Collection<Film> updListFilms = filmController.findAllFilms(null, null, null, null, 100, null);
         assertEquals(1, updListFilms.size(),
                 "После PUT-запроса размер списка фильмов должен остаться равным 1");
         assertNotEquals("Film1", updFilm.getName(),
@@ -313,4 +645,25 @@ class FilmControllerTests {
         Assertions.assertThrows(ValidationException.class, () -> filmController.updateFilm(addFilm),
                 "Обновление продолжительности фильма на отрицательное значение должно привести к исключению");
     }
+
+    @Test
+    void testAsyncLikeByUnknownUser() throws InterruptedException {
+        WritePipeline pipeline = new WritePipeline(filmStorage, userStorage, 100, 100);
+        pipeline.open();
+        FilmService asyncService = new FilmService(filmStorage, userStorage, Optional.of(pipeline), metrics);
+        try {
+            Film film = filmController.createFilm(Film.builder()
+                    .name("Film1")
+                    .description("D_film1")
+                    .releaseDate(LocalDate.of(2020, 1, 1))
+                    .duration(60)
+                    .build());
+            Assertions.assertThrows(NotFoundException.class, () -> asyncService.likeIt(film.getId(), 9L, false),
+                    "Лайк несуществующего пользователя без ожидания должен приводить к исключению");
+            Assertions.assertThrows(NotFoundException.class, () -> asyncService.deleteLike(film.getId(), 9L, false),
+                    "Удаление лайка несуществующего пользователя без ожидания должно приводить к исключению");
+        } finally {
+            pipeline.close();
+        }
+    }
 }
@@ -0,0 +1,31 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.storage.user.FriendSample;
+
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FriendSampleTest {
+
+    @Test
+    void shortListIsReturnedAsIs() {
+        long[] ids = {3L, 7L, 9L};
+        assertSame(ids, FriendSample.take(ids, 3), "Список не длиннее лимита не должен копироваться");
+    }
+
+    @Test
+    void sampleIsSpreadOverAllIds() {
+        long[] ids = LongStream.rangeClosed(1, 10_000).toArray();
+        long[] sample = FriendSample.take(ids, 500);
+
+        assertEquals(500, sample.length);
+        assertArrayEquals(LongStream.of(sample).sorted().distinct().toArray(), sample,
+                "Выборка должна быть отсортирована и без повторов");
+        long newer = LongStream.of(sample).filter(id -> id > 5_000).count();
+        assertTrue(newer > 200 && newer < 300,
+                "Новые аккаунты должны попадать в выборку наравне со старыми, а попало: " + newer);
+        assertArrayEquals(sample, FriendSample.take(ids, 500), "Выборка должна повторяться между запросами");
+    }
+}
@@ -0,0 +1,334 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.BatchResult;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.EntityCache;
+import ru.yandex.practicum.filmorate.storage.JdbcBatchWriter;
+import ru.yandex.practicum.filmorate.storage.film.JdbcFilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.LikeListener;
+import ru.yandex.practicum.filmorate.storage.user.FriendSample;
+import ru.yandex.practicum.filmorate.storage.user.FriendshipListener;
+import ru.yandex.practicum.filmorate.storage.user.JdbcUserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JdbcStorageTest {
+    private EmbeddedDatabase database;
+    private JdbcUserStorage userStorage;
+    private JdbcFilmStorage filmStorage;
+    private EntityCache cache;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("schema.sql")
+                .build();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(database));
+        JdbcBatchWriter batchWriter = new JdbcBatchWriter(jdbcTemplate, transactionTemplate);
+        cache = new EntityCache(1000, 1000);
+        userStorage = new JdbcUserStorage(jdbcTemplate, transactionTemplate, batchWriter, cache);
+        filmStorage = new JdbcFilmStorage(jdbcTemplate, transactionTemplate, batchWriter, cache, userStorage);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void saveUpdateAndDelete() {
+        User user = userStorage.addUser(user(1));
+        Film film = filmStorage.addFilm(film(1));
+        assertEquals(user, userStorage.getUserById(user.getId()), "Пользователь должен читаться из базы");
+        assertEquals(film, filmStorage.getFilmById(film.getId()), "Фильм должен читаться из базы");
+
+        film.setName("Новое название");
+        filmStorage.updateFilm(film);
+        assertEquals("Новое название", filmStorage.getFilmById(film.getId()).getName());
+
+        filmStorage.likeIt(film.getId(), user.getId());
+        userStorage.deleteUser(user.getId());
+        assertTrue(filmStorage.getFilmById(film.getId()).getLikes().isEmpty(),
+                "Лайки удалённого пользователя должны удаляться");
+        assertThrows(NotFoundException.class, () -> userStorage.getUserById(user.getId()));
+        filmStorage.deleteFilm(film.getId());
+        assertTrue(filmStorage.getAllFilms().isEmpty());
+        assertThrows(NotFoundException.class, () -> filmStorage.likeIt(film.getId(), 1L));
+    }
+
+    @Test
+    void popularFilmsAndCommonFriends() {
+        for (int i = 1; i <= 5; i++) {
+            userStorage.addUser(user(i));
+            filmStorage.addFilm(film(i));
+        }
+        filmStorage.likeIt(3L, 1L);
+        filmStorage.likeIt(3L, 2L);
+        filmStorage.likeIt(5L, 1L);
+        filmStorage.likeIt(5L, 2L);
+        filmStorage.likeIt(1L, 4L);
+        filmStorage.deleteLike(5L, 2L);
+        assertEquals(List.of(3L, 1L, 5L), filmStorage.getPopularFilms(10).stream()
+                .map(Film::getId).collect(Collectors.toList()), "Популярные фильмы определены неверно");
+        assertEquals(List.of(3L, 1L), filmStorage.getPopularFilms(2).stream()
+                .map(Film::getId).collect(Collectors.toList()));
+        assertEquals(Set.of(1L, 2L), filmStorage.getPopularFilms(1).iterator().next().getLikes());
+
+        userStorage.addFriend(1L, 3L);
+        userStorage.addFriend(1L, 4L);
+        userStorage.addFriend(2L, 3L);
+        userStorage.addFriend(2L, 4L);
+        userStorage.deleteFriend(2L, 4L);
+        assertEquals(List.of(3L), userStorage.getCommonFriends(1L, 2L).stream()
+                .map(User::getId).collect(Collectors.toList()), "Общие друзья определены неверно");
+        assertEquals(Set.of(1L, 2L), userStorage.getUserById(3L).getFriends(), "Дружба должна быть симметричной");
+        assertEquals(List.of(3L, 4L), userStorage.getUserFriends(1L).stream()
+                .map(User::getId).collect(Collectors.toList()));
+        assertThrows(NotFoundException.class, () -> userStorage.getCommonFriends(1L, 42L));
+    }
+
+    @Test
+    void concurrentLikesAreBatched() throws InterruptedException {
+        int size = 20;
+        for (int i = 1; i <= size; i++) {
+            userStorage.addUser(user(i));
+            filmStorage.addFilm(film(i));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (long filmId = 1; filmId <= size; filmId++) {
+            for (long userId = 1; userId <= filmId; userId++) {
+                long film = filmId;
+                long user = userId;
+                executor.execute(() -> filmStorage.likeIt(film, user));
+            }
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        for (long filmId = 1; filmId <= size; filmId++) {
+            assertEquals(filmId, filmStorage.getFilmById(filmId).getLikes().size(),
+                    "У фильма должно быть столько лайков, сколько было отправлено");
+        }
+        assertEquals(size, filmStorage.getPopularFilms(1).iterator().next().getId());
+    }
+
+    @Test
+    void cacheIsInvalidatedOnWrites() throws InterruptedException {
+        User user = userStorage.addUser(user(1));
+        User friend = userStorage.addUser(user(2));
+        Film film = filmStorage.addFilm(film(1));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 100; i++) {
+            executor.execute(() -> filmStorage.getFilmById(film.getId()));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(1L, cache.stats().get("films").get("misses"), "Фильм должен загрузиться из базы один раз");
+
+        filmStorage.likeIt(film.getId(), user.getId());
+        assertEquals(Set.of(user.getId()), filmStorage.getFilmById(film.getId()).getLikes(),
+                "После лайка кэш не должен отдавать старый фильм");
+        userStorage.addFriend(user.getId(), friend.getId());
+        assertEquals(Set.of(user.getId()), userStorage.getUserById(friend.getId()).getFriends(),
+                "После добавления в друзья кэш не должен отдавать старого друга");
+        userStorage.deleteUser(user.getId());
+        assertTrue(filmStorage.getFilmById(film.getId()).getLikes().isEmpty(),
+                "После удаления пользователя его лайки не должны оставаться в кэше");
+        assertTrue(userStorage.getUserById(friend.getId()).getFriends().isEmpty(),
+                "После удаления пользователя он не должен оставаться в друзьях в кэше");
+        assertThrows(NotFoundException.class, () -> userStorage.getUserById(user.getId()));
+    }
+
+    @Test
+    void missesAreNotCached() {
+        Logger caffeine = Logger.getLogger("com.github.benmanes.caffeine");
+        List<LogRecord> warnings = new ArrayList<>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                warnings.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        caffeine.addHandler(handler);
+        try {
+            assertThrows(NotFoundException.class, () -> userStorage.getUserById(1L));
+            assertThrows(NotFoundException.class, () -> filmStorage.getFilmById(1L));
+        } finally {
+            caffeine.removeHandler(handler);
+        }
+        assertEquals(List.of(), warnings, "Промах не должен считаться ошибкой загрузки");
+
+        userStorage.addUser(user(1));
+        assertEquals("User 1", userStorage.getUserById(1L).getName(), "Промах не должен оставаться в кэше");
+    }
+
+    @Test
+    void batchesAreAppliedInOneTransaction() {
+        userStorage.addUser(user(1));
+        List<User> users = userStorage.addUsers(List.of(user(2), user(3)));
+        assertEquals(List.of(2L, 3L), users.stream().map(User::getId).collect(Collectors.toList()),
+                "Id пакета должны идти после уже выданных");
+        List<Film> films = filmStorage.addFilms(List.of(film(1), film(2), film(3)));
+        assertEquals(List.of(1L, 2L, 3L), films.stream().map(Film::getId).collect(Collectors.toList()));
+        assertEquals(films.get(1), filmStorage.getFilmById(2L));
+
+        BatchResult<Like> likes = filmStorage.likeAll(List.of(new Like(2L, 1L), new Like(2L, 3L),
+                new Like(9L, 1L), new Like(3L, 9L)));
+        assertEquals(2, likes.getSucceeded());
+        assertEquals("Фильм с id = 9 не найден", likes.getItems().get(2).getError());
+        assertEquals("Пользователь с id = 9 не найден", likes.getItems().get(3).getError());
+        assertEquals(Set.of(1L, 3L), filmStorage.getFilmById(2L).getLikes(), "Кэш должен сброситься после пакета");
+
+        BatchResult<Friendship> friends = userStorage.addFriends(List.of(new Friendship(1L, 2L),
+                new Friendship(1L, 9L), new Friendship(3L, 1L)));
+        assertEquals(2, friends.getSucceeded());
+        assertEquals(Set.of(2L, 3L), userStorage.getUserById(1L).getFriends(), "Дружба должна быть симметричной");
+        assertEquals(Set.of(1L), userStorage.getUserById(2L).getFriends());
+    }
+
+    @Test
+    void batchesNotifyOnlyChanges() {
+        userStorage.addUsers(List.of(user(1), user(2)));
+        filmStorage.addFilm(film(1));
+        filmStorage.likeIt(1L, 1L);
+        userStorage.addFriend(1L, 2L);
+        List<String> changes = new ArrayList<>();
+        filmStorage.addLikeListener(new LikeListener() {
+            @Override
+            public void liked(long filmId, long userId) {
+                changes.add("like " + filmId + " " + userId);
+            }
+
+            @Override
+            public void unliked(long filmId, long userId) {
+                changes.add("unlike " + filmId + " " + userId);
+            }
+        });
+        userStorage.addFriendshipListener(new FriendshipListener() {
+            @Override
+            public void friended(long userId, long friendId) {
+                changes.add("friend " + userId + " " + friendId);
+            }
+
+            @Override
+            public void unfriended(long userId, long friendId) {
+                changes.add("unfriend " + userId + " " + friendId);
+            }
+        });
+
+        filmStorage.likeAll(List.of(new Like(1L, 1L), new Like(1L, 2L), new Like(1L, 2L)));
+        filmStorage.deleteLikes(List.of(new Like(1L, 1L), new Like(1L, 1L)));
+        userStorage.addFriends(List.of(new Friendship(1L, 2L)));
+        userStorage.deleteFriends(List.of(new Friendship(1L, 2L), new Friendship(1L, 2L)));
+        userStorage.deleteFriend(1L, 2L);
+        assertEquals(List.of("like 1 2", "unlike 1 1", "unfriend 1 2"), changes,
+                "Подписчики должны получать только изменения, без повторов");
+    }
+
+    @Test
+    void updateKeepsFriendshipsSymmetric() {
+        userStorage.addUsers(List.of(user(1), user(2), user(3), user(4)));
+        userStorage.addFriend(1L, 2L);
+        userStorage.addFriend(1L, 3L);
+        assertEquals(Set.of(1L), userStorage.getUserById(2L).getFriends());
+
+        User user = userStorage.getUserById(1L);
+        user.setFriends(Set.of(3L, 4L));
+        userStorage.updateUser(user);
+        assertEquals(Set.of(3L, 4L), userStorage.getUserById(1L).getFriends());
+        assertEquals(Set.of(), userStorage.getUserById(2L).getFriends(), "Удалённая дружба должна пропасть у друга");
+        assertEquals(Set.of(1L), userStorage.getUserById(3L).getFriends());
+        assertEquals(Set.of(1L), userStorage.getUserById(4L).getFriends(), "Новая дружба должна появиться у друга");
+
+        User withMissingFriend = user(1);
+        withMissingFriend.setId(1L);
+        withMissingFriend.setName("Другое имя");
+        withMissingFriend.setFriends(Set.of(9L));
+        assertThrows(NotFoundException.class, () -> userStorage.updateUser(withMissingFriend));
+        assertEquals("User 1", userStorage.getUserById(1L).getName(), "Обновление должно откатиться целиком");
+        assertEquals(Set.of(3L, 4L), userStorage.getUserById(1L).getFriends());
+    }
+
+    @Test
+    void filtersUseReleaseDateAndDuration() {
+        userStorage.addUser(user(1));
+        filmStorage.addFilms(List.of(film(1), film(2), film(3), film(4)));
+        filmStorage.likeIt(3L, 1L);
+
+        FilmFilter filter = FilmFilter.builder().releasedFrom(LocalDate.of(2000, 1, 2)).maxDuration(93).build();
+        assertEquals(List.of(2L, 3L), filmStorage.findFilms(filter, 10).stream().map(Film::getId)
+                .collect(Collectors.toList()), "Условия по дате и продолжительности должны пересекаться");
+        filter.setSort(FilmFilter.Sort.POPULARITY);
+        filter.setMaxDuration(null);
+        assertEquals(List.of(3L, 2L), filmStorage.findFilms(filter, 2).stream().map(Film::getId)
+                .collect(Collectors.toList()), "Сначала фильмы с лайками, затем по id, не больше limit");
+    }
+
+    @Test
+    void friendIdsAreLimitedPerUser() {
+        userStorage.addUsers(List.of(user(1), user(2), user(3), user(4)));
+        userStorage.addFriends(List.of(new Friendship(1L, 2L), new Friendship(1L, 3L), new Friendship(1L, 4L)));
+
+        Map<Long, long[]> friends = userStorage.getFriendIds(List.of(1L, 2L, 42L), 2);
+        assertEquals(Set.of(1L, 2L), friends.keySet(), "Несуществующего пользователя в ответе быть не должно");
+        assertArrayEquals(FriendSample.take(new long[]{2L, 3L, 4L}, 2), friends.get(1L),
+                "Выборка друзей в базе должна совпадать с выборкой в памяти");
+        assertArrayEquals(new long[]{2L, 4L}, friends.get(1L), "Друзья выбираются по хэшу id");
+        assertArrayEquals(new long[]{1L}, friends.get(2L));
+    }
+
+    private static User user(int n) {
+        return User.builder()
+                .email("user" + n + "@ya.ru")
+                .login("user" + n)
+                .name("User " + n)
+                .birthday(LocalDate.of(1990, 1, n))
+                .build();
+    }
+
+    private static Film film(int n) {
+        return Film.builder()
+                .name("Фильм " + n)
+                .description("Описание " + n)
+                .releaseDate(LocalDate.of(2000, 1, n))
+                .duration(90 + n)
+                .build();
+    }
+}
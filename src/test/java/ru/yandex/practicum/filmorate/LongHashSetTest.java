@@ -0,0 +1,56 @@
+package ru.yandex.practicum.filmorate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.LongHashSet;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongHashSetTest {
+
+    @Test
+    void behavesLikeHashSet() {
+        Random random = new Random(7);
+        Set<Long> expected = new HashSet<>();
+        LongHashSet actual = new LongHashSet();
+        for (int i = 0; i < 100_000; i++) {
+            long id = random.nextInt(2_000) - 10;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(id), actual.remove(id), "Результат удаления должен совпадать");
+            } else {
+                assertEquals(expected.add(id), actual.add(id), "Результат добавления должен совпадать");
+            }
+        }
+        assertEquals(expected.size(), actual.size(), "Размеры множеств должны совпадать");
+        assertEquals(expected, actual, "Содержимое множеств должно совпадать");
+        for (long id = -10; id < 2_000; id++) {
+            assertEquals(expected.contains(id), actual.contains(id));
+        }
+    }
+
+    @Test
+    void keepsJsonShapeOfFilm() throws Exception {
+        ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        Film film = Film.builder()
+                .id(1L)
+                .name("Film1")
+                .description("D_film1")
+                .releaseDate(LocalDate.of(2020, 1, 1))
+                .duration(60)
+                .build();
+        film.getLikes().add(5L);
+        String json = mapper.writeValueAsString(film);
+        assertTrue(json.contains("\"likes\":[5]"), "Лайки должны сериализоваться массивом id");
+
+        Film parsed = mapper.readValue("{\"id\":1,\"name\":\"Film1\",\"likes\":[3,4,4]}", Film.class);
+        assertEquals(LongHashSet.class, parsed.getLikes().getClass());
+        assertEquals(Set.of(3L, 4L), parsed.getLikes());
+    }
+}
@@ -0,0 +1,178 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.metrics.Metrics;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.TimedFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.user.TimedUserStorage;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsTest {
+    private Metrics metrics;
+    private FilmService filmService;
+    private UserService userService;
+
+    @BeforeEach
+    void setUp() {
+        metrics = new Metrics(1);
+        TimedUserStorage userStorage = new TimedUserStorage(new InMemoryUserStorage(), metrics);
+        filmService = new FilmService(new TimedFilmStorage(new InMemoryFilmStorage(userStorage), metrics), userStorage,
+                Optional.empty(), metrics);
+        userService = new UserService(userStorage, Optional.empty(), metrics);
+    }
+
+    @Test
+    void exposesCountersGaugesAndTimersInPrometheusFormat() {
+        for (int i = 1; i <= 3; i++) {
+            userService.createUser(User.builder()
+                    .email("user" + i + "@ya.ru")
+                    .login("user" + i)
+                    .birthday(LocalDate.of(1990, 1, i))
+                    .build());
+        }
+        filmService.createFilm(film("Фильм"));
+        filmService.likeIt(1L, 1L);
+        filmService.likeIt(1L, 2L);
+        filmService.deleteLike(1L, 2L);
+        userService.addFriend(1L, 2L);
+        userService.createUsers(Arrays.asList(null, User.builder().email("без собаки").login("x").build()));
+        assertThrows(NotFoundException.class, () -> filmService.getFilmById(100L));
+
+        List<String> lines = Arrays.asList(metrics.scrape().split("\n"));
+        assertTrue(lines.contains("filmorate_likes_total{operation=\"add\"} 2"), "Поставлено два лайка");
+        assertTrue(lines.contains("filmorate_likes_total{operation=\"remove\"} 1"), "Снят один лайк");
+        assertTrue(lines.contains("filmorate_friendships_total{operation=\"add\"} 1"), "Добавлена одна дружба");
+        assertTrue(lines.contains("filmorate_validation_failures_total 2"), "Два элемента пакета не прошли проверку");
+        assertTrue(lines.contains("filmorate_films 1"), "Один фильм");
+        assertTrue(lines.contains("filmorate_likes 1"), "Один лайк после снятия второго");
+        assertTrue(lines.contains("filmorate_users 3"), "Три пользователя");
+        assertTrue(lines.contains("filmorate_friendships 1"), "Симметричная дружба считается один раз");
+        assertTrue(lines.contains("# TYPE filmorate_storage_call_seconds summary"), "Таймеры описаны как summary");
+        assertTrue(lines.contains("filmorate_storage_call_seconds_count{storage=\"film\",method=\"getFilmById\"} 1"),
+                "Вызов, закончившийся исключением, тоже учитывается");
+        assertTrue(lines.stream().anyMatch(line -> line.startsWith(
+                "filmorate_storage_call_seconds{storage=\"film\",method=\"likeIt\",quantile=\"0.99\"} ")
+                && !line.endsWith("NaN")), "Квантили считаются по вызовам с прошлого опроса");
+
+        lines = Arrays.asList(metrics.scrape().split("\n"));
+        assertTrue(lines.contains("filmorate_storage_call_seconds{storage=\"film\",method=\"likeIt\",quantile=\"0.99\"} NaN"),
+                "Без новых вызовов квантилей нет");
+        assertTrue(lines.contains("filmorate_storage_call_seconds_count{storage=\"film\",method=\"likeIt\"} 2"),
+                "Число вызовов копится с запуска");
+    }
+
+    @Test
+    void countersCountOnlyChanges() {
+        for (int i = 1; i <= 2; i++) {
+            userService.createUser(User.builder()
+                    .email("user" + i + "@ya.ru")
+                    .login("user" + i)
+                    .birthday(LocalDate.of(1990, 1, i))
+                    .build());
+        }
+        filmService.createFilm(film("Фильм"));
+        filmService.likeIt(1L, 1L);
+        filmService.likeIt(1L, 1L);
+        filmService.deleteLike(1L, 2L);
+        filmService.likeAll(List.of(new Like(1L, 1L), new Like(1L, 2L), new Like(1L, 2L)));
+        userService.addFriend(1L, 2L);
+        userService.addFriend(2L, 1L);
+        userService.deleteFriend(1L, 2L);
+        userService.deleteFriend(1L, 2L);
+
+        List<String> lines = Arrays.asList(metrics.scrape().split("\n"));
+        assertTrue(lines.contains("filmorate_likes_total{operation=\"add\"} 2"), "Повторные лайки не считаются");
+        assertTrue(lines.contains("filmorate_likes_total{operation=\"remove\"} 0"),
+                "Снятие отсутствующего лайка не считается");
+        assertTrue(lines.contains("filmorate_friendships_total{operation=\"add\"} 1"), "Повторная дружба не считается");
+        assertTrue(lines.contains("filmorate_friendships_total{operation=\"remove\"} 1"));
+    }
+
+    @Test
+    void slowGaugeDoesNotBlockOtherScrapes() throws Exception {
+        CountDownLatch reading = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        Metrics slow = new Metrics(1);
+        slow.gauge("slow", "Медленный показатель", () -> {
+            reading.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return 1;
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executor.submit(slow::scrape);
+            Future<String> second = executor.submit(slow::scrape);
+            assertTrue(reading.await(5, TimeUnit.SECONDS), "Показатели двух опросов должны читаться одновременно");
+            release.countDown();
+            assertTrue(first.get(5, TimeUnit.SECONDS).contains("slow 1"));
+            assertTrue(second.get(5, TimeUnit.SECONDS).contains("slow 1"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void storageCountsFollowReplacedAndDeletedEntities() {
+        InMemoryUserStorage users = new InMemoryUserStorage();
+        InMemoryFilmStorage films = new InMemoryFilmStorage(users);
+        for (int i = 1; i <= 3; i++) {
+            users.addUser(User.builder()
+                    .email("user" + i + "@ya.ru")
+                    .login("user" + i)
+                    .birthday(LocalDate.of(1990, 1, i))
+                    .build());
+        }
+        films.addFilm(film("Первый"));
+        films.addFilm(film("Второй"));
+        films.likeIt(1L, 1L);
+        films.likeIt(1L, 2L);
+        films.likeIt(1L, 2L);
+        films.likeIt(2L, 3L);
+        users.addFriend(1L, 2L);
+        users.addFriend(2L, 1L);
+        users.addFriend(1L, 3L);
+        assertEquals(3, films.getLikeCount(), "Повторный лайк не считается");
+        assertEquals(2, users.getFriendshipCount());
+
+        Film replaced = film("Первый");
+        replaced.setId(1L);
+        films.updateFilm(replaced);
+        films.deleteFilm(2L);
+        assertEquals(0, films.getLikeCount(), "Лайки заменённого и удалённого фильма не должны оставаться в счётчике");
+
+        users.deleteFriend(1L, 3L);
+        assertEquals(1, users.getFriendshipCount());
+    }
+
+    private static Film film(String name) {
+        return Film.builder()
+                .name(name)
+                .description("Описание")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(90)
+                .build();
+    }
+}
@@ -0,0 +1,142 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.metrics.Metrics;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.ReactiveFilmService;
+import ru.yandex.practicum.filmorate.service.ReactiveUserService;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReactiveServiceTest {
+    private final AtomicInteger pageReads = new AtomicInteger();
+    private Scheduler scheduler;
+    private FilmService filmService;
+    private UserService userService;
+    private ReactiveFilmService reactiveFilmService;
+    private ReactiveUserService reactiveUserService;
+
+    @BeforeEach
+    void setUp() {
+        InMemoryUserStorage userStorage = new InMemoryUserStorage();
+        scheduler = Schedulers.newBoundedElastic(4, 1000, "test-storage");
+        InMemoryFilmStorage filmStorage = new InMemoryFilmStorage(userStorage);
+        Metrics metrics = new Metrics(Metrics.DEFAULT_SAMPLE_EVERY);
+        filmService = new FilmService(filmStorage, userStorage, Optional.empty(), metrics) {
+            @Override
+            public Collection<Film> getFilmsPage(long afterId, int limit) {
+                pageReads.incrementAndGet();
+                return super.getFilmsPage(afterId, limit);
+            }
+        };
+        userService = new UserService(userStorage, Optional.empty(), metrics);
+        reactiveFilmService = new ReactiveFilmService(filmService, filmStorage, scheduler);
+        reactiveFilmService.start();
+        reactiveUserService = new ReactiveUserService(userService, scheduler);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.dispose();
+    }
+
+    @Test
+    void filmPagesAreReadOnDemand() {
+        for (int i = 1; i <= 1200; i++) {
+            filmService.createFilm(film(i));
+        }
+        assertEquals(List.of(1L, 2L, 3L), reactiveFilmService.getAllFilms(0).take(3).map(Film::getId)
+                .collectList().block(), "Поток должен начинаться с первого фильма");
+        assertEquals(1, pageReads.get(), "Для первых фильмов должна читаться одна страница");
+
+        pageReads.set(0);
+        List<Long> ids = reactiveFilmService.getAllFilms(100).map(Film::getId).collectList().block();
+        assertEquals(1100, ids.size(), "Должны прийти все фильмы после курсора");
+        assertEquals(101L, ids.get(0));
+        assertEquals(3, pageReads.get(), "Страницы должны читаться по одной, пока не кончатся фильмы");
+    }
+
+    @Test
+    void popularFilmsAndFriends() {
+        for (int i = 1; i <= 3; i++) {
+            userService.createUser(user(i));
+            filmService.createFilm(film(i));
+        }
+        filmService.likeIt(2L, 1L);
+        filmService.likeIt(2L, 2L);
+        filmService.likeIt(3L, 1L);
+        userService.addFriend(1L, 2L);
+        userService.addFriend(1L, 3L);
+        userService.addFriend(2L, 3L);
+
+        assertEquals(List.of(2L, 3L), reactiveFilmService.getPopularFilms(10).map(Film::getId).collectList().block(),
+                "Популярные фильмы определены неверно");
+        assertEquals(List.of(2L, 3L), reactiveUserService.getUserFriends(1L).map(User::getId).collectList().block()
+                .stream().sorted().collect(Collectors.toList()));
+        assertEquals(List.of(3L), reactiveUserService.getCommonFriends(1L, 2L).map(User::getId).collectList().block());
+        assertThrows(NotFoundException.class, () -> reactiveFilmService.getFilmById(42L).block());
+    }
+
+    @Test
+    void versionIsAwaitedUntilFilmsChange() {
+        userService.createUser(user(1));
+        filmService.createFilm(film(1));
+        long version = filmService.getFilmsVersion();
+        assertEquals(version, reactiveFilmService.awaitFilmsVersion(version, Duration.ofMillis(200)).block(),
+                "Без изменений по таймауту должна вернуться та же версия");
+
+        Long changed = reactiveFilmService.awaitFilmsVersion(version, Duration.ofSeconds(10))
+                .doOnSubscribe(subscription -> scheduler.schedule(() -> filmService.likeIt(1L, 1L), 300,
+                        TimeUnit.MILLISECONDS))
+                .block(Duration.ofSeconds(5));
+        assertNotEquals(version, changed, "После лайка ожидание должно завершиться новой версией");
+
+        List<Mono<Long>> waiters = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            waiters.add(reactiveFilmService.awaitFilmsVersion(changed, Duration.ofSeconds(10)).cache());
+            waiters.get(i).subscribe();
+        }
+        filmService.deleteLike(1L, 1L);
+        for (Mono<Long> waiter : waiters) {
+            assertNotEquals(changed, waiter.block(Duration.ofSeconds(1)), "Одно изменение должно разбудить всех ожидающих");
+        }
+    }
+
+    private static User user(int n) {
+        return User.builder()
+                .email("user" + n + "@ya.ru")
+                .login("user" + n)
+                .birthday(LocalDate.of(1990, 1, n))
+                .build();
+    }
+
+    private static Film film(int n) {
+        return Film.builder()
+                .name("Фильм " + n)
+                .description("Описание " + n)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(90)
+                .build();
+    }
+}
@@ -0,0 +1,150 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.RecommendationService;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecommendationServiceTest {
+    private InMemoryUserStorage userStorage;
+    private InMemoryFilmStorage filmStorage;
+
+    @BeforeEach
+    void setUp() {
+        userStorage = new InMemoryUserStorage();
+        filmStorage = new InMemoryFilmStorage(userStorage);
+        for (int i = 1; i <= 5; i++) {
+            userStorage.addUser(User.builder()
+                    .email("user" + i + "@ya.ru")
+                    .login("user" + i)
+                    .birthday(LocalDate.of(1990, 1, i))
+                    .build());
+            filmStorage.addFilm(Film.builder()
+                    .name("Фильм " + i)
+                    .description("Описание")
+                    .releaseDate(LocalDate.of(2000, 1, i))
+                    .duration(90)
+                    .build());
+        }
+    }
+
+    @Test
+    void recommendsFilmsOfSimilarUsersAndFriends() {
+        filmStorage.likeIt(1L, 2L);
+        RecommendationService service = start(500);
+        // у 1 и 2 общий фильм 1, поэтому фильм 2 пользователя 2 весит больше фильма 3 друга
+        filmStorage.likeIt(1L, 1L);
+        filmStorage.likeIt(2L, 2L);
+        filmStorage.likeIt(3L, 3L);
+        userStorage.addFriend(1L, 3L);
+
+        assertEquals(List.of(2L, 3L), recommended(service, 1L, 10),
+                "Сначала фильмы похожих пользователей, затем фильмы друзей, без своих лайков");
+
+        filmStorage.deleteLike(1L, 2L);
+        assertEquals(List.of(3L), recommended(service, 1L, 10),
+                "После снятия общего лайка пользователь 2 перестаёт быть похожим");
+    }
+
+    @Test
+    void fallsBackToPopularFilms() {
+        RecommendationService service = start(500);
+        filmStorage.likeIt(2L, 2L);
+        filmStorage.likeIt(3L, 2L);
+        filmStorage.likeIt(3L, 3L);
+        filmStorage.likeIt(4L, 1L);
+
+        assertEquals(List.of(3L, 2L), recommended(service, 1L, 2),
+                "Без похожих пользователей и друзей рекомендуются популярные фильмы без своих лайков");
+        assertThrows(ValidationException.class, () -> service.getRecommendations(1L, 0));
+        assertThrows(NotFoundException.class, () -> service.getRecommendations(100L, 10));
+    }
+
+    @Test
+    void widelyLikedFilmsDoNotMakeUsersSimilar() {
+        RecommendationService service = start(2);
+        filmStorage.likeIt(3L, 4L);
+        filmStorage.likeIt(3L, 5L);
+        filmStorage.likeIt(1L, 1L);
+        filmStorage.likeIt(1L, 2L);
+        filmStorage.likeIt(2L, 2L);
+        assertEquals(List.of(2L), recommended(service, 1L, 10), "Общий фильм делает пользователей похожими");
+
+        filmStorage.likeIt(1L, 3L);
+        assertEquals(List.of(3L, 2L), recommended(service, 1L, 10),
+                "Фильм сверх порога лайков не учитывается, вместо рекомендаций — популярные фильмы");
+
+        filmStorage.deleteLike(1L, 3L);
+        filmStorage.deleteLike(1L, 1L);
+        filmStorage.likeIt(1L, 1L);
+        assertEquals(List.of(2L), recommended(service, 1L, 10),
+                "Когда лайков становится меньше, фильм снова учитывается");
+    }
+
+    @Test
+    void overflowingQueueRebuildsIndexFromStorage() {
+        RecommendationService service = start(500, 1);
+        for (int round = 0; round < 100; round++) {
+            for (long filmId = 1; filmId <= 5; filmId++) {
+                filmStorage.likeIt(filmId, 3L);
+                filmStorage.deleteLike(filmId, 3L);
+            }
+        }
+        filmStorage.likeIt(1L, 1L);
+        for (long filmId = 1; filmId <= 4; filmId++) {
+            filmStorage.likeIt(filmId, 2L);
+        }
+
+        assertEquals(List.of(2L, 3L, 4L), recommended(service, 1L, 10),
+                "Изменения, не поместившиеся в очередь, должны попасть в индекс через пересборку");
+    }
+
+    @Test
+    void awaitIndexedReturnsAfterStop() throws Exception {
+        RecommendationService service = start(500, 1);
+        Thread waiter = new Thread(() -> {
+            for (int i = 0; i < 10_000; i++) {
+                filmStorage.likeIt(1L + i % 5, 1L + i % 3);
+                service.awaitIndexed();
+            }
+        });
+        waiter.start();
+        service.stop();
+        waiter.join(5_000);
+        assertFalse(waiter.isAlive(), "Ожидание индекса не должно зависать после остановки");
+        assertTimeoutPreemptively(Duration.ofSeconds(1), service::awaitIndexed,
+                "После остановки ожидание должно возвращаться сразу");
+    }
+
+    private RecommendationService start(int maxFilmLikers) {
+        return start(maxFilmLikers, 100);
+    }
+
+    private RecommendationService start(int maxFilmLikers, int queueCapacity) {
+        RecommendationService service = new RecommendationService(filmStorage, userStorage, maxFilmLikers,
+                queueCapacity);
+        service.start();
+        return service;
+    }
+
+    private static List<Long> recommended(RecommendationService service, long userId, int count) {
+        service.awaitIndexed();
+        return ids(service.getRecommendations(userId, count));
+    }
+
+    private static List<Long> ids(List<Film> films) {
+        return films.stream().map(Film::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,101 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.SearchService;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchServiceTest {
+    private InMemoryUserStorage userStorage;
+    private InMemoryFilmStorage filmStorage;
+    private SearchService searchService;
+
+    @BeforeEach
+    void setUp() {
+        userStorage = new InMemoryUserStorage();
+        userStorage.addUser(User.builder().email("user@ya.ru").login("user").birthday(LocalDate.of(1990, 1, 1)).build());
+        filmStorage = new InMemoryFilmStorage(userStorage);
+        filmStorage.addFilm(film("Ёлки", "Новогодняя комедия о чудесах"));
+        searchService = new SearchService(filmStorage);
+        searchService.start();
+        filmStorage.addFilm(film("Space Odyssey", "A journey to Jupiter"));
+        filmStorage.addFilm(film("Комедия положений", "Комедия, комедия и ещё раз комедия"));
+    }
+
+    @Test
+    void findsRussianAndEnglishWordsRankedByBm25() {
+        assertEquals(List.of(1L), ids("ЕЛКИ"), "Регистр и «ё» не должны влиять на поиск");
+        assertEquals(List.of(2L), ids("jupiter, space!"));
+        assertEquals(List.of(3L, 1L), ids("комедия"), "Фильм, где слово чаще и в названии, должен быть выше");
+        assertTrue(ids("драма").isEmpty());
+        assertThrows(ValidationException.class, () -> searchService.search(" ", 10));
+        assertThrows(ValidationException.class, () -> searchService.search("комедия", 0));
+    }
+
+    @Test
+    void indexFollowsStorageChanges() {
+        Film film = film("Solaris", "A journey to a distant planet");
+        film.setId(2L);
+        filmStorage.updateFilm(film);
+        assertTrue(ids("jupiter").isEmpty(), "Старые слова обновлённого фильма не должны находиться");
+        assertEquals(List.of(2L), ids("solaris"));
+
+        filmStorage.deleteFilm(1L);
+        assertEquals(List.of(3L), ids("комедия"), "Удалённый фильм не должен находиться");
+    }
+
+    @Test
+    void likesLiftEquallyRelevantFilms() {
+        filmStorage.addFilm(film("Комедия", "Описание"));
+        filmStorage.addFilm(film("Комедия", "Описание"));
+        assertEquals(List.of(4L, 5L), ids("описание"), "При равной оценке раньше меньший id");
+        filmStorage.likeIt(5L, 1L);
+        assertEquals(List.of(5L, 4L), ids("описание"), "Лайки должны поднимать фильм");
+    }
+
+    @Test
+    void commonOnlyQueryScansMostLikedFilms() {
+        List<Film> films = new ArrayList<>();
+        for (int i = 0; i < 50_010; i++) {
+            films.add(film("Фильм", "Описание"));
+        }
+        filmStorage.addFilms(films);
+        for (int i = 2; i <= 3; i++) {
+            userStorage.addUser(User.builder().email("user" + i + "@ya.ru").login("user" + i)
+                    .birthday(LocalDate.of(1990, 1, i)).build());
+        }
+        long last = films.get(films.size() - 1).getId();
+        for (long userId = 1; userId <= 3; userId++) {
+            for (long filmId = last; filmId > last - userId; filmId--) {
+                filmStorage.likeIt(filmId, userId);
+            }
+        }
+        assertEquals(List.of(last, last - 1, last - 2), searchService.search("фильм", 3).stream()
+                .map(Film::getId).collect(Collectors.toList()),
+                "Из частого слова должны перебираться фильмы с наибольшим числом лайков");
+    }
+
+    private List<Long> ids(String query) {
+        return searchService.search(query, 10).stream().map(Film::getId).collect(Collectors.toList());
+    }
+
+    private static Film film(String name, String description) {
+        return Film.builder()
+                .name(name)
+                .description(description)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(90)
+                .build();
+    }
+}
@@ -0,0 +1,41 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.storage.user.SortedIntersection;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SortedIntersectionTest {
+
+    @Test
+    void allStrategiesGiveSameResult() {
+        Random random = new Random(3);
+        int[][] sizes = {{0, 10}, {1, 1}, {50, 60}, {10, 5_000}, {3_000, 3_000}};
+        for (int[] size : sizes) {
+            for (long range : new long[]{100, 10_000, 1_000_000_000L}) {
+                long[] first = randomSorted(random, size[0], range);
+                long[] second = randomSorted(random, size[1], range);
+                long[] expected = LongStream.of(first).filter(id -> Arrays.binarySearch(second, id) >= 0)
+                        .toArray();
+                assertArrayEquals(expected, SortedIntersection.intersect(first, second));
+                assertArrayEquals(expected, SortedIntersection.intersect(second, first));
+                assertArrayEquals(expected, SortedIntersection.merge(first, second));
+                assertArrayEquals(expected, SortedIntersection.gallop(first, second));
+                if (first.length > 0 && second.length > 0 && range <= 10_000) {
+                    assertArrayEquals(expected, SortedIntersection.bitmap(first, second,
+                            Math.max(first[0], second[0]), Math.min(first[first.length - 1],
+                                    second[second.length - 1])));
+                }
+            }
+        }
+    }
+
+    private static long[] randomSorted(Random random, int size, long range) {
+        return LongStream.generate(() -> 1 + (long) (random.nextDouble() * range))
+                .distinct().limit(Math.min(size, range)).sorted().toArray();
+    }
+}
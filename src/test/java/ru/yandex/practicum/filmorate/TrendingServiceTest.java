@@ -0,0 +1,128 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.TrendingService;
+import ru.yandex.practicum.filmorate.service.TrendingService.Window;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrendingServiceTest {
+    private final MutableClock clock = new MutableClock();
+    private InMemoryFilmStorage filmStorage;
+    private TrendingService trendingService;
+
+    @BeforeEach
+    void setUp() {
+        InMemoryUserStorage userStorage = new InMemoryUserStorage();
+        filmStorage = new InMemoryFilmStorage(userStorage);
+        for (int i = 1; i <= 3; i++) {
+            userStorage.addUser(User.builder()
+                    .email("user" + i + "@ya.ru")
+                    .login("user" + i)
+                    .birthday(LocalDate.of(1990, 1, i))
+                    .build());
+            filmStorage.addFilm(Film.builder()
+                    .name("Фильм " + i)
+                    .description("Описание")
+                    .releaseDate(LocalDate.of(2000, 1, i))
+                    .duration(90)
+                    .likes(i == 3 ? Set.of(1L, 2L, 3L) : Set.of())
+                    .build());
+        }
+        trendingService = new TrendingService(filmStorage, clock);
+        trendingService.start();
+    }
+
+    @Test
+    void windowsCountOnlyRecentLikes() {
+        filmStorage.likeIt(1L, 1L);
+        filmStorage.likeIt(1L, 2L);
+        clock.advance(Duration.ofHours(2));
+        filmStorage.likeIt(2L, 1L);
+
+        assertEquals(List.of(2L), ids(Window.HOUR), "За час — только последний лайк; старые лайки фильма 3 не в счёт");
+        assertEquals(List.of(1L, 2L), ids(Window.DAY), "За сутки — все лайки по убыванию числа");
+
+        clock.advance(Duration.ofDays(1));
+        assertEquals(List.of(1L, 2L), ids(Window.WEEK));
+        assertTrue(ids(Window.DAY).isEmpty(), "Через сутки лайки выходят из окна");
+
+        filmStorage.deleteLike(1L, 1L);
+        filmStorage.deleteLike(1L, 2L);
+        assertEquals(List.of(2L), ids(Window.WEEK), "Снятые лайки вычитаются из окна");
+        assertTrue(ids(Window.HOUR).isEmpty(), "Снятие старых лайков не выводит фильм в тренды");
+
+        clock.advance(Duration.ofDays(8));
+        assertTrue(ids(Window.WEEK).isEmpty(), "Через неделю окна пусты");
+    }
+
+    @Test
+    void unlikesOfUncountedLikesAreIgnored() {
+        filmStorage.deleteLike(3L, 1L);
+        filmStorage.likeIt(3L, 1L);
+        assertEquals(List.of(3L), ids(Window.HOUR), "Снятие лайка, поставленного до подписки, не должно вычитаться");
+
+        filmStorage.likeIt(1L, 1L);
+        clock.advance(Duration.ofDays(8));
+        filmStorage.deleteLike(1L, 1L);
+        filmStorage.likeIt(1L, 2L);
+        assertEquals(List.of(1L), ids(Window.HOUR), "Снятие лайка старше недели не должно вычитаться");
+
+        clock.advance(Duration.ofHours(2));
+        filmStorage.deleteLike(1L, 2L);
+        assertTrue(ids(Window.HOUR).isEmpty(), "Снятие вычитается из текущей корзины, сумма окна не уходит в минус");
+        assertTrue(ids(Window.DAY).isEmpty(), "Лайк и его снятие в разных корзинах окна суток гасят друг друга");
+        filmStorage.likeIt(1L, 3L);
+        assertTrue(ids(Window.HOUR).isEmpty(), "Снятие старого лайка приближённо гасит новый лайк того же часа");
+        assertEquals(List.of(1L), ids(Window.DAY));
+    }
+
+    @Test
+    void rejectsUnknownWindowAndCount() {
+        assertThrows(ValidationException.class, () -> Window.of("2h"));
+        assertThrows(ValidationException.class, () -> trendingService.getTrendingFilms(Window.DAY, 0));
+    }
+
+    private List<Long> ids(Window window) {
+        return trendingService.getTrendingFilms(window, 10).stream().map(Film::getId).collect(Collectors.toList());
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T00:30:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
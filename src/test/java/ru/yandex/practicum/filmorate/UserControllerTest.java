@@ -3,15 +3,30 @@ package ru.yandex.practicum.filmorate;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.yandex.practicum.filmorate.controller.NdjsonWriter;
 import ru.yandex.practicum.filmorate.controller.UserController;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.metrics.Metrics;
+import ru.yandex.practicum.filmorate.model.BatchResult;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.RecommendationService;
 import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
 import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -20,7 +35,11 @@ class UserControllerTest {
 
     @BeforeEach
     public void beforeEach() {
-        userController = new UserController(new UserService(new InMemoryUserStorage()));
+        InMemoryUserStorage userStorage = new InMemoryUserStorage();
+        Metrics metrics = new Metrics(Metrics.DEFAULT_SAMPLE_EVERY);
+        userController = new UserController(new UserService(userStorage, Optional.empty(), metrics),
+                new NdjsonWriter(Jackson2ObjectMapperBuilder.json().build()),
+                new RecommendationService(new InMemoryFilmStorage(userStorage), userStorage, 500, 100));
     }
 
     @Test
@@ -39,10 +58,123 @@ class UserControllerTest {
                 .build();
         User addUser1 = userController.createUser(user1);
         User addUser2 = userController.createUser(user2);
-        User addFriend = userController.addFriend(1L, 2L);
+        User addFriend = userController.addFriend(1L, 2L, false).getBody();
         assertTrue(user1.getFriends().contains(2L));
     }
 
+    @Test
+    void getCommonFriends() {
+        for (int i = 1; i <= 5; i++) {
+            userController.createUser(User.builder()
+                    .email("test" + i + "@ya.ru")
+                    .login("login" + i)
+                    .birthday(LocalDate.of(1980, 1, 1))
+                    .build());
+        }
+        userController.addFriend(1L, 3L, false);
+        userController.addFriend(1L, 4L, false);
+        userController.addFriend(1L, 5L, false);
+        userController.addFriend(2L, 5L, false);
+        userController.addFriend(2L, 3L, false);
+        assertEquals(List.of(3L, 5L), userController.getCommonFriends(1L, 2L).stream()
+                .map(User::getId).collect(Collectors.toList()), "Общие друзья определены неверно");
+        assertTrue(userController.getCommonFriends(3L, 4L).contains(userController.getUserById(1L)));
+        assertTrue(userController.getCommonFriends(1L, 3L).isEmpty());
+    }
+
+    @Test
+    void concurrentFriendUpdatesStaySymmetric() throws InterruptedException {
+        int usersCount = 20;
+        for (int i = 1; i <= usersCount; i++) {
+            userController.createUser(User.builder()
+                    .email("test" + i + "@ya.ru")
+                    .login("login" + i)
+                    .birthday(LocalDate.of(1980, 1, 1))
+                    .build());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int task = 0; task < 2000; task++) {
+            long userId = task % usersCount + 1;
+            long friendId = (task * 7L) % usersCount + 1;
+            boolean add = task % 3 != 0;
+            executor.execute(() -> {
+                if (userId == friendId) {
+                    return;
+                }
+                if (add) {
+                    userController.addFriend(userId, friendId, false);
+                } else {
+                    userController.deleteFriend(friendId, userId, false);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        for (User user : userController.findAllUsers(null)) {
+            for (Long friendId : user.getFriends()) {
+                assertTrue(userController.getUserById(friendId).getFriends().contains(user.getId()),
+                        "Дружба должна оставаться взаимной при параллельных изменениях");
+            }
+        }
+    }
+
+    @Test
+    void batchCreateAndBefriend() {
+        List<User> users = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            users.add(User.builder()
+                    .email("test" + i + "@ya.ru")
+                    .login("login" + i)
+                    .birthday(LocalDate.of(1980, 1, i))
+                    .build());
+        }
+        users.add(1, User.builder().email("bad").login("bad").birthday(LocalDate.of(1980, 1, 1)).build());
+        users.add(User.builder().email("nobirthday@ya.ru").login("nobirthday").build());
+        users.add(User.builder().email("blank@ya.ru").login("").birthday(LocalDate.of(1980, 1, 1)).build());
+        BatchResult<User> created = userController.createUsers(users);
+        assertEquals(3, created.getSucceeded(), "Корректные пользователи должны сохраниться");
+        assertEquals(3, created.getFailed());
+        assertNotNull(created.getItems().get(1).getError(), "Ошибка должна быть у некорректного пользователя");
+        assertEquals("Дата рождения должна быть указана", created.getItems().get(4).getError(),
+                "Пользователь без даты рождения должен отклоняться отдельно, а не ронять весь пакет");
+        assertEquals("Логин не может быть пустым и содержать пробелы", created.getItems().get(5).getError());
+        assertEquals(List.of(1L, 2L, 3L), List.of(created.getItems().get(0).getValue().getId(),
+                created.getItems().get(2).getValue().getId(), created.getItems().get(3).getValue().getId()),
+                "Id должны выдаваться по порядку одним блоком");
+
+        BatchResult<Friendship> friends = userController.addFriends(List.of(
+                new Friendship(1L, 2L), new Friendship(1L, 42L), new Friendship(3L, 1L)));
+        assertEquals(2, friends.getSucceeded());
+        assertEquals("Пользователь с id = 42 не найден", friends.getItems().get(1).getError());
+        assertEquals(Set.of(2L, 3L), userController.getUserById(1L).getFriends(), "Дружба должна быть симметричной");
+        assertEquals(Set.of(1L), userController.getUserById(2L).getFriends());
+    }
+
+    @Test
+    void suggestFriendsOfFriends() {
+        List<User> users = new ArrayList<>();
+        for (int i = 1; i <= 6; i++) {
+            users.add(User.builder()
+                    .email("test" + i + "@ya.ru")
+                    .login("login" + i)
+                    .birthday(LocalDate.of(1980, 1, i))
+                    .build());
+        }
+        userController.createUsers(users);
+        // у 1 друзья 2 и 3; 5 дружит с обоими, 4 и 6 — с одним из них
+        userController.addFriends(List.of(new Friendship(1L, 2L), new Friendship(1L, 3L), new Friendship(2L, 3L),
+                new Friendship(2L, 5L), new Friendship(3L, 5L), new Friendship(2L, 6L), new Friendship(3L, 4L)));
+
+        assertEquals(List.of(5L, 4L, 6L), userController.getFriendSuggestions(1L, 10).stream()
+                .map(User::getId).collect(Collectors.toList()),
+                "Сначала больше общих друзей, затем меньший id, без самого пользователя и его друзей");
+        assertEquals(List.of(5L, 4L), userController.getFriendSuggestions(1L, 2).stream()
+                .map(User::getId).collect(Collectors.toList()));
+        assertTrue(userController.getFriendSuggestions(4L, 10).stream().noneMatch(user -> user.getId() == 3L));
+        assertThrows(ValidationException.class, () -> userController.getFriendSuggestions(1L, 0));
+        assertThrows(NotFoundException.class, () -> userController.getFriendSuggestions(42L, 10));
+    }
+
     @Test
     void postAndGetValidUser() {
         User user = User.builder()
@@ -52,10 +184,11 @@ class UserControllerTest {
                 .birthday(LocalDate.of(1980, 1, 1))
                 .build();
         User addUser = userController.createUser(user);
-        Collection<User> listUsers = userController.findAllUsers();
+        Collection<User> listUsers = userController.findAllUsers(null);
         assertEquals(1, listUsers.size(), "GET-запрос работает некорректно");
         assertEquals(1, addUser.getId(), "Генерация id работает некорректно");
         assertEquals(user.getLogin(), addUser.getLogin(), "POST-запрос работает некорректно");
+        assertTrue(userController.findAllUsers(1L).isEmpty(), "Курсор без limit должен отдавать страницу после него");
     }
 
     @Test
@@ -149,7 +282,7 @@ class UserControllerTest {
                 .birthday(LocalDate.now())
                 .build();
         User addUser = userController.createUser(user);
-        Collection<User> listUsers = userController.findAllUsers();
+        Collection<User> listUsers = userController.findAllUsers(null);
         assertEquals(1, listUsers.size(), "GET-запрос работает некорректно");
         assertEquals(user.getLogin(), addUser.getLogin(), "POST-запрос работает некорректно");
     }
@@ -162,7 +295,7 @@ class UserControllerTest {
                 .birthday(LocalDate.now())
                 .build();
         User addUser = userController.createUser(user);
-        Collection<User> listUsers = userController.findAllUsers();
+        Collection<User> listUsers = userController.findAllUsers(null);
         assertEquals(1, listUsers.size(), "GET-запрос работает некорректно");
         assertEquals(user.getLogin(), addUser.getName(), "Пустому полю имени должно присваиваться значение логина");
     }
@@ -176,7 +309,7 @@ class UserControllerTest {
                 .birthday(LocalDate.now())
                 .build();
         User addUser = userController.createUser(user);
-        Collection<User> listUsers = userController.findAllUsers();
+        Collection<User> listUsers = userController.findAllUsers(null);
         assertEquals(1, listUsers.size(), "GET-запрос работает некорректно");
         assertEquals(user.getLogin(), addUser.getName(),
                 "Полю имени, состоящему только из пробелов, должно присваиваться значение логина");
@@ -205,11 +338,11 @@ class UserControllerTest {
                 .birthday(LocalDate.of(1980, 1, 1))
                 .build();
         User addUser = userController.createUser(user);
-        Collection<User> listUsers = userController.findAllUsers();
+        Collection<User> listUsers = userController.findAllUsers(null);
         assertEquals(1, listUsers.size(), "POST-запрос работает некорректно");
         addUser.setLogin("newlogin");
         User updUser = userController.updateUser(addUser);
-        Collection<User> updListUsers = userController.findAllUsers();
+        Collection<User> updListUsers = userController.findAllUsers(null);
         assertEquals(1, updListUsers.size(),
                 "После PUT-запроса размер списка пользователей должен остаться равным 1");
         assertNotEquals("login", updUser.getLogin(),
@@ -0,0 +1,299 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.LikeListener;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.wal.WriteAheadLog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteAheadLogTest {
+    @TempDir
+    Path dir;
+
+    private InMemoryUserStorage userStorage;
+    private InMemoryFilmStorage filmStorage;
+    private WriteAheadLog wal;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        restart();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        wal.close();
+    }
+
+    @Test
+    void restartRestoresState() throws Exception {
+        User first = userStorage.addUser(user("first"));
+        User second = userStorage.addUser(user("second"));
+        User third = userStorage.addUser(user("third"));
+        Film film = filmStorage.addFilm(film("Матрица"));
+        Film other = filmStorage.addFilm(film("Онегин"));
+        filmStorage.likeIt(film.getId(), first.getId());
+        filmStorage.likeIt(film.getId(), second.getId());
+        filmStorage.likeIt(other.getId(), third.getId());
+        filmStorage.deleteLike(other.getId(), third.getId());
+        userStorage.addFriend(first.getId(), second.getId());
+        userStorage.addFriend(first.getId(), third.getId());
+        userStorage.deleteFriend(first.getId(), third.getId());
+        other.setName("Евгений Онегин");
+        filmStorage.updateFilm(other);
+        userStorage.deleteUser(third.getId());
+
+        restart();
+
+        assertEquals(2, userStorage.getAllUsers().size(), "После рестарта должно остаться два пользователя");
+        assertEquals(Set.of(second.getId()), userStorage.getUserById(first.getId()).getFriends(),
+                "Дружба должна восстановиться");
+        assertEquals("Евгений Онегин", filmStorage.getFilmById(other.getId()).getName(),
+                "Должна восстановиться последняя версия фильма");
+        assertEquals(List.of(film.getId()), filmStorage.getPopularFilms(10).stream()
+                .map(Film::getId).collect(Collectors.toList()), "Рейтинг должен восстановиться по лайкам");
+        assertEquals(2, filmStorage.getFilmById(film.getId()).getLikes().size(), "Лайки должны восстановиться");
+        assertEquals(3, filmStorage.addFilm(film("Новый")).getId(), "Id не должен повторяться после рестарта");
+    }
+
+    @Test
+    void tornTailIsDropped() throws Exception {
+        User user = userStorage.addUser(user("first"));
+        wal.close();
+        Files.write(lastSegment(), new byte[]{0, 0, 0, 40, 3, 1, 2}, StandardOpenOption.APPEND);
+
+        restart();
+
+        assertEquals(1, userStorage.getAllUsers().size(), "Недописанная запись должна быть отброшена");
+        User next = userStorage.addUser(user("second"));
+        restart();
+        assertEquals(List.of(user.getId(), next.getId()), userStorage.getAllUsers().stream()
+                .map(User::getId).collect(Collectors.toList()), "Запись после обрезки должна читаться");
+    }
+
+    @Test
+    void corruptedEarlierSegmentFailsStartup() throws Exception {
+        userStorage.addUser(user("first"));
+        userStorage.addUser(user("second"));
+        restart();
+        userStorage.addUser(user("third"));
+        wal.close();
+        List<Path> segments = segments();
+        assertEquals(2, segments.size(), "После рестарта записи должны пойти в новый сегмент");
+        byte[] first = Files.readAllBytes(segments.get(0));
+        first[first.length - 5] ^= 1;
+        Files.write(segments.get(0), first);
+
+        assertThrows(IOException.class, this::openNew, "Повреждение не в конце журнала должно останавливать запуск");
+        assertEquals(first.length, Files.size(segments.get(0)), "Повреждённый сегмент не должен обрезаться");
+
+        Files.delete(segments.get(0));
+        assertThrows(IOException.class, this::openNew, "Пропуск записей между сегментами должен останавливать запуск");
+    }
+
+    @Test
+    void restartFromSnapshotAndNewerSegments() throws Exception {
+        User first = userStorage.addUser(user("first"));
+        User second = userStorage.addUser(user("second"));
+        Film film = filmStorage.addFilm(film("Матрица"));
+        filmStorage.likeIt(film.getId(), first.getId());
+        userStorage.addFriend(first.getId(), second.getId());
+        assertEquals(5, wal.snapshot(), "Снимок должен покрыть все пять записей");
+        filmStorage.likeIt(film.getId(), second.getId());
+        userStorage.deleteFriend(first.getId(), second.getId());
+
+        restart();
+
+        assertEquals(Set.of(first.getId(), second.getId()), filmStorage.getFilmById(film.getId()).getLikes(),
+                "Лайки из снимка и из журнала должны сложиться");
+        assertTrue(userStorage.getUserById(first.getId()).getFriends().isEmpty(),
+                "Удаление из друзей после снимка должно примениться");
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(List.of("changes-00000000000000000006.wal", "changes-00000000000000000008.wal",
+                            "snapshot-00000000000000000005.snap"),
+                    files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList()),
+                    "Сегменты до снимка должны быть удалены");
+        }
+    }
+
+    @Test
+    void snapshotDoesNotLoseConcurrentWrites() throws Exception {
+        int size = 200;
+        for (int i = 0; i < size; i++) {
+            userStorage.addUser(user("user" + i));
+            filmStorage.addFilm(film("Фильм " + i));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            long seed = t;
+            writers.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < 2_000; i++) {
+                    long filmId = 1 + random.nextInt(size);
+                    long userId = 1 + random.nextInt(size);
+                    if (random.nextBoolean()) {
+                        filmStorage.likeIt(filmId, userId);
+                    } else {
+                        filmStorage.deleteLike(filmId, userId);
+                    }
+                }
+            }));
+        }
+        for (int i = 0; i < 3; i++) {
+            wal.snapshot();
+        }
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        executor.shutdown();
+        Map<Long, Set<Long>> expected = filmStorage.getAllFilms().stream()
+                .collect(Collectors.toMap(Film::getId, film -> new HashSet<>(film.getLikes())));
+
+        restart();
+
+        Map<Long, Set<Long>> actual = filmStorage.getAllFilms().stream()
+                .collect(Collectors.toMap(Film::getId, film -> new HashSet<>(film.getLikes())));
+        assertEquals(expected, actual, "После снимка и журнала лайки должны совпасть с состоянием до рестарта");
+    }
+
+    @Test
+    void rejectedWriteIsNotVisible() throws Exception {
+        User first = userStorage.addUser(user("first"));
+        User second = userStorage.addUser(user("second"));
+        Film film = filmStorage.addFilm(film("Матрица"));
+        AtomicInteger events = new AtomicInteger();
+        filmStorage.addLikeListener(new LikeListener() {
+            @Override
+            public void liked(long filmId, long userId) {
+                events.incrementAndGet();
+            }
+
+            @Override
+            public void unliked(long filmId, long userId) {
+                events.incrementAndGet();
+            }
+        });
+        // следующий сегмент не откроется, и поток записи остановится с ошибкой на переключении
+        Files.createDirectory(dir.resolve("changes-00000000000000000004.wal"));
+        wal.snapshot();
+        // запись за переключением дожидается ошибки потока записи
+        assertThrows(RuntimeException.class, () -> userStorage.addUser(user("probe")));
+        int users = userStorage.getAllUsers().size();
+
+        assertThrows(IllegalStateException.class, () -> filmStorage.likeIt(film.getId(), first.getId()));
+        assertThrows(IllegalStateException.class, () -> userStorage.addFriend(first.getId(), second.getId()));
+        assertThrows(IllegalStateException.class, () -> filmStorage.addFilm(film("Онегин")));
+        assertThrows(IllegalStateException.class, () -> userStorage.deleteUser(second.getId()));
+
+        assertTrue(filmStorage.getFilmById(film.getId()).getLikes().isEmpty(), "Отклонённый лайк не должен появиться");
+        assertTrue(filmStorage.getPopularFilms(10).isEmpty(), "Отклонённый лайк не должен попасть в рейтинг");
+        assertEquals(0, events.get(), "Подписчики не должны узнать об отклонённом лайке");
+        assertTrue(userStorage.getUserById(first.getId()).getFriends().isEmpty(),
+                "Отклонённая дружба не должна появиться");
+        assertEquals(List.of(film.getId()), filmStorage.getAllFilms().stream().map(Film::getId)
+                .collect(Collectors.toList()), "Отклонённый фильм не должен появиться");
+        assertEquals(users, userStorage.getAllUsers().size(), "Отклонённое удаление не должно примениться");
+    }
+
+    @Test
+    void replayDoesNotNotifyListeners() throws Exception {
+        User user = userStorage.addUser(user("first"));
+        Film film = filmStorage.addFilm(film("Матрица"));
+        filmStorage.likeIt(film.getId(), user.getId());
+        filmStorage.deleteFilm(filmStorage.addFilm(film("Онегин")).getId());
+        wal.close();
+
+        userStorage = new InMemoryUserStorage();
+        filmStorage = new InMemoryFilmStorage(userStorage);
+        AtomicInteger events = new AtomicInteger();
+        filmStorage.addLikeListener(new LikeListener() {
+            @Override
+            public void liked(long filmId, long userId) {
+                events.incrementAndGet();
+            }
+
+            @Override
+            public void unliked(long filmId, long userId) {
+                events.incrementAndGet();
+            }
+        });
+        wal = new WriteAheadLog(filmStorage, userStorage, dir, 1024, 64, Duration.ZERO, 0);
+        wal.open();
+
+        assertEquals(Set.of(user.getId()), filmStorage.getFilmById(film.getId()).getLikes(), "Лайк должен восстановиться");
+        assertEquals(1, filmStorage.getAllFilms().size(), "Удалённый фильм не должен восстановиться");
+        assertEquals(0, events.get(), "Восстановление из журнала не должно выглядеть как новые лайки");
+    }
+
+    private List<Path> segments() throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".wal")).sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private void openNew() throws Exception {
+        InMemoryUserStorage users = new InMemoryUserStorage();
+        new WriteAheadLog(new InMemoryFilmStorage(users), users, dir, 1024, 64, Duration.ZERO, 0).open();
+    }
+
+    private Path lastSegment() throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".wal")).max(Path::compareTo)
+                    .orElseThrow();
+        }
+    }
+
+    private void restart() throws Exception {
+        if (wal != null) {
+            wal.close();
+        }
+        userStorage = new InMemoryUserStorage();
+        filmStorage = new InMemoryFilmStorage(userStorage);
+        wal = new WriteAheadLog(filmStorage, userStorage, dir, 1024, 64, Duration.ZERO, 0);
+        wal.open();
+    }
+
+    private static User user(String login) {
+        return User.builder()
+                .email(login + "@ya.ru")
+                .login(login)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build();
+    }
+
+    private static Film film(String name) {
+        return Film.builder()
+                .name(name)
+                .description("Описание")
+                .releaseDate(LocalDate.of(1999, 3, 31))
+                .duration(136)
+                .build();
+    }
+}
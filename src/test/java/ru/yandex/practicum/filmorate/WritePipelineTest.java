@@ -0,0 +1,131 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.metrics.Metrics;
+import ru.yandex.practicum.filmorate.model.BatchResult;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.WritePipeline;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WritePipelineTest {
+    private final List<Integer> likeBatches = new ArrayList<>();
+    private volatile boolean failDeletes;
+    private InMemoryUserStorage userStorage;
+    private InMemoryFilmStorage filmStorage;
+    private WritePipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        userStorage = new InMemoryUserStorage();
+        filmStorage = new InMemoryFilmStorage(userStorage) {
+            @Override
+            public BatchResult<Like> likeAll(List<Like> likes) {
+                likeBatches.add(likes.size());
+                return super.likeAll(likes);
+            }
+
+            @Override
+            public BatchResult<Like> deleteLikes(List<Like> likes) {
+                if (failDeletes) {
+                    throw new IllegalStateException("Хранилище недоступно");
+                }
+                likeBatches.add(likes.size());
+                return super.deleteLikes(likes);
+            }
+        };
+        for (int i = 1; i <= 3; i++) {
+            userStorage.addUser(User.builder()
+                    .email("user" + i + "@ya.ru")
+                    .login("user" + i)
+                    .birthday(LocalDate.of(1990, 1, i))
+                    .build());
+        }
+        filmStorage.addFilm(Film.builder()
+                .name("Фильм")
+                .description("Описание")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(90)
+                .build());
+        pipeline = new WritePipeline(filmStorage, userStorage, 1000, 1000);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        pipeline.close();
+    }
+
+    @Test
+    void changesOfOnePairAreCoalesced() {
+        // поток записи ещё не запущен, поэтому все изменения попадут в одну пачку
+        CompletableFuture<Long> liked = pipeline.like(1L, 1L);
+        CompletableFuture<Long> unliked = pipeline.unlike(1L, 1L);
+        pipeline.like(1L, 2L);
+        CompletableFuture<Long> missing = pipeline.like(9L, 1L);
+        pipeline.friend(1L, 2L);
+        pipeline.unfriend(2L, 1L);
+        CompletableFuture<Long> friended = pipeline.friend(1L, 3L);
+        pipeline.open();
+
+        assertEquals(1L, WritePipeline.await(liked), "Схлопнутое изменение должно получить версию своей пачки");
+        assertEquals(1L, WritePipeline.await(unliked));
+        assertEquals(1L, WritePipeline.await(friended));
+        assertThrows(NotFoundException.class, () -> WritePipeline.await(missing));
+        assertEquals(3, likeBatches.stream().mapToInt(Integer::intValue).sum(),
+                "Лайк и снятие лайка одной пары должны применяться одним изменением");
+        assertEquals(Set.of(2L), filmStorage.getFilmById(1L).getLikes());
+        assertEquals(Set.of(3L), userStorage.getUserById(1L).getFriends(), "Должно остаться последнее изменение дружбы");
+        assertEquals(Set.of(), userStorage.getUserById(2L).getFriends());
+        assertEquals(1L, pipeline.getVersion());
+    }
+
+    @Test
+    void serviceWaitsOnlyWhenAsked() {
+        pipeline.open();
+        FilmService filmService = new FilmService(filmStorage, userStorage, Optional.of(pipeline),
+                new Metrics(Metrics.DEFAULT_SAMPLE_EVERY));
+
+        assertEquals(Set.of(1L), filmService.likeIt(1L, 1L, true).orElseThrow().getLikes(),
+                "С ожиданием должен вернуться фильм с применённым лайком");
+        assertTrue(filmService.likeIt(1L, 2L, false).isEmpty(), "Без ожидания результат должен возвращаться сразу");
+        assertThrows(NotFoundException.class, () -> filmService.likeIt(9L, 1L, false),
+                "Несуществующий фильм должен проверяться до постановки в очередь");
+        assertThrows(NotFoundException.class, () -> filmService.likeIt(1L, 9L));
+        assertEquals(Set.of(1L), filmService.deleteLike(1L, 2L).getLikes(),
+                "Ожидающий запрос должен видеть и более ранние изменения из очереди");
+    }
+
+    @Test
+    void failedGroupDoesNotFailAppliedChanges() throws InterruptedException {
+        failDeletes = true;
+        CompletableFuture<Long> liked = pipeline.like(1L, 1L);
+        CompletableFuture<Long> unliked = pipeline.unlike(1L, 2L);
+        CompletableFuture<Long> friended = pipeline.friend(1L, 2L);
+        pipeline.open();
+
+        assertEquals(1L, WritePipeline.await(liked), "Применённый лайк не должен завершаться ошибкой");
+        assertEquals(1L, WritePipeline.await(friended), "Группы после сбойной тоже должны применяться");
+        assertThrows(IllegalStateException.class, () -> WritePipeline.await(unliked));
+        assertEquals(Set.of(1L), filmStorage.getFilmById(1L).getLikes());
+        assertEquals(Set.of(2L), userStorage.getUserById(1L).getFriends());
+
+        pipeline.close();
+        assertThrows(IllegalStateException.class, () -> pipeline.like(1L, 3L),
+                "После остановки изменения не принимаются");
+    }
+}